@@ -0,0 +1,105 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.opengis.cite.securityclient10.httpServer.ServerOptions;
+import org.opengis.cite.securityclient10.httpServer.ServerWms13;
+import org.opengis.cite.securityclient10.httpServer.ServerWps20;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for building the complete capabilities documents of the WMS 1.3.0 and WPS 2.0 emulated
+ * servers, with every security constraint enabled.
+ *
+ * Capabilities documents are cached by the emulated servers. The "hit" case always requests the same
+ * session path, so the cached document is copied to the response. The "miss" case cycles through
+ * more session paths than the cache holds, so every document is built and serialized.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CapabilitiesBenchmark {
+
+	/**
+	 * Number of distinct session paths for the "miss" case. This must be larger than the maximum size
+	 * of the capabilities cache.
+	 */
+	private static final int SESSION_COUNT = 1024;
+
+	@Param({ "hit", "miss" })
+	public String cache;
+
+	@Param({ "none", "saml2" })
+	public String authentication;
+
+	private ServerWms13 wms13;
+	private ServerWps20 wps20;
+	private HttpServletRequest[] wmsRequests;
+	private HttpServletRequest[] wpsRequests;
+	private HttpServletResponse response;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.wms13 = new ServerWms13(options("wms13"));
+		this.wps20 = new ServerWps20(options("wps20"));
+
+		int sessions = "hit".equals(this.cache) ? 1 : SESSION_COUNT;
+		this.wmsRequests = new HttpServletRequest[sessions];
+		this.wpsRequests = new HttpServletRequest[sessions];
+		for (int i = 0; i < sessions; i++) {
+			this.wmsRequests[i] = ServletMocks.getRequest("/session" + i + "/full",
+					"service=WMS&request=GetCapabilities");
+			this.wpsRequests[i] = ServletMocks.getRequest("/session" + i + "/full",
+					"service=WPS&request=GetCapabilities");
+		}
+		this.response = ServletMocks.discardingResponse();
+		this.next = 0;
+	}
+
+	@Benchmark
+	public void wms13Capabilities() throws IOException {
+		this.wms13.buildCapabilities(this.wmsRequests[nextSession()], this.response, true);
+	}
+
+	@Benchmark
+	public void wps20Capabilities() throws IOException {
+		this.wps20.buildCapabilities(this.wpsRequests[nextSession()], this.response, true);
+	}
+
+	private int nextSession() {
+		int session = this.next;
+		this.next = (session + 1) % this.wmsRequests.length;
+		return session;
+	}
+
+	private ServerOptions options(String serviceType) {
+		ServerOptions options = new ServerOptions(serviceType);
+		options.setAuthentication(this.authentication);
+		if ("saml2".equals(this.authentication)) {
+			options.setIdpUrl("https://idp.example.org/saml2/sso");
+		}
+		options.setCors(true);
+		options.setHttpExceptionHandling(true);
+		options.setHttpMethods(true);
+		options.setHttpPostContentType(true);
+		return options;
+	}
+}
@@ -0,0 +1,97 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+
+import org.opengis.cite.securityclient10.httpServer.CapabilitiesWriter;
+import org.opengis.cite.securityclient10.httpServer.ServerOptions;
+import org.opengis.cite.securityclient10.httpServer.ServerWms13;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for serializing the complete WMS 1.3.0 capabilities document, bypassing the capabilities
+ * cache, with the streaming CapabilitiesWriter used by the emulated servers and with the DOM tree and
+ * Transformer they used before.
+ *
+ * `domTransformer` is the baseline: it must stay slower and allocate more than `streamingWriter`.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CapabilitiesWriterBenchmark {
+
+	private static final String BASE_HREF = "https://localhost:10080/session";
+
+	/**
+	 * Initial size of the buffer, matching the one used by the emulated servers
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	@Param({ "none", "saml2" })
+	public String authentication;
+
+	private StreamingWms13 streaming;
+	private DomWms13Capabilities dom;
+
+	@Setup
+	public void setUp() throws ParserConfigurationException {
+		ServerOptions options = new ServerOptions("wms13");
+		options.setAuthentication(this.authentication);
+		if ("saml2".equals(this.authentication)) {
+			options.setIdpUrl("https://idp.example.org/saml2/sso");
+		}
+		options.setCors(true);
+		options.setHttpExceptionHandling(true);
+		options.setHttpMethods(true);
+		options.setHttpPostContentType(true);
+
+		this.streaming = new StreamingWms13(options);
+		this.dom = new DomWms13Capabilities(options);
+	}
+
+	@Benchmark
+	public byte[] streamingWriter() throws XMLStreamException {
+		return this.streaming.serialize(BASE_HREF, true);
+	}
+
+	@Benchmark
+	public byte[] domTransformer() throws TransformerException {
+		return this.dom.serialize(BASE_HREF, true);
+	}
+
+	/**
+	 * ServerWms13 with access to the document writer behind its capabilities cache.
+	 */
+	private static class StreamingWms13 extends ServerWms13 {
+
+		StreamingWms13(ServerOptions options) {
+			super(options);
+		}
+
+		byte[] serialize(String baseHref, boolean completeCapabilities) throws XMLStreamException {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+			CapabilitiesWriter writer = new CapabilitiesWriter(buffer);
+			writeCapabilitiesDocument(baseHref, completeCapabilities, writer);
+			writer.endDocument();
+			return buffer.toByteArray();
+		}
+	}
+}
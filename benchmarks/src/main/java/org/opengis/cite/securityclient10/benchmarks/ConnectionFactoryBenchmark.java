@@ -0,0 +1,117 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.opengis.cite.jetty.http.HttpVersion;
+import org.opengis.cite.jetty.io.ByteArrayEndPoint;
+import org.opengis.cite.jetty.io.Connection;
+import org.opengis.cite.jetty.server.HttpConfiguration;
+import org.opengis.cite.jetty.server.HttpConnectionFactory;
+import org.opengis.cite.jetty.server.Server;
+import org.opengis.cite.jetty.server.ServerConnector;
+import org.opengis.cite.jetty.util.resource.Resource;
+import org.opengis.cite.jetty.util.ssl.SslContextFactory;
+import org.opengis.cite.securityclient10.httpServer.UnifiedSslConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for accepting a new client connection with the UnifiedSslConnectionFactory. Each
+ * operation creates the ProtocolDetectionConnection for a new in-memory endpoint and opens it, then
+ * the client's first bytes arrive, which detects HTTPS or plain HTTP and upgrades the endpoint to the
+ * connection for the detected protocol, as the selector would.
+ *
+ * The connector is configured like the one in TestServer, but is never started, so no port is
+ * opened. Its executor runs tasks on the calling thread, so the connection for the detected protocol
+ * is also opened within the operation. The endpoints have no scheduler, so the detection timeout is
+ * disabled.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionFactoryBenchmark {
+
+	/**
+	 * Start of a TLS 1.2 ClientHello record
+	 */
+	private static final byte[] TLS_CLIENT_HELLO = { 0x16, 0x03, 0x01, 0x00, (byte) 0xC8, 0x01 };
+
+	private static final byte[] HTTP_REQUEST = "GET /session HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Password of the security.jks KeyStore bundled with the test suite
+	 */
+	private static final String KEYSTORE_PASSWORD = "ets-security-client";
+
+	@Param({ "https", "http" })
+	public String protocol;
+
+	private Server server;
+	private ServerConnector connector;
+	private UnifiedSslConnectionFactory connectionFactory;
+	private ByteBuffer input;
+	private ByteArrayEndPoint endPoint;
+
+	@Setup
+	public void setUp() throws Exception {
+		SslContextFactory sslContextFactory = new SslContextFactory();
+		sslContextFactory.setKeyStoreResource(Resource.newClassPathResource("/security.jks"));
+		sslContextFactory.setKeyStorePassword(KEYSTORE_PASSWORD);
+
+		HttpConfiguration httpsConfig = new HttpConfiguration();
+		this.server = new Server();
+		this.connectionFactory = new UnifiedSslConnectionFactory(sslContextFactory,
+				HttpVersion.HTTP_1_1.asString());
+		this.connectionFactory.setDetectionTimeout(0);
+		Executor callerRuns = new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				task.run();
+			}
+		};
+		this.connector = new ServerConnector(this.server, callerRuns, null, null, -1, -1, this.connectionFactory,
+				new HttpConnectionFactory(httpsConfig));
+
+		// Only the connection factory is started, to load the KeyStore
+		this.connectionFactory.start();
+	}
+
+	@Setup(Level.Invocation)
+	public void newEndPoint() {
+		this.input = ByteBuffer.wrap("https".equals(this.protocol) ? TLS_CLIENT_HELLO : HTTP_REQUEST);
+		this.endPoint = new ByteArrayEndPoint();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		this.connectionFactory.stop();
+	}
+
+	@Benchmark
+	public Connection detectProtocol() {
+		Connection connection = this.connectionFactory.newConnection(this.connector, this.endPoint);
+		this.endPoint.setConnection(connection);
+		connection.onOpen();
+		// The client's first bytes arrive, which runs the detection on this thread
+		this.endPoint.addInput(this.input);
+		return this.endPoint.getConnection();
+	}
+}
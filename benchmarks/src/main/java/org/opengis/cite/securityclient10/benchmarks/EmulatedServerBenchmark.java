@@ -0,0 +1,70 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.opengis.cite.securityclient10.httpServer.EmulatedServer;
+import org.opengis.cite.securityclient10.httpServer.EmulatedServerRegistry;
+import org.opengis.cite.securityclient10.httpServer.ServerOptions;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for handling a GetCapabilities request with an emulated server created for every request,
+ * as the servlet did before, or with one emulated server created for the test session.
+ *
+ * The request is for the same session path every time, so the capabilities document is served from
+ * the cache and the difference between the two cases is the cost of creating the emulated server.
+ * Run with `-prof gc` to compare the bytes allocated per request.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmulatedServerBenchmark {
+
+	@Param({ "perRequest", "perSession" })
+	public String lifecycle;
+
+	@Param({ "wms111", "wms13", "wps20" })
+	public String serviceType;
+
+	private ServerOptions options;
+	private EmulatedServer sessionServer;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+
+	@Setup
+	public void setUp() {
+		this.options = new ServerOptions(this.serviceType);
+		this.options.setAuthentication("none");
+		this.sessionServer = EmulatedServerRegistry.createServer(this.options);
+		String service = this.serviceType.startsWith("wms") ? "WMS" : "WPS";
+		this.request = ServletMocks.getRequest("/session/full", "service=" + service + "&request=GetCapabilities");
+		this.response = ServletMocks.discardingResponse();
+	}
+
+	@Benchmark
+	public void getCapabilities() throws IOException, TransformerException {
+		EmulatedServer server = "perRequest".equals(this.lifecycle)
+				? EmulatedServerRegistry.createServer(this.options)
+				: this.sessionServer;
+		server.handleRequest(this.request, this.response);
+	}
+}
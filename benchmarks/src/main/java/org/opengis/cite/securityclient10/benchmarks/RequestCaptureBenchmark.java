@@ -0,0 +1,98 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.opengis.cite.securityclient10.httpServer.RequestRepresenter;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for capturing the requests of a test session with a RequestRepresenter and saving them
+ * for the test methods.
+ *
+ * A RequestRepresenter only ever grows, so each operation captures a whole test session of
+ * `requestCount` requests into a new RequestRepresenter rather than appending to a shared one.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestCaptureBenchmark {
+
+	/**
+	 * Number of requests in the test session. A secure client makes at least two requests for a
+	 * session with SAML 2.0 authentication.
+	 */
+	@Param({ "1", "3" })
+	public int requestCount;
+
+	private HttpServletRequest[] requests;
+	private RequestRepresenter captured;
+	private Path directory;
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException, ParserConfigurationException, TransformerException {
+		this.requests = new HttpServletRequest[this.requestCount];
+		for (int i = 0; i < this.requestCount; i++) {
+			this.requests[i] = ServletMocks.getRequest("/session",
+					"service=WMS&request=GetCapabilities&version=1.3.0&sequence=" + i);
+		}
+
+		this.captured = captureSession();
+		this.directory = Files.createTempDirectory("ets-security-client10-benchmarks");
+		this.file = this.directory.resolve("requests.xml");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+		Files.deleteIfExists(this.directory);
+	}
+
+	/**
+	 * Create a RequestRepresenter and serialize every request of the session into it.
+	 */
+	@Benchmark
+	public RequestRepresenter serializeRequest()
+			throws IOException, ParserConfigurationException, TransformerException {
+		return captureSession();
+	}
+
+	/**
+	 * Save the captured requests of the session to a file.
+	 */
+	@Benchmark
+	public void saveToPath() throws IOException, TransformerException {
+		this.captured.saveToPath(this.file);
+	}
+
+	private RequestRepresenter captureSession()
+			throws IOException, ParserConfigurationException, TransformerException {
+		RequestRepresenter representer = new RequestRepresenter();
+		for (HttpServletRequest request : this.requests) {
+			representer.serializeRequest(request);
+		}
+		return representer;
+	}
+}
@@ -0,0 +1,56 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerException;
+
+import org.opengis.cite.securityclient10.httpServer.SamlAuthRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the SAML 2.0 Authentication Request added to capabilities documents when the
+ * emulated server requires SAML 2.0 authentication.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamlAuthRequestBenchmark {
+
+	private static final String HREF = "https://localhost:10080/session";
+
+	private SamlAuthRequest authRequest;
+
+	@Setup
+	public void setUp() {
+		this.authRequest = new SamlAuthRequest(HREF);
+	}
+
+	/**
+	 * Encode an existing request as a deflated, base64 and URL encoded query parameter.
+	 */
+	@Benchmark
+	public String toUrlParameterString() throws TransformerException {
+		return this.authRequest.toUrlParameterString();
+	}
+
+	/**
+	 * Create and encode a new request, as the emulated servers do for every SAML 2.0 response.
+	 */
+	@Benchmark
+	public String createAndEncode() throws TransformerException {
+		return new SamlAuthRequest(HREF).toUrlParameterString();
+	}
+}
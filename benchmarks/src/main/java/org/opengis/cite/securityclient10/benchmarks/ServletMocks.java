@@ -0,0 +1,167 @@
+package org.opengis.cite.securityclient10.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.cite.servlet.ReadListener;
+import org.opengis.cite.servlet.ServletInputStream;
+import org.opengis.cite.servlet.ServletOutputStream;
+import org.opengis.cite.servlet.WriteListener;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+
+/**
+ * Mocked servlet requests and responses for the benchmarks.
+ *
+ * The mocks are created with Mockito's stub-only setting, so invocations are not recorded and the
+ * mocks do not add allocations of their own to the measured operations. Response bodies are
+ * discarded.
+ *
+ */
+public class ServletMocks {
+
+	private ServletMocks() {
+	}
+
+	/**
+	 * Create a GET request for an emulated server, as sent by a secure client over HTTPS.
+	 * @param path Path of the test session, e.g. "/nonce"
+	 * @param queryString Query string of the request, without the leading "?"
+	 * @return Mocked HttpServletRequest
+	 */
+	public static HttpServletRequest getRequest(String path, String queryString) {
+		final Map<String, String> parameters = new LinkedHashMap<String, String>();
+		for (String pair : queryString.split("&")) {
+			String[] keyValue = pair.split("=", 2);
+			parameters.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+		}
+
+		final Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Host", "localhost:10080");
+		headers.put("User-Agent", "ets-security-client10-benchmarks");
+		headers.put("Accept", "application/xml, text/xml");
+		headers.put("Accept-Encoding", "gzip, deflate");
+		headers.put("Connection", "keep-alive");
+
+		HttpServletRequest request = mock(HttpServletRequest.class, withSettings().stubOnly());
+		when(request.getMethod()).thenReturn("GET");
+		when(request.isSecure()).thenReturn(true);
+		when(request.getScheme()).thenReturn("https");
+		when(request.getServerName()).thenReturn("localhost");
+		when(request.getServerPort()).thenReturn(10080);
+		when(request.getRequestURI()).thenReturn(path);
+		when(request.getPathInfo()).thenReturn(path);
+		when(request.getQueryString()).thenReturn(queryString);
+		when(request.getCharacterEncoding()).thenReturn("UTF-8");
+		when(request.getContentLength()).thenReturn(0);
+		when(request.getParameterNames()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				return Collections.enumeration(parameters.keySet());
+			}
+		});
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			when(request.getParameter(parameter.getKey())).thenReturn(parameter.getValue());
+		}
+		when(request.getHeaderNames()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				return Collections.enumeration(headers.keySet());
+			}
+		});
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			when(request.getHeader(header.getKey())).thenReturn(header.getValue());
+		}
+		try {
+			// Every call needs a new stream, as the request body is consumed by reading it
+			when(request.getInputStream()).thenAnswer(new Answer<Object>() {
+				@Override
+				public Object answer(InvocationOnMock invocation) {
+					return new EmptyInputStream();
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return request;
+	}
+
+	/**
+	 * Create a response that discards everything written to it.
+	 * @return Mocked HttpServletResponse
+	 */
+	public static HttpServletResponse discardingResponse() {
+		HttpServletResponse response = mock(HttpServletResponse.class, withSettings().stubOnly());
+		try {
+			when(response.getOutputStream()).thenReturn(new DiscardingOutputStream());
+			when(response.getWriter()).thenReturn(new PrintWriter(new DiscardingWriter()));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return response;
+	}
+
+	private static class EmptyInputStream extends ServletInputStream {
+		@Override
+		public int read() {
+			return -1;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return true;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+		}
+	}
+
+	private static class DiscardingOutputStream extends ServletOutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+		}
+	}
+
+	private static class DiscardingWriter extends Writer {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -1,17 +1,10 @@
 package org.opengis.cite.securityclient10;
 
-import java.io.File;
-import java.io.IOException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
+import org.opengis.cite.securityclient10.httpServer.RequestSet;
 import org.testng.ITestContext;
 import org.testng.SkipException;
 import org.testng.annotations.BeforeClass;
 import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
 /**
  * A supporting base class that sets up a common test fixture. These
@@ -30,6 +23,12 @@ public class CommonFixture {
      */
     protected Document testRequestSet;
     
+    /**
+     * Read-only, indexed view of the secure client requests in {@link #testRequestSet}. This is shared
+     * by every test class in the test suite run.
+     */
+    protected RequestSet testRequests;
+    
     /**
      * Service type string from test run properties
      */
@@ -51,28 +50,23 @@ public class CommonFixture {
     }
     
     /**
-     * Obtain the Implementation Under Test (IUT) from the ISuite context. This is a path to a file
-     * containing the serialized request(s) made by the secure client. See 
+     * Obtain the Implementation Under Test (IUT) from the ISuite context. This is the request set
+     * made by the secure client, which is read once for the test suite by
+     * {@link SuiteFixtureListener}. See 
      * {@link org.opengis.cite.securityclient10.httpServer.RequestRepresenter} for XML structure details.
      * 
      * @param testContext The test (group) context.
-     * @throws ParserConfigurationException Could not create new document builder
      */
     @BeforeClass
-    public void obtainIUT(ITestContext testContext) throws ParserConfigurationException {
-        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.TEST_IUT.getName());
-        if (null != obj) {
-            String iutPath = String.class.cast(obj);
-            File iutFile = new File(iutPath);
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            try {
-				this.testRequestSet = db.parse(iutFile);
-			} catch (SAXException | IOException e) {
-				// If input file could not be parsed
-				e.printStackTrace();
-				this.testRequestSet = db.newDocument();
-			}
+    public void obtainIUT(ITestContext testContext) {
+        Object requests = testContext.getSuite().getAttribute(SuiteAttribute.TEST_REQUESTS.getName());
+        if (null != requests) {
+            this.testRequestSet = Document.class.cast(requests);
+        }
+        
+        Object requestSet = testContext.getSuite().getAttribute(SuiteAttribute.TEST_REQUEST_SET.getName());
+        if (null != requestSet) {
+            this.testRequests = RequestSet.class.cast(requestSet);
         }
     }
     
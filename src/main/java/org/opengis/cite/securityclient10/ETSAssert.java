@@ -7,12 +7,9 @@ import java.util.logging.Logger;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
 import javax.xml.validation.Validator;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
-import org.opengis.cite.securityclient10.util.NamespaceBindings;
 import org.opengis.cite.securityclient10.util.XMLUtils;
 import org.opengis.cite.validation.ValidationErrorHandler;
 import org.testng.Assert;
@@ -72,13 +69,9 @@ public class ETSAssert {
         if (null == context) {
             throw new NullPointerException("Context node is null.");
         }
-        NamespaceBindings bindings = NamespaceBindings.withStandardBindings();
-        bindings.addAllBindings(namespaceBindings);
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        xpath.setNamespaceContext(bindings);
         Boolean result;
         try {
-            result = (Boolean) xpath.evaluate(expr, context, XPathConstants.BOOLEAN);
+            result = (Boolean) XMLUtils.evaluateXPath(context, expr, namespaceBindings, XPathConstants.BOOLEAN);
         } catch (XPathExpressionException xpe) {
             String msg = ErrorMessage.format(ErrorMessageKeys.XPATH_ERROR, expr);
             LOGR.log(Level.WARNING, msg, xpe);
@@ -0,0 +1,89 @@
+package org.opengis.cite.securityclient10;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opengis.cite.securityclient10.httpServer.RequestSet;
+import org.w3c.dom.Document;
+
+/**
+ * In-process handoff of the secure client requests document from the test run controller to the
+ * test suite. The controller publishes the captured document under an identifier that is passed to
+ * the suite as the {@link TestRunArg#REQUESTS_ID} test run property, and the suite fixture listener
+ * takes it back to set the {@link SuiteAttribute#TEST_REQUESTS} and
+ * {@link SuiteAttribute#TEST_REQUEST_SET} suite attributes. The requests are never written to and
+ * parsed from a file on the way.
+ *
+ * Published requests are removed when they are taken, so they are handed off to one suite. The
+ * controller removes them once the run returns, in case the suite never took them.
+ */
+public class RequestsHandoff {
+
+    private static final ConcurrentMap<String, Requests> published =
+            new ConcurrentHashMap<String, Requests>();
+
+    /**
+     * The requests of one test run, as a document and as its typed view.
+     */
+    public static class Requests {
+
+        private final Document document;
+        private final RequestSet requestSet;
+
+        private Requests(Document document, RequestSet requestSet) {
+            this.document = document;
+            this.requestSet = requestSet;
+        }
+
+        /**
+         * @return Document with the secure client requests
+         */
+        public Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @return Read-only, indexed view of the same requests
+         */
+        public RequestSet getRequestSet() {
+            return requestSet;
+        }
+    }
+
+    private RequestsHandoff() {
+    }
+
+    /**
+     * Publish the requests for a test suite run.
+     *
+     * @param id Unique identifier of the test run
+     * @param document Document with the secure client requests, see
+     *            {@link org.opengis.cite.securityclient10.httpServer.RequestRepresenter}
+     * @param requestSet Read-only, indexed view of the same requests
+     */
+    public static void publish(String id, Document document, RequestSet requestSet) {
+        published.put(id, new Requests(document, requestSet));
+    }
+
+    /**
+     * Take the requests published for a test suite run.
+     *
+     * @param id Identifier the requests were published with, may be null
+     * @return Requests for the test run, or null if nothing was published for the identifier
+     */
+    public static Requests take(String id) {
+        if (null == id) {
+            return null;
+        }
+        return published.remove(id);
+    }
+
+    /**
+     * Remove the requests published for a test suite run, if they were not taken.
+     *
+     * @param id Identifier the requests were published with
+     */
+    public static void remove(String id) {
+        published.remove(id);
+    }
+}
@@ -1,5 +1,8 @@
 package org.opengis.cite.securityclient10;
 
+import org.opengis.cite.securityclient10.httpServer.RequestSet;
+import org.w3c.dom.Document;
+
 import com.sun.jersey.api.client.Client;
 
 /**
@@ -68,7 +71,15 @@ public enum SuiteAttribute {
     /**
      * A String for the filesystem path of the serialized client requests document.
      */
-    TEST_IUT("testIUT", String.class);
+    TEST_IUT("testIUT", String.class),
+    /**
+     * A Document with the serialized client requests, handed off in memory by the test run controller.
+     */
+    TEST_REQUESTS("testRequests", Document.class),
+    /**
+     * A read-only, indexed RequestSet view of the serialized client requests.
+     */
+    TEST_REQUEST_SET("testRequestSet", RequestSet.class);
 	
     private final Class attrType;
     private final String attrName;
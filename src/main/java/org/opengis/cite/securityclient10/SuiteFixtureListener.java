@@ -1,11 +1,26 @@
 package org.opengis.cite.securityclient10;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.opengis.cite.securityclient10.httpServer.RequestJournal;
+import org.opengis.cite.securityclient10.httpServer.RequestSet;
 import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+import org.opengis.cite.securityclient10.util.XPathCache;
 import org.testng.ISuite;
 import org.testng.ISuiteListener;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
 /**
  * A listener that performs various tasks before and after a test suite is run,
@@ -28,7 +43,9 @@ public class SuiteFixtureListener implements ISuiteListener {
     }
 
     @Override
-    public void onFinish(ISuite suite) {}
+    public void onFinish(ISuite suite) {
+        TestSuiteLogger.log(Level.FINE, XPathCache.statistics());
+    }
 
     /**
      * Processes test suite arguments and sets suite attributes accordingly.
@@ -75,5 +92,64 @@ public class SuiteFixtureListener implements ISuiteListener {
         
         suite.setAttribute(SuiteAttribute.TEST_IUT.getName(), 
         		params.get(TestRunArg.IUT.toString()));
+        
+        // Obtain the request set once for the whole suite, so test classes share it rather than
+        // parsing it again each
+        RequestsHandoff.Requests handoff = RequestsHandoff.take(params.get(TestRunArg.REQUESTS_ID.toString()));
+        if (null != handoff) {
+        	suite.setAttribute(SuiteAttribute.TEST_REQUESTS.getName(), handoff.getDocument());
+        	suite.setAttribute(SuiteAttribute.TEST_REQUEST_SET.getName(), handoff.getRequestSet());
+        } else {
+        	Document requests = parseRequestsFile(params.get(TestRunArg.IUT.toString()));
+        	if (null != requests) {
+        		suite.setAttribute(SuiteAttribute.TEST_REQUESTS.getName(), requests);
+        		suite.setAttribute(SuiteAttribute.TEST_REQUEST_SET.getName(), RequestSet.fromDocument(requests));
+        	}
+        }
+    }
+
+    /**
+     * Parse the serialized client requests document at a path. If the file could not be parsed,
+     * an empty document is used instead. A document with a ".gz" file name is read as gzip
+     * compressed, and a ".journal" file is rebuilt from a {@link RequestJournal}.
+     * 
+     * @param iutPath
+     *            Filesystem path of the requests document, may be null
+     * @return Document with the client requests, or null if no path was given
+     */
+    private Document parseRequestsFile(String iutPath) {
+        if (null == iutPath || iutPath.isEmpty()) {
+        	return null;
+        }
+        DocumentBuilder db;
+        try {
+        	db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+        	TestSuiteLogger.log(Level.WARNING, "Could not create a document builder for " + iutPath, e);
+        	return null;
+        }
+        if (iutPath.endsWith(".journal")) {
+        	try {
+        		return RequestJournal.readDocument(Paths.get(iutPath));
+        	} catch (IOException e) {
+        		TestSuiteLogger.log(Level.WARNING, "Could not read request journal " + iutPath, e);
+        		return db.newDocument();
+        	}
+        }
+        try (InputStream input = openRequestsFile(iutPath)) {
+        	return db.parse(input);
+        } catch (SAXException | IOException e) {
+        	// If input file could not be parsed
+        	TestSuiteLogger.log(Level.WARNING, "Could not parse requests document " + iutPath, e);
+        	return db.newDocument();
+        }
+    }
+
+    private static InputStream openRequestsFile(String iutPath) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(iutPath)));
+        if (iutPath.endsWith(".gz")) {
+            return new GZIPInputStream(input);
+        }
+        return input;
     }
 }
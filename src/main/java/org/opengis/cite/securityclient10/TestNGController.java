@@ -1,7 +1,6 @@
 package org.opengis.cite.securityclient10;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -11,6 +10,8 @@ import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,15 +19,17 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
-import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 
-import org.opengis.cite.securityclient10.httpServer.RequestRepresenter;
+import org.opengis.cite.securityclient10.httpServer.BodyCapture;
+import org.opengis.cite.securityclient10.httpServer.RequestJournal;
+import org.opengis.cite.securityclient10.httpServer.RequestsSnapshot;
+import org.opengis.cite.securityclient10.httpServer.ServerManager;
 import org.opengis.cite.securityclient10.httpServer.ServerOptions;
+import org.opengis.cite.securityclient10.httpServer.ServerWarmup;
 import org.opengis.cite.securityclient10.httpServer.TestServer;
 import org.opengis.cite.securityclient10.util.PropertiesDocument;
 import org.opengis.cite.securityclient10.util.TestSuiteLogger;
-import org.opengis.cite.servlet.ServletException;
 import org.w3c.dom.Document;
 
 import com.beust.jcommander.JCommander;
@@ -42,13 +45,49 @@ public class TestNGController implements TestSuiteController {
 
     private static final Logger LOG = Logger.getLogger(TestNGController.class.getName());
 
+    /**
+     * System property that enables a warm-up when the controller is created, see
+     * {@link #warmUp(Document)}. The value is either the path of an XML test run properties file, in
+     * which case the embedded server is also started, or "true" to only warm up the emulated servers.
+     */
+    public static final String WARMUP_PROPERTY = "ets-security-client10.warmup";
+
     private TestRunExecutor executor;
     private Properties etsProperties = new Properties();
     /**
-     * A singleton to refer to the HTTP server process, which should be re-used between test sessions.
-     * Re-use is only needed for TEAM Engine to run multiple test sessions simultaneously.
+     * Number of minutes an embedded server is kept running after its last test session has finished.
+     */
+    private static final long SERVER_IDLE_TIMEOUT_MINUTES = 10;
+
+    /**
+     * Number of hours after its last request that a request journal left behind by an earlier run
+     * is deleted, see {@link RequestJournal}.
+     */
+    private static final long JOURNAL_RETENTION_HOURS = 24;
+
+    /**
+     * File name pattern of the request journals in the temporary directory.
+     */
+    private static final String JOURNAL_GLOB = "requests-*.journal";
+
+    /**
+     * The embedded servers, with one server shared by the test sessions for each address and port pool.
+     * Sharing is needed for TEAM Engine to run multiple test sessions simultaneously.
+     */
+    private static final ServerManager servers = new ServerManager(SERVER_IDLE_TIMEOUT_MINUTES,
+            TimeUnit.MINUTES);
+
+    /**
+     * Set once the warm-up given by {@link #WARMUP_PROPERTY} has been started, as TEAM Engine may
+     * create more than one controller.
      */
-    private static volatile TestServer httpServer;
+    private static final AtomicBoolean warmUpStarted = new AtomicBoolean();
+
+    /**
+     * Set once the stale request journals have been swept, as TEAM Engine may create more than one
+     * controller.
+     */
+    private static final AtomicBoolean journalsSwept = new AtomicBoolean();
 
     /**
      * A convenience method for running the test suite using a command-line
@@ -97,10 +136,7 @@ public class TestNGController implements TestSuiteController {
         System.out.println("Test results: " + testResults.getSystemId());
                 
         // Shut down HTTP server
-        TestServer server = getServer();
-        if (server != null) {
-        	server.shutdown();
-        }
+        servers.shutdown();
     }
 
     /**
@@ -139,6 +175,15 @@ public class TestNGController implements TestSuiteController {
         TestSuiteLogger.log(Level.CONFIG, "Using outputDirPath: " + resultsDir.getAbsolutePath());
         // NOTE: setting third argument to 'true' enables the default listeners
         this.executor = new TestNGExecutor(tngSuite.toString(), resultsDir.getAbsolutePath(), false);
+
+        if (journalsSwept.compareAndSet(false, true)) {
+            deleteStaleJournals();
+        }
+
+        String warmUpArgs = System.getProperty(WARMUP_PROPERTY);
+        if (warmUpArgs != null && !warmUpArgs.isEmpty() && warmUpStarted.compareAndSet(false, true)) {
+            warmUpInBackground(warmUpArgs);
+        }
     }
 
     @Override
@@ -185,10 +230,11 @@ public class TestNGController implements TestSuiteController {
 
         logConformanceClasses(serviceType, hasHttpMethods, hasW3CCors, hasExceptionHandling, hasPostContentType, auth);
 
+        String address = testRunProperties.getProperty(TestRunArg.Address.toString());
+        int[] ports = TestServer.parsePorts(testRunProperties.getProperty(TestRunArg.Port.toString()));
         TestServer server;
 		try {
-			server = getServer(testRunProperties.getProperty(TestRunArg.Address.toString()),
-					Integer.parseInt(testRunProperties.getProperty(TestRunArg.Port.toString())),
+			server = servers.acquire(address, ports,
 					testRunProperties.getProperty(TestRunArg.JKS_Path.toString()),
 					testRunProperties.getProperty(TestRunArg.JKS_Password.toString()));
 		} catch (Exception e) {
@@ -197,11 +243,14 @@ public class TestNGController implements TestSuiteController {
 		}
 
         String path;
+        boolean recoverable;
         if (testRunProperties.getProperty(TestRunArg.Path.toString()) == "") {
         	// Generate nonce for this test session, which will be used as the unique servlet address
             path = this.getNonce();
+            recoverable = false;
         } else {
         	path = testRunProperties.getProperty(TestRunArg.Path.toString());
+        	recoverable = true;
         }
 
         // Register a servlet handler with the path, service type, and requirement class options
@@ -212,18 +261,35 @@ public class TestNGController implements TestSuiteController {
         serverOptions.setCors(hasW3CCors);
         serverOptions.setHttpExceptionHandling(hasExceptionHandling);
         serverOptions.setHttpPostContentType(hasPostContentType);
+        serverOptions.setBodyCapture(createBodyCapture(testRunProperties));
+        if (recoverable) {
+            // Only a session with a given path can be started again after a restart, so a session
+            // with a generated path gets no journal
+            serverOptions.setJournalPath(Paths.get(System.getProperty("java.io.tmpdir"),
+                    "requests-" + path + ".journal"));
+        }
+        // Write each request to a requests document as an audit artifact as it arrives, unless
+        // disabled. The file is not needed by the test suite, which is handed the requests in memory.
+        String nonce = this.getNonce();
+        Path requestsFilePath = null;
+        if (!"false".equals(testRunProperties.getProperty(TestRunArg.SAVE_REQUESTS.toString()))) {
+            requestsFilePath = Paths.get(System.getProperty("java.io.tmpdir"), "requests-" + nonce + ".xml");
+            serverOptions.setRequestsFilePath(requestsFilePath);
+        }
 
+        int port;
         try {
-			server.registerHandler(path, serverOptions);
+			port = server.registerHandler(path, serverOptions);
 		} catch (Exception e) {
 			// If handler could not be created, skip to tests
+			servers.release(address, ports);
 			return executeWithException(e);
 		}
 
-        // Print out the servlet test path for the test user
-        System.out.println(String.format("Your test session endpoint is at https://%s:%s/%s",
-        		testRunProperties.getProperty(TestRunArg.Host.toString()),
-        		testRunProperties.getProperty(TestRunArg.Port.toString()), path));
+        // Print out the servlet test path for the test user, with the port assigned to the session
+        testRunProperties.setProperty(TestRunArg.Port.toString(), Integer.toString(port));
+        System.out.println(String.format("Your test session endpoint is at https://%s:%d/%s",
+        		testRunProperties.getProperty(TestRunArg.Host.toString()), port, path));
 
     	// Wait for TestServer to receive a request for this test run,
     	// or for the timeout to be reached.
@@ -231,34 +297,37 @@ public class TestNGController implements TestSuiteController {
 			server.waitForRequest(path);
 		} catch (InterruptedException | ExecutionException e) {
 			// If the waiting thread has any errors, skip to tests
+			server.unregisterHandler(path);
+			servers.release(address, ports);
 			return executeWithException(e);
 		}
 
-    	// Retrieve the request(s) from the secure client
-    	RequestRepresenter requests = server.getRequests(path);
-
-    	// Save to file
-    	String nonce = this.getNonce();
-    	Path requestsFilePath = Paths.get(System.getProperty("java.io.tmpdir"),
-    			"requests-" + nonce + ".xml");
-    	try {
-			requests.saveToPath(requestsFilePath);
-		} catch (FileNotFoundException | TransformerException e) {
-			// If the requests could not be saved to the temporary file, skip to tests
-			return executeWithException(e);
-		}
-
-    	// Add argument for requests document path as IUT
-    	testRunProperties.setProperty(TestRunArg.IUT.toString(),
-    			requestsFilePath.toAbsolutePath().toString());
-
-    	// Release the servlet as the path is not needed anymore
+    	// Copy the request(s) from the secure client, with the bodies that were spilled to files read
+    	// back into memory, as the files are deleted when the session is released
+    	RequestsSnapshot requests;
     	try {
-			server.unregisterHandler(path);
-		} catch (ServletException e) {
-			// If the handler could not be unregistered, skip to tests
-			return executeWithException(e);
-		}
+    		requests = server.snapshotRequests(path);
+    	} catch (IOException e) {
+    		server.unregisterHandler(path);
+    		servers.release(address, ports);
+    		return executeWithException(e);
+    	}
+
+    	// Hand off the requests to the test suite in memory
+    	RequestsHandoff.publish(nonce, requests.getDocument(), requests.getRequestSet());
+    	testRunProperties.setProperty(TestRunArg.REQUESTS_ID.toString(), nonce);
+
+    	if (requestsFilePath != null) {
+    		// Add argument for requests document path as IUT
+    		testRunProperties.setProperty(TestRunArg.IUT.toString(),
+    				requestsFilePath.toAbsolutePath().toString());
+    	}
+
+    	// Release the test session as the path is not needed anymore. This also completes the
+    	// requests document.
+    	server.unregisterHandler(path);
+    	// The server is shut down once no test session has used it for the idle timeout
+    	servers.release(address, ports);
 
     	// Remove sensitive properties from test run properties, so they are not leaked into
     	// the test results.
@@ -267,33 +336,90 @@ public class TestNGController implements TestSuiteController {
     	// The JKS password should not be shown.
     	testRunProperties.removeProperty(TestRunArg.JKS_Password.toString());
 
-        return executor.execute(testRunProperties.getDocument());
+        try {
+            return executor.execute(testRunProperties.getDocument());
+        } finally {
+            // The suite takes the requests when it starts, but it may fail before that
+            RequestsHandoff.remove(nonce);
+        }
     }
 
     /**
-     * Return a reference to the HTTP Server instance. If it has not been initialized (i.e. null) then
-     * a new instance is created.
+     * Prepare the test suite for its first test run. The first test run otherwise pays for starting
+     * the embedded server, loading the keystore, and the first request to each emulated server. This
+     * hook does both up front: it starts the embedded server for the address, port and keystore in
+     * `testRunArgs`, and sends a synthetic capabilities and SAML request through an emulated server for
+     * each service type.
+     *
+     * The embedded server is kept running for the idle timeout of the server manager, so the first test
+     * run should start within that time to use it.
      *
-     * @param address String representing the host interface on which to bind the Test Server
-     * @param port Integer representing the port to bind the Test Server
-     * @param jks_path Path to the Java KeyStore
-     * @param jks_password Password to unlock the KeyStore
-     * @return A TestServer instance that is the embedded Jetty web server.
-     * @throws Exception Exception if Test Server could not be initialized and started
+     * TEAM Engine creates the controller when it starts, so setting the {@link #WARMUP_PROPERTY}
+     * system property runs this hook in the background at startup.
+     *
+     * @param testRunArgs Test run properties with the address, port and keystore of the embedded
+     * server, as for {@link #doTestRun(Document)}. If null, the embedded server is not started.
+     * @throws Exception Exception if the test run properties are invalid or the embedded server could
+     * not be started
      */
-    private static TestServer getServer(String address, int port, String jks_path, String jks_password) throws Exception {
-        // Use double-checked locking to prevent race condition.
-        if (null == httpServer) {
-            if (httpServer == null) {
-                httpServer = new TestServer(address, port, jks_path, jks_password);
-            }
+    public void warmUp(Document testRunArgs) throws Exception {
+        long start = System.nanoTime();
+        if (testRunArgs != null) {
+            PropertiesDocument testRunProperties = new PropertiesDocument(testRunArgs);
+            validateTestRunArgs(testRunProperties);
+            String address = testRunProperties.getProperty(TestRunArg.Address.toString());
+            int[] ports = TestServer.parsePorts(testRunProperties.getProperty(TestRunArg.Port.toString()));
+            servers.acquire(address, ports, testRunProperties.getProperty(TestRunArg.JKS_Path.toString()),
+                    testRunProperties.getProperty(TestRunArg.JKS_Password.toString()));
+            servers.release(address, ports);
         }
+        int serviceTypes = ServerWarmup.warmUpEmulatedServers();
+        TestSuiteLogger.log(Level.INFO, String.format("Warm-up prepared %d emulated servers in %d ms",
+                serviceTypes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
 
-        return httpServer;
+    /**
+     * Run {@link #warmUp(Document)} on a daemon thread, so TEAM Engine is not delayed. Failures are
+     * logged, as the first test run will try again.
+     *
+     * @param warmUpArgs Value of the {@link #WARMUP_PROPERTY} system property
+     */
+    private void warmUpInBackground(final String warmUpArgs) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Document testRunArgs = null;
+                    if (!"true".equals(warmUpArgs)) {
+                        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+                        testRunArgs = dbf.newDocumentBuilder().parse(new File(warmUpArgs));
+                    }
+                    warmUp(testRunArgs);
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Could not warm up with " + warmUpArgs, e);
+                }
+            }
+        }, "ets-security-client10-warmup");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private static TestServer getServer() {
-        return httpServer;
+    /**
+     * Delete the request journals in the temporary directory that have not been written to for
+     * {@link #JOURNAL_RETENTION_HOURS}. Recent journals are kept, as their sessions may still be
+     * started again after this restart.
+     */
+    private static void deleteStaleJournals() {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"));
+        try {
+            int deleted = RequestJournal.deleteStale(directory, JOURNAL_GLOB, JOURNAL_RETENTION_HOURS,
+                    TimeUnit.HOURS);
+            if (deleted > 0) {
+                TestSuiteLogger.log(Level.INFO, "Deleted " + deleted + " stale request journal(s) in " + directory);
+            }
+        } catch (IOException e) {
+            TestSuiteLogger.log(Level.WARNING, "Could not sweep request journals in " + directory, e);
+        }
     }
 
     /**
@@ -340,6 +466,28 @@ public class TestNGController implements TestSuiteController {
         return (httpMethods != null && httpMethods.equals("true"));
     }
 
+    /**
+     * Create the body capture configuration from the body storage and maximum body size test run
+     * properties. Missing properties use the defaults of {@link BodyCapture}.
+     *
+     * @param testRunProperties PropertiesDocument with validated test run properties
+     * @return BodyCapture for the test session
+     */
+    private BodyCapture createBodyCapture(PropertiesDocument testRunProperties) {
+        BodyCapture.Storage storage = BodyCapture.Storage.parse(
+                testRunProperties.getProperty(TestRunArg.BODY_STORAGE.toString()));
+        String maxBodySizeParam = testRunProperties.getProperty(TestRunArg.MAX_BODY_SIZE.toString());
+        long maxSize = BodyCapture.DEFAULT_MAX_SIZE;
+        if (maxBodySizeParam != null && !maxBodySizeParam.isEmpty()) {
+            maxSize = Long.parseLong(maxBodySizeParam);
+        }
+        if (storage == BodyCapture.Storage.TEXT && maxSize == BodyCapture.DEFAULT_MAX_SIZE) {
+            return BodyCapture.DEFAULT;
+        }
+        int memoryThreshold = (int) Math.min(BodyCapture.DEFAULT_MEMORY_THRESHOLD, maxSize);
+        return new BodyCapture(storage, memoryThreshold, maxSize);
+    }
+
     private void logConformanceClasses( String serviceType, boolean hasHttpMethods, boolean hasW3CCors,
                                         boolean hasExceptionHandling, boolean hasPostContentType, String auth ) {
         // Print out information on which conformance classes will be tested
@@ -75,7 +75,30 @@ public enum TestRunArg {
 	 * The request(s) from the secure client, containing the headers and body,
 	 * that will be verified by the test suite.
 	 */
-	IUT;
+	IUT,
+	
+	/**
+	 * Whether the request(s) from the secure client will also be saved to a file, as an audit 
+	 * artifact. The file is written in the background and the test suite does not read it.
+	 */
+	SAVE_REQUESTS,
+	
+	/**
+	 * How request bodies from the secure client are stored in the requests document: "text" 
+	 * (default), "base64" or "digest".
+	 */
+	BODY_STORAGE,
+	
+	/**
+	 * The maximum number of bytes of each request body from the secure client that will be captured.
+	 */
+	MAX_BODY_SIZE,
+	
+	/**
+	 * Identifier of the request(s) document handed off in memory by the test run controller, see 
+	 * {@link RequestsHandoff}. This is set by the test suite and not by test users.
+	 */
+	REQUESTS_ID;
 
     @Override
     public String toString() {
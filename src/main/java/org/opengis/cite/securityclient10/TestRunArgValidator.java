@@ -1,10 +1,14 @@
 package org.opengis.cite.securityclient10;
 
-import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+
+import org.opengis.cite.securityclient10.httpServer.BodyCapture;
+import org.opengis.cite.securityclient10.httpServer.EmulatedServerRegistry;
+import org.opengis.cite.securityclient10.httpServer.TestServer;
 
 /**
  * Validate test run arguments from a Document or a HashMap.
@@ -12,10 +16,13 @@ import java.util.Properties;
 public class TestRunArgValidator {
 
 	/**
-	 * Array of service type test run properties currently supported by this ETS. Should match emulated
-	 * service types in org.opengis.cite.securityclient10.httpServer package.
+	 * Service type test run properties currently supported by this ETS. These are the service types of
+	 * the emulated server factories in the org.opengis.cite.securityclient10.httpServer package.
+	 * @return Read-only set of service types
 	 */
-	private static final String[] allowedServiceTypes = {"wms111", "wms13", "wps20"};
+	private static Set<String> allowedServiceTypes() {
+		return EmulatedServerRegistry.getServiceTypes();
+	}
 	
 	/**
 	 * Validate a String, String HashMap of Test Run Arguments. Raise an exception on invalid data.
@@ -30,7 +37,7 @@ public class TestRunArgValidator {
             		+ TestRunArg.Service_Type.toString());
         }
         
-		if (Arrays.stream(allowedServiceTypes).noneMatch(serviceTypeParam::equals)) {
+		if (!allowedServiceTypes().contains(serviceTypeParam)) {
         	throw new IllegalArgumentException("Unsupported service type in test run properties: " 
         			+ serviceTypeParam);
         }
@@ -43,8 +50,8 @@ public class TestRunArgValidator {
             		+ TestRunArg.Address.toString());
         }
         
-        // Test Server Port
-        Integer portParam = Integer.parseInt(params.get(TestRunArg.Port.toString()));
+        // Test Server Port, or pool of ports
+        int[] portParam = TestServer.parsePorts(params.get(TestRunArg.Port.toString()));
         
         // Test Server Hostname
         String hostParam = params.get(TestRunArg.Host.toString());
@@ -57,6 +64,13 @@ public class TestRunArgValidator {
         // Test Server Path
         String pathParam = params.get(TestRunArg.Path.toString());
         
+        // The path also names the request journal of the session, so it must be a single segment
+        if ((null != pathParam) && (pathParam.contains("/") || pathParam.contains("\\")
+        		|| pathParam.contains(".."))) {
+        	throw new IllegalArgumentException("Test server path must not contain '/', '\\' or '..': " 
+        			+ pathParam);
+        }
+        
         // Java Keystore Path
         String jksParam = params.get(TestRunArg.JKS_Path.toString());
         
@@ -97,6 +111,32 @@ public class TestRunArgValidator {
         
         // Secure Client Requests Document Path
         String iutParam = params.get(TestRunArg.IUT.toString());
+        
+        // Request Body Storage
+        String bodyStorageParam = params.get(TestRunArg.BODY_STORAGE.toString());
+        
+        try {
+        	BodyCapture.Storage.parse(bodyStorageParam);
+        } catch (IllegalArgumentException e) {
+        	throw new IllegalArgumentException("Unsupported body storage in test run properties: " 
+        			+ bodyStorageParam);
+        }
+        
+        // Maximum Request Body Size
+        String maxBodySizeParam = params.get(TestRunArg.MAX_BODY_SIZE.toString());
+        
+        if ((null != maxBodySizeParam) && !maxBodySizeParam.isEmpty()) {
+        	long maxBodySize;
+        	try {
+        		maxBodySize = Long.parseLong(maxBodySizeParam);
+        	} catch (NumberFormatException e) {
+        		maxBodySize = 0;
+        	}
+        	if (maxBodySize <= 0) {
+        		throw new IllegalArgumentException("Maximum body size must be a positive integer: " 
+        				+ maxBodySizeParam);
+        	}
+        }
     }
 
 	/**
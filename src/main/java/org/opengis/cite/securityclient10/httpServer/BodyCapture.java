@@ -0,0 +1,258 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming capture of request bodies for {@link RequestRepresenter}.
+ *
+ * The body is read from the request input stream into a buffer taken from a small shared pool, so
+ * it is not decoded, split into lines or copied more than once. A body that does not fit in the
+ * buffer is spilled to a temporary file, for example a large WPS Execute payload, and reading stops
+ * at the maximum size. Spilled bodies are read back with {@link CapturedBody#load()} when the session
+ * ends. Spill files are deleted if the body cannot be captured, and otherwise when the session is
+ * unregistered from the TestServer. A BodyCapture is immutable and can be shared by every session.
+ *
+ */
+public class BodyCapture {
+
+	/**
+	 * How captured bodies are stored in the requests document.
+	 */
+	public enum Storage {
+		/**
+		 * Decoded text content, using the request character encoding
+		 */
+		TEXT,
+		/**
+		 * Base64 encoded bytes, for bodies that may not be text
+		 */
+		BASE64,
+		/**
+		 * Only the size and SHA-256 digest of the body; the bytes are not kept
+		 */
+		DIGEST;
+
+		/**
+		 * Parse a storage test run property value, ignoring case.
+		 * @param value Storage name, e.g. "base64". Null or empty selects TEXT.
+		 * @return Storage
+		 * @throws IllegalArgumentException If the value is not a storage name
+		 */
+		public static Storage parse(String value) {
+			if (value == null || value.isEmpty()) {
+				return TEXT;
+			}
+			return valueOf(value.toUpperCase(Locale.ROOT));
+		}
+
+		@Override
+		public String toString() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Default size of the in-memory buffer; larger bodies are spilled to a file
+	 */
+	public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Default maximum number of body bytes captured per request
+	 */
+	public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Capture text bodies up to the default sizes
+	 */
+	public static final BodyCapture DEFAULT = new BodyCapture(Storage.TEXT, DEFAULT_MEMORY_THRESHOLD,
+			DEFAULT_MAX_SIZE);
+
+	/**
+	 * Maximum number of idle buffers kept in each pool
+	 */
+	private static final int MAX_POOLED_BUFFERS = 16;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Storage storage;
+	private final int memoryThreshold;
+	private final long maxSize;
+
+	/**
+	 * Idle buffers of `memoryThreshold` bytes
+	 */
+	private final Queue<byte[]> bufferPool;
+	private final AtomicInteger pooledBuffers;
+
+	/**
+	 * Create a body capture configuration.
+	 * @param storage How bodies are stored in the requests document
+	 * @param memoryThreshold Largest body kept in memory, in bytes
+	 * @param maxSize Maximum number of body bytes captured; the rest of a larger body is not read
+	 * @throws IllegalArgumentException If a size is not positive
+	 */
+	public BodyCapture(Storage storage, int memoryThreshold, long maxSize) {
+		if (memoryThreshold <= 0 || maxSize <= 0) {
+			throw new IllegalArgumentException("Body capture sizes must be positive");
+		}
+		this.storage = storage;
+		this.memoryThreshold = memoryThreshold;
+		this.maxSize = maxSize;
+		this.bufferPool = new ConcurrentLinkedQueue<byte[]>();
+		this.pooledBuffers = new AtomicInteger();
+	}
+
+	/**
+	 * @return How bodies are stored in the requests document
+	 */
+	public Storage getStorage() {
+		return this.storage;
+	}
+
+	/**
+	 * @return Largest body kept in memory, in bytes
+	 */
+	public int getMemoryThreshold() {
+		return this.memoryThreshold;
+	}
+
+	/**
+	 * @return Maximum number of body bytes captured
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Read a request body. The stream is read until it ends or the maximum size is reached; it is not
+	 * closed.
+	 * @param input Request body stream
+	 * @return CapturedBody with the body bytes, spill file or digest
+	 * @throws IOException Exception if the body could not be read or spilled to a file
+	 */
+	public CapturedBody capture(InputStream input) throws IOException {
+		MessageDigest digest = (this.storage == Storage.DIGEST) ? newDigest() : null;
+		byte[] buffer = borrowBuffer();
+		try {
+			int filled = 0;
+			long size = 0;
+			Path file = null;
+			OutputStream spill = null;
+			boolean truncated;
+			try {
+				try {
+					while (size < this.maxSize) {
+						if (filled == buffer.length) {
+							// Buffer is full: a body of exactly the buffer size is kept in memory, so only
+							// digest or spill the buffer once more of the body follows, then reuse it
+							int next = input.read();
+							if (next == -1) {
+								break;
+							}
+							if (digest != null) {
+								digest.update(buffer, 0, filled);
+							} else {
+								if (spill == null) {
+									file = Files.createTempFile("ets-security-client10-body-", ".bin");
+									spill = Files.newOutputStream(file);
+								}
+								spill.write(buffer, 0, filled);
+							}
+							buffer[0] = (byte) next;
+							filled = 1;
+							size++;
+							continue;
+						}
+						int length = (int) Math.min(buffer.length - filled, this.maxSize - size);
+						int read = input.read(buffer, filled, length);
+						if (read == -1) {
+							break;
+						}
+						filled += read;
+						size += read;
+					}
+					if (spill != null && filled > 0) {
+						spill.write(buffer, 0, filled);
+					}
+				} finally {
+					if (spill != null) {
+						spill.close();
+					}
+				}
+				truncated = (size >= this.maxSize) && input.read() != -1;
+			} catch (IOException | RuntimeException e) {
+				// Do not leave a partly written spill file behind
+				if (file != null) {
+					deleteSpillFile(file, e);
+				}
+				throw e;
+			}
+
+			if (digest != null) {
+				digest.update(buffer, 0, filled);
+				return new CapturedBody(this.storage, null, null, size, truncated, toHex(digest.digest()));
+			}
+			if (file != null) {
+				return new CapturedBody(this.storage, null, file, size, truncated, null);
+			}
+			return new CapturedBody(this.storage, Arrays.copyOf(buffer, filled), null, size, truncated, null);
+		} finally {
+			returnBuffer(buffer);
+		}
+	}
+
+	private static void deleteSpillFile(Path file, Exception cause) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+		}
+	}
+
+	private byte[] borrowBuffer() {
+		byte[] buffer = this.bufferPool.poll();
+		if (buffer == null) {
+			return new byte[this.memoryThreshold];
+		}
+		this.pooledBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	private void returnBuffer(byte[] buffer) {
+		// Keep a few idle buffers; any others are left to the garbage collector
+		if (this.pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			this.bufferPool.offer(buffer);
+		} else {
+			this.pooledBuffers.decrementAndGet();
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+}
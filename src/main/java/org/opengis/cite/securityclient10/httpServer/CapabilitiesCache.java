@@ -0,0 +1,123 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of serialized capabilities documents for the emulated servers.
+ *
+ * A capabilities document only depends on the service type and requirement class options in
+ * ServerOptions, the base URL of the request, and whether the complete capabilities were requested.
+ * The cache stores the serialized bytes for each combination of those inputs so that repeated
+ * GetCapabilities requests can be written straight to the response without building a DOM tree.
+ *
+ * When the cache is full, the least recently used document is evicted.
+ *
+ */
+public class CapabilitiesCache {
+
+	/**
+	 * Default number of documents to keep in the cache
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+	/**
+	 * Maximum number of documents to keep in the cache
+	 */
+	private final int maximumSize;
+
+	/**
+	 * Serialized documents in access order, so the eldest entry is the least recently used.
+	 * Access must be synchronized on this map.
+	 */
+	private final LinkedHashMap<String, byte[]> documents;
+
+	/**
+	 * Create a capabilities cache that holds up to `maximumSize` documents.
+	 * @param maximumSize Maximum number of documents to keep in the cache
+	 */
+	public CapabilitiesCache(final int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Capabilities cache size must be positive: " + maximumSize);
+		}
+
+		this.maximumSize = maximumSize;
+		this.documents = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > CapabilitiesCache.this.maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Retrieve a serialized capabilities document. The returned array is shared and must not be
+	 * modified.
+	 *
+	 * @param options ServerOptions used to build the document
+	 * @param baseHref The base URL of the request used to build the document
+	 * @param completeCapabilities If the document is the complete capabilities document
+	 * @return Serialized document, or null if it is not in the cache
+	 */
+	public byte[] get(ServerOptions options, String baseHref, boolean completeCapabilities) {
+		String key = createKey(options, baseHref, completeCapabilities);
+		synchronized (this.documents) {
+			return this.documents.get(key);
+		}
+	}
+
+	/**
+	 * Store a serialized capabilities document, evicting the least recently used document if the cache
+	 * is full. The array must not be modified after it has been stored.
+	 *
+	 * @param options ServerOptions used to build the document
+	 * @param baseHref The base URL of the request used to build the document
+	 * @param completeCapabilities If the document is the complete capabilities document
+	 * @param document Serialized document
+	 */
+	public void put(ServerOptions options, String baseHref, boolean completeCapabilities, byte[] document) {
+		String key = createKey(options, baseHref, completeCapabilities);
+		synchronized (this.documents) {
+			this.documents.put(key, document);
+		}
+	}
+
+	/**
+	 * The number of documents currently in the cache.
+	 * @return int
+	 */
+	public int size() {
+		synchronized (this.documents) {
+			return this.documents.size();
+		}
+	}
+
+	/**
+	 * Remove all documents from the cache.
+	 */
+	public void clear() {
+		synchronized (this.documents) {
+			this.documents.clear();
+		}
+	}
+
+	/**
+	 * Combine every input that affects the capabilities document into a single key. ServerOptions is
+	 * mutable, so its current values are copied into the key rather than using the object itself.
+	 */
+	private static String createKey(ServerOptions options, String baseHref, boolean completeCapabilities) {
+		StringBuilder key = new StringBuilder(128);
+		key.append(options.getServiceType()).append('\n')
+			.append(options.getAuthentication()).append('\n')
+			.append(options.getIdpUrl()).append('\n')
+			.append(options.getHttpMethods()).append('\n')
+			.append(options.getCors()).append('\n')
+			.append(options.getHttpExceptionHandling()).append('\n')
+			.append(options.getHttpPostContentType()).append('\n')
+			.append(completeCapabilities).append('\n')
+			.append(baseHref);
+		return key.toString();
+	}
+}
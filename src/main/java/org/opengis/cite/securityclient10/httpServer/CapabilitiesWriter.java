@@ -0,0 +1,243 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streaming writer for the capabilities documents of the emulated servers. This is a thin wrapper
+ * around a StAX XMLStreamWriter that writes UTF-8 directly to an output stream, so no DOM tree or
+ * intermediate String is built for the document.
+ *
+ * Nested elements are indented by three spaces and elements with only text content are kept on one
+ * line, matching the indented output of XMLUtils.writeDocumentToString.
+ *
+ * Namespace declarations are not added automatically; declare them with {@link #namespace(String,
+ * String)} after starting the element that introduces them.
+ *
+ */
+public class CapabilitiesWriter {
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private static final String INDENT = "   ";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final XMLStreamWriter writer;
+
+	/**
+	 * Depth of the element currently open. The document element has depth 1.
+	 */
+	private int depth;
+
+	/**
+	 * Bit `n` is set if the open element at depth `n` has child elements, and so needs its end tag on
+	 * a new line.
+	 */
+	private final BitSet hasChildElements;
+
+	/**
+	 * Create a writer for a new document.
+	 * @param outputStream Stream to write the UTF-8 encoded document to. It is not closed by the writer.
+	 * @throws XMLStreamException Exception if the stream writer could not be created
+	 */
+	public CapabilitiesWriter(OutputStream outputStream) throws XMLStreamException {
+		// Encode through a buffered character writer; the default StAX implementation encodes one
+		// character at a time when given an OutputStream, which is several times slower.
+		this.writer = OUTPUT_FACTORY.createXMLStreamWriter(new BufferedWriter(
+				new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+		this.depth = 0;
+		this.hasChildElements = new BitSet();
+	}
+
+	/**
+	 * Write the XML declaration.
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void startDocument() throws XMLStreamException {
+		this.writer.writeStartDocument("UTF-8", "1.0");
+	}
+
+	/**
+	 * Write the XML declaration, followed by a DOCTYPE declaration for `rootName` with an external
+	 * DTD at `systemId`.
+	 * @param rootName Name of the document element
+	 * @param systemId URL of the DTD
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void startDocument(String rootName, String systemId) throws XMLStreamException {
+		startDocument();
+		this.writer.writeCharacters("\n");
+		this.writer.writeDTD("<!DOCTYPE " + rootName + " SYSTEM \"" + systemId + "\">");
+	}
+
+	/**
+	 * Start an element with no namespace.
+	 * @param localName Name of the element
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void startElement(String localName) throws XMLStreamException {
+		indentChild();
+		this.writer.writeStartElement(localName);
+		this.depth++;
+	}
+
+	/**
+	 * Start a namespaced element. Use an empty `prefix` for the default namespace.
+	 * @param prefix Prefix bound to `namespaceURI`
+	 * @param localName Local name of the element
+	 * @param namespaceURI Namespace of the element
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void startElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		indentChild();
+		this.writer.writeStartElement(prefix, localName, namespaceURI);
+		this.depth++;
+	}
+
+	/**
+	 * Write an element with no namespace and no content. Attributes and namespaces may be added until
+	 * the next element is started.
+	 * @param localName Name of the element
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void emptyElement(String localName) throws XMLStreamException {
+		indentChild();
+		this.writer.writeEmptyElement(localName);
+	}
+
+	/**
+	 * Write a namespaced element with no content. Attributes and namespaces may be added until the
+	 * next element is started.
+	 * @param prefix Prefix bound to `namespaceURI`
+	 * @param localName Local name of the element
+	 * @param namespaceURI Namespace of the element
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void emptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		indentChild();
+		this.writer.writeEmptyElement(prefix, localName, namespaceURI);
+	}
+
+	/**
+	 * Write an element with no namespace that only contains `text`.
+	 * @param localName Name of the element
+	 * @param text Text content
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void textElement(String localName, String text) throws XMLStreamException {
+		indentChild();
+		this.writer.writeStartElement(localName);
+		this.writer.writeCharacters(text);
+		this.writer.writeEndElement();
+	}
+
+	/**
+	 * Write a namespaced element that only contains `text`.
+	 * @param prefix Prefix bound to `namespaceURI`
+	 * @param localName Local name of the element
+	 * @param namespaceURI Namespace of the element
+	 * @param text Text content
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void textElement(String prefix, String localName, String namespaceURI, String text)
+			throws XMLStreamException {
+		indentChild();
+		this.writer.writeStartElement(prefix, localName, namespaceURI);
+		this.writer.writeCharacters(text);
+		this.writer.writeEndElement();
+	}
+
+	/**
+	 * Declare a namespace on the element that was just started. Use an empty `prefix` for the default
+	 * namespace.
+	 * @param prefix Prefix to bind
+	 * @param namespaceURI Namespace to bind to the prefix
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void namespace(String prefix, String namespaceURI) throws XMLStreamException {
+		if (prefix.isEmpty()) {
+			this.writer.writeDefaultNamespace(namespaceURI);
+		} else {
+			this.writer.writeNamespace(prefix, namespaceURI);
+		}
+	}
+
+	/**
+	 * Add an attribute with no namespace to the element that was just started.
+	 * @param localName Name of the attribute
+	 * @param value Attribute value
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void attribute(String localName, String value) throws XMLStreamException {
+		this.writer.writeAttribute(localName, value);
+	}
+
+	/**
+	 * Add a namespaced attribute to the element that was just started. The prefix must already be
+	 * declared.
+	 * @param prefix Prefix bound to `namespaceURI`
+	 * @param localName Local name of the attribute
+	 * @param namespaceURI Namespace of the attribute
+	 * @param value Attribute value
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void attribute(String prefix, String localName, String namespaceURI, String value)
+			throws XMLStreamException {
+		this.writer.writeAttribute(prefix, namespaceURI, localName, value);
+	}
+
+	/**
+	 * End the most recently started element.
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void endElement() throws XMLStreamException {
+		if (this.hasChildElements.get(this.depth)) {
+			this.hasChildElements.clear(this.depth);
+			newLine(this.depth - 1);
+		}
+		this.writer.writeEndElement();
+		this.depth--;
+	}
+
+	/**
+	 * Close any open elements and flush the document to the output stream.
+	 * @throws XMLStreamException Exception if the stream could not be written
+	 */
+	public void endDocument() throws XMLStreamException {
+		while (this.depth > 0) {
+			endElement();
+		}
+		this.writer.writeEndDocument();
+		this.writer.writeCharacters("\n");
+		this.writer.flush();
+		this.writer.close();
+	}
+
+	/**
+	 * Put the next child element of the open element on a new, indented line.
+	 */
+	private void indentChild() throws XMLStreamException {
+		if (this.depth > 0) {
+			this.hasChildElements.set(this.depth);
+		}
+		// The first line of the document follows the XML declaration
+		newLine(this.depth);
+	}
+
+	private void newLine(int indentLevel) throws XMLStreamException {
+		StringBuilder line = new StringBuilder(1 + indentLevel * INDENT.length());
+		line.append('\n');
+		for (int i = 0; i < indentLevel; i++) {
+			line.append(INDENT);
+		}
+		this.writer.writeCharacters(line.toString());
+	}
+}
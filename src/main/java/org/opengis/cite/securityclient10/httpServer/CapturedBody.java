@@ -0,0 +1,122 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Immutable result of capturing a request body with {@link BodyCapture}.
+ *
+ * Small bodies are kept in memory. Bodies larger than the memory threshold of the BodyCapture are
+ * spilled to a file instead, which can be read back with {@link #load()}, and bodies larger than its
+ * maximum size are truncated. With
+ * {@link BodyCapture.Storage#DIGEST} storage only the size and SHA-256 digest of the body are kept.
+ *
+ */
+public class CapturedBody {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	/**
+	 * An empty body that was kept in memory
+	 */
+	public static final CapturedBody EMPTY_BODY = new CapturedBody(BodyCapture.Storage.TEXT, EMPTY, null,
+			0, false, null);
+
+	private final BodyCapture.Storage storage;
+	private final byte[] bytes;
+	private final Path file;
+	private final long size;
+	private final boolean truncated;
+	private final String digest;
+
+	/**
+	 * Create a captured body.
+	 * @param storage How the body is stored in the requests document
+	 * @param bytes Body bytes kept in memory. The array is not copied and must not be modified
+	 * afterwards. Use an empty array if the body was spilled to a file or only digested.
+	 * @param file File the body was spilled to, or null if it was not spilled
+	 * @param size Number of body bytes captured
+	 * @param truncated True if the body was larger than the maximum size and was cut off
+	 * @param digest Hex encoded SHA-256 digest of the captured bytes, or null if not computed
+	 */
+	public CapturedBody(BodyCapture.Storage storage, byte[] bytes, Path file, long size, boolean truncated,
+			String digest) {
+		this.storage = storage;
+		this.bytes = (bytes == null) ? EMPTY : bytes;
+		this.file = file;
+		this.size = size;
+		this.truncated = truncated;
+		this.digest = digest;
+	}
+
+	/**
+	 * @return How the body is stored in the requests document
+	 */
+	public BodyCapture.Storage getStorage() {
+		return this.storage;
+	}
+
+	/**
+	 * @return True if the bytes of the body are kept in memory
+	 */
+	public boolean isInMemory() {
+		return this.file == null && this.storage != BodyCapture.Storage.DIGEST;
+	}
+
+	/**
+	 * @return Copy of the body bytes kept in memory, empty if the body was spilled or only digested
+	 */
+	public byte[] getBytes() {
+		return this.bytes.clone();
+	}
+
+	/**
+	 * Body bytes without copying, for use within this package.
+	 */
+	byte[] bytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Read a spilled body back into memory, for example to hand it to the test suite before the file is
+	 * deleted.
+	 * @return Body with the bytes of the spill file kept in memory, or this body if it was not spilled
+	 * @throws IOException Exception if the spill file could not be read
+	 */
+	public CapturedBody load() throws IOException {
+		if (this.file == null) {
+			return this;
+		}
+		return new CapturedBody(this.storage, Files.readAllBytes(this.file), null, this.size, this.truncated,
+				this.digest);
+	}
+
+	/**
+	 * @return File the body was spilled to, or null if it was not spilled
+	 */
+	public Path getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return Number of body bytes captured
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return True if the body was larger than the maximum size and was cut off
+	 */
+	public boolean isTruncated() {
+		return this.truncated;
+	}
+
+	/**
+	 * @return Hex encoded SHA-256 digest of the captured bytes, or null if not computed
+	 */
+	public String getDigest() {
+		return this.digest;
+	}
+}
@@ -0,0 +1,244 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, typed view of one secure client request, as captured by {@link RequestRepresenter}.
+ *
+ */
+public class CapturedRequest {
+
+	private final String path;
+	private final String method;
+	private final boolean https;
+	private final String protocol;
+	private final String queryString;
+	private final Map<String, String> queryParameters;
+	private final String authentication;
+	private final Map<String, String> headers;
+	private final String contentEncoding;
+	private final int contentLength;
+	private final CapturedBody body;
+
+	/**
+	 * Create a captured request.
+	 * @param path Path of the request, including the session path, e.g. "/nonce/full". May be null
+	 * if it was not recorded.
+	 * @param method HTTP method of the request
+	 * @param https True if the request was sent over HTTPS
+	 * @param protocol HTTP protocol version of the request, e.g. "HTTP/1.1" or "HTTP/2.0". May be empty
+	 * if it was not recorded.
+	 * @param queryString Query string of the request, may be null or empty
+	 * @param authentication Authentication type of the request, may be null or empty
+	 * @param headers Request headers. The map is copied; header names are not case sensitive.
+	 * @param contentEncoding Character encoding of the body, may be null or empty
+	 * @param contentLength Length of the body as given by the client, or -1 if not known
+	 * @param body Captured body of the request
+	 */
+	public CapturedRequest(String path, String method, boolean https, String protocol, String queryString,
+			String authentication, Map<String, String> headers, String contentEncoding, int contentLength,
+			CapturedBody body) {
+		this.path = path;
+		this.method = method;
+		this.https = https;
+		this.protocol = protocol;
+		this.queryString = queryString;
+		this.queryParameters = parseQueryString(queryString);
+		this.authentication = authentication;
+		Map<String, String> headersCopy = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		headersCopy.putAll(headers);
+		this.headers = Collections.unmodifiableMap(headersCopy);
+		this.contentEncoding = contentEncoding;
+		this.contentLength = contentLength;
+		this.body = body;
+	}
+
+	/**
+	 * @return Path of the request including the session path, or null if it was not recorded
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * The path of the request after the session path, e.g. "/full" for "/nonce/full".
+	 * @return Path suffix, or an empty string for requests to the session path itself
+	 */
+	public String getPathSuffix() {
+		if (this.path == null || this.path.length() < 2) {
+			return "";
+		}
+		int end = this.path.indexOf('/', 1);
+		return (end == -1) ? "" : this.path.substring(end);
+	}
+
+	/**
+	 * @return HTTP method of the request, e.g. "GET"
+	 */
+	public String getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * @return True if the request was sent over HTTPS
+	 */
+	public boolean isHttps() {
+		return this.https;
+	}
+
+	/**
+	 * @return HTTP protocol version the request was sent with, e.g. "HTTP/1.1" or "HTTP/2.0", as
+	 * negotiated by the client and the server. May be empty if it was not recorded.
+	 */
+	public String getProtocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * @return Query string of the request, may be null or empty
+	 */
+	public String getQueryString() {
+		return this.queryString;
+	}
+
+	/**
+	 * @return Read-only map of decoded query parameters, with case-insensitive names. If a parameter is
+	 * repeated, the first value is used.
+	 */
+	public Map<String, String> getQueryParameters() {
+		return this.queryParameters;
+	}
+
+	/**
+	 * Retrieve a decoded query parameter.
+	 * @param name Name of the parameter, not case sensitive
+	 * @return Parameter value, or null if the parameter is not in the query string
+	 */
+	public String getQueryParameter(String name) {
+		return this.queryParameters.get(name);
+	}
+
+	/**
+	 * @return Authentication type of the request, may be null or empty
+	 */
+	public String getAuthentication() {
+		return this.authentication;
+	}
+
+	/**
+	 * @return Read-only map of request headers, with case-insensitive names
+	 */
+	public Map<String, String> getHeaders() {
+		return this.headers;
+	}
+
+	/**
+	 * Retrieve a request header.
+	 * @param name Name of the header, not case sensitive
+	 * @return Header value, or null if the client did not send the header
+	 */
+	public String getHeader(String name) {
+		return this.headers.get(name);
+	}
+
+	/**
+	 * @return Character encoding of the body, may be null or empty
+	 */
+	public String getContentEncoding() {
+		return this.contentEncoding;
+	}
+
+	/**
+	 * @return Length of the body as given by the client, or -1 if not known
+	 */
+	public int getContentLength() {
+		return this.contentLength;
+	}
+
+	/**
+	 * @return Captured body, with its size and how it was stored
+	 */
+	public CapturedBody getCapturedBody() {
+		return this.body;
+	}
+
+	/**
+	 * Read a spilled body back into memory, see {@link CapturedBody#load()}.
+	 * @return Request with its body kept in memory, or this request if its body was not spilled
+	 * @throws IOException Exception if the spill file could not be read
+	 */
+	public CapturedRequest load() throws IOException {
+		if (this.body.getFile() == null) {
+			return this;
+		}
+		return new CapturedRequest(this.path, this.method, this.https, this.protocol, this.queryString,
+				this.authentication, this.headers, this.contentEncoding, this.contentLength, this.body.load());
+	}
+
+	/**
+	 * @return Copy of the body bytes kept in memory, empty if the body was spilled to a file and not
+	 * loaded with {@link #load()}, or only digested
+	 */
+	public byte[] getBodyBytes() {
+		return this.body.getBytes();
+	}
+
+	/**
+	 * @return Body kept in memory, decoded with its content encoding or UTF-8 if the encoding is not
+	 * known
+	 */
+	public String getBody() {
+		return new String(this.body.bytes(), bodyCharset(this.contentEncoding));
+	}
+
+	/**
+	 * Character set for a body content encoding.
+	 * @param contentEncoding Character encoding name, may be null or empty
+	 * @return Charset for the encoding, or UTF-8 if the encoding is not known
+	 */
+	static Charset bodyCharset(String contentEncoding) {
+		if (contentEncoding == null || contentEncoding.isEmpty()) {
+			return StandardCharsets.UTF_8;
+		}
+		try {
+			return Charset.forName(contentEncoding);
+		} catch (IllegalArgumentException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+
+	private static Map<String, String> parseQueryString(String queryString) {
+		if (queryString == null || queryString.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> parameters = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		for (String pair : queryString.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int separator = pair.indexOf('=');
+			String name = decode(separator == -1 ? pair : pair.substring(0, separator));
+			String value = (separator == -1) ? "" : decode(pair.substring(separator + 1));
+			if (!parameters.containsKey(name)) {
+				parameters.put(name, value);
+			}
+		}
+		return Collections.unmodifiableMap(parameters);
+	}
+
+	private static String decode(String component) {
+		try {
+			return URLDecoder.decode(component, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			// Keep malformed components as they were sent
+			return component;
+		}
+	}
+}
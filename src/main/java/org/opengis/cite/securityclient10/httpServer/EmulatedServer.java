@@ -1,41 +1,68 @@
 package org.opengis.cite.securityclient10.httpServer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
+import org.opengis.cite.securityclient10.Identifiers;
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import org.opengis.cite.servlet.http.HttpServletResponse;
+import org.w3c.dom.DOMImplementation;
 
 public class EmulatedServer {
 
-	protected DocumentBuilderFactory documentFactory;
-	protected DocumentBuilder documentBuilder;
+	/**
+	 * Serialized capabilities documents shared by all emulated servers
+	 */
+	protected static final CapabilitiesCache capabilitiesCache = 
+			new CapabilitiesCache(CapabilitiesCache.DEFAULT_MAXIMUM_SIZE);
+	
+	/**
+	 * Initial size of the buffer a capabilities document is written to, large enough for a complete
+	 * document with every requirement class enabled
+	 */
+	private static final int CAPABILITIES_BUFFER_SIZE = 8192;
+
+	/**
+	 * DOM implementation used to create response documents. Unlike a DocumentBuilder, it holds no
+	 * parsing state, so one emulated server can build documents for concurrent requests.
+	 */
+	protected final DOMImplementation domImplementation;
 	
 	/**
 	 * Test Run Properties for this emulated server
 	 */
-	protected ServerOptions options;
+	protected final ServerOptions options;
 	
 	/**
 	 * RelayState token for SAML2
 	 */
-	protected String relayState;
+	protected final String relayState;
 	
-	public EmulatedServer() {
-		// Create factories and builders and re-use them
+	/**
+	 * Create an emulated server for `options`. One emulated server is created for each test session and
+	 * is shared by every request in that session, so subclasses must not keep per-request state in
+	 * fields.
+	 * @param options ServerOptions object with emulated server configuration
+	 */
+	public EmulatedServer(ServerOptions options) {
+		// Create the factory and builder once, and only keep the DOM implementation
+		DOMImplementation implementation = null;
 		try {
-			this.documentFactory = DocumentBuilderFactory.newInstance();
-			this.documentFactory.setNamespaceAware(true);
-			this.documentBuilder = documentFactory.newDocumentBuilder();
+			DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+			documentFactory.setNamespaceAware(true);
+			implementation = documentFactory.newDocumentBuilder().getDOMImplementation();
 		} catch (ParserConfigurationException e) {
 			// Exception with default configuration
 			e.printStackTrace();
 		}
+		this.domImplementation = implementation;
+		this.options = options;
 		
 		// RelayState is used for SAML2, we will hard-code something as we
 		// are only testing.
@@ -78,6 +105,121 @@ public class EmulatedServer {
 		return printWriter;
 	}
 	
+	/**
+	 * Write a serialized document as the response body, bypassing the character writer.
+	 * @param response HttpServletResponse for the client
+	 * @param body Bytes of the serialized document
+	 * @throws IOException Exception if the response output stream could not be written
+	 */
+	protected void writeResponseBody(HttpServletResponse response, byte[] body) throws IOException {
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+	
+	/**
+	 * Write the capabilities document for `baseHref` to the response. The serialized document is taken
+	 * from the capabilities cache if present, otherwise it is streamed into a buffer with 
+	 * {@link #writeCapabilitiesDocument(String, boolean, CapabilitiesWriter)} and added to the cache.
+	 * 
+	 * @param baseHref The base URL of the request, used to build absolute URLs for HREFs
+	 * @param completeCapabilities If true, write a complete capabilities document
+	 * @param response Response to build to send back to client
+	 * @throws IOException Exception if the document or the response output stream could not be written
+	 */
+	protected void writeCapabilities(String baseHref, boolean completeCapabilities, HttpServletResponse response) 
+			throws IOException {
+		byte[] capabilities = capabilitiesCache.get(this.options, baseHref, completeCapabilities);
+		
+		if (capabilities == null) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream(CAPABILITIES_BUFFER_SIZE);
+			try {
+				CapabilitiesWriter writer = new CapabilitiesWriter(buffer);
+				writeCapabilitiesDocument(baseHref, completeCapabilities, writer);
+				writer.endDocument();
+			} catch (XMLStreamException e) {
+				throw new IOException("Could not write capabilities document", e);
+			}
+			capabilities = buffer.toByteArray();
+			capabilitiesCache.put(this.options, baseHref, completeCapabilities, capabilities);
+		}
+		
+		writeResponseBody(response, capabilities);
+	}
+	
+	/**
+	 * Subclasses must override this.
+	 * 
+	 * @param baseHref The base URL of the request, used to build absolute URLs for HREFs
+	 * @param completeCapabilities If true, write a complete capabilities document
+	 * @param writer CapabilitiesWriter to write the document to
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	protected void writeCapabilitiesDocument(String baseHref, boolean completeCapabilities, 
+			CapabilitiesWriter writer) throws XMLStreamException {
+		// Override this method
+	}
+	
+	/**
+	 * Write the security annotations for an ows:Get or ows:Post element of an ows:Operation endpoint.
+	 * Constraints are added as necessary from the ServerOptions.
+	 * 
+	 * @param writer CapabilitiesWriter positioned inside the ows:Get or ows:Post element
+	 * @param prefix Prefix for the OWS elements, or an empty string if OWS is the default namespace
+	 * @param owsNamespace Namespace URI of the OWS version, bound to the "ows" prefix for attributes
+	 * @param methods Methods to support in HTTP Methods constraint
+	 * @param postContentType If true, add the HTTP POST Content-Type constraint
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	protected void writeConstraints(CapabilitiesWriter writer, String prefix, String owsNamespace, 
+			String[] methods, boolean postContentType) throws XMLStreamException {
+		// Add SAML2 constraint
+		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
+			writer.startElement(prefix, "Constraint", owsNamespace);
+			writer.attribute("name", Identifiers.SAML2);
+			writer.emptyElement(prefix, "ValuesReference", owsNamespace);
+			writer.attribute("ows", "reference", owsNamespace, this.options.getIdpUrl());
+			writer.endElement();
+		}
+		
+		// Add HTTP Methods Constraint
+		if (this.options.getHttpMethods()) {
+			writer.startElement(prefix, "Constraint", owsNamespace);
+			writer.attribute("name", Identifiers.HTTP_METHODS);
+			writer.startElement(prefix, "AllowedValues", owsNamespace);
+			for (String method : methods) {
+				writer.textElement(prefix, "Value", owsNamespace, method);
+			}
+			writer.endElement();
+			writer.endElement();
+		}
+		
+		// Add W3C CORS Constraint
+		if (this.options.getCors()) {
+			writer.startElement(prefix, "Constraint", owsNamespace);
+			writer.attribute("name", Identifiers.W3C_CORS);
+			writer.emptyElement(prefix, "NoValues", owsNamespace);
+			writer.endElement();
+		}
+		
+		// Add HTTP Exception Handling Constraint
+		if (this.options.getHttpExceptionHandling()) {
+			writer.startElement(prefix, "Constraint", owsNamespace);
+			writer.attribute("name", Identifiers.EXCEPTION_HANDLING);
+			writer.emptyElement(prefix, "NoValues", owsNamespace);
+			writer.endElement();
+		}
+		
+		// Add HTTP POST Content-Type Constraint
+		if (postContentType && this.options.getHttpPostContentType()) {
+			writer.startElement(prefix, "Constraint", owsNamespace);
+			writer.attribute("name", Identifiers.CONTENT_TYPE);
+			writer.startElement(prefix, "AllowedValues", owsNamespace);
+			writer.textElement(prefix, "Value", owsNamespace, "application/x-www-form-urlencoded");
+			writer.endElement();
+			writer.endElement();
+		}
+	}
+	
 	/**
 	 * Extract the uri from a request object.
 	 * If contextOnly is true, then any path segments after the context path are excluded.
@@ -0,0 +1,26 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+/**
+ * Service provider interface for creating emulated servers. Implementations are discovered with the
+ * ServiceLoader mechanism and must be listed in
+ * "META-INF/services/org.opengis.cite.securityclient10.httpServer.EmulatedServerFactory".
+ *
+ * Each factory handles one service type test run property value, e.g. "wms13". Adding a new OWS type
+ * to emulate only requires a new EmulatedServer subclass and its factory.
+ *
+ */
+public interface EmulatedServerFactory {
+
+	/**
+	 * The service type test run property value handled by this factory.
+	 * @return String with service type, e.g. "wms13"
+	 */
+	String getServiceType();
+
+	/**
+	 * Create an emulated server for a test session.
+	 * @param options ServerOptions object with emulated server configuration
+	 * @return EmulatedServer for the service type
+	 */
+	EmulatedServer createServer(ServerOptions options);
+}
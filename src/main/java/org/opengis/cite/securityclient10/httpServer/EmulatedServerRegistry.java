@@ -0,0 +1,85 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+
+/**
+ * Registry of the emulated server factories available to the test suite, keyed by service type.
+ *
+ * Factories are discovered once with the ServiceLoader mechanism the first time the registry is used.
+ * The registry is read-only afterwards, so it can be used from any thread without locking.
+ *
+ */
+public class EmulatedServerRegistry {
+
+	/**
+	 * Lazily load the factories when the registry is first used. The JVM guarantees the holder class is
+	 * only initialized once.
+	 */
+	private static class Holder {
+		private static final Map<String, EmulatedServerFactory> factories = loadFactories();
+	}
+
+	private EmulatedServerRegistry() {
+	}
+
+	/**
+	 * The service types that have an emulated server factory.
+	 * @return Read-only set of service types, in alphabetical order
+	 */
+	public static Set<String> getServiceTypes() {
+		return Holder.factories.keySet();
+	}
+
+	/**
+	 * Retrieve the factory for a service type.
+	 * @param serviceType Service type test run property value, e.g. "wms13"
+	 * @return EmulatedServerFactory, or null if the service type is not supported
+	 */
+	public static EmulatedServerFactory getFactory(String serviceType) {
+		if (serviceType == null) {
+			return null;
+		}
+		return Holder.factories.get(serviceType);
+	}
+
+	/**
+	 * Create an emulated server for the service type in `options`.
+	 * @param options ServerOptions with the service type to emulate
+	 * @return EmulatedServer for the service type
+	 * @throws IllegalArgumentException If no factory is registered for the service type
+	 */
+	public static EmulatedServer createServer(ServerOptions options) {
+		EmulatedServerFactory factory = getFactory(options.getServiceType());
+		if (factory == null) {
+			throw new IllegalArgumentException("Unknown service type for emulation: "
+					+ options.getServiceType());
+		}
+		return factory.createServer(options);
+	}
+
+	/**
+	 * Load every EmulatedServerFactory visible to the class loader of this class. If two factories
+	 * declare the same service type then the first one found is used.
+	 */
+	private static Map<String, EmulatedServerFactory> loadFactories() {
+		Map<String, EmulatedServerFactory> factories = new TreeMap<String, EmulatedServerFactory>();
+		ServiceLoader<EmulatedServerFactory> loader = ServiceLoader.load(EmulatedServerFactory.class,
+				EmulatedServerRegistry.class.getClassLoader());
+		for (EmulatedServerFactory factory : loader) {
+			if (factories.containsKey(factory.getServiceType())) {
+				TestSuiteLogger.log(Level.WARNING, "Ignoring duplicate emulated server factory for service type: "
+						+ factory.getServiceType());
+			} else {
+				factories.put(factory.getServiceType(), factory);
+			}
+		}
+		return Collections.unmodifiableMap(factories);
+	}
+}
@@ -1,11 +1,17 @@
 package org.opengis.cite.securityclient10.httpServer;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerConfigurationException;
 
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
 import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.w3c.dom.Element;
 
 /**
  * A class that encapsulates the options from the test runner, which are used to determine the options and
@@ -14,16 +20,24 @@ import org.opengis.cite.servlet.http.HttpServletRequest;
  */
 public class HandlerOptions {
 	/**
-	 * Has this handler received a request from the client?
-	 * The Test Server will monitor this variable and close the servlet handler when it is true.
+	 * Has this handler received all the expected requests from the client?
+	 * The servlet completes this future once the expected number of requests has been saved, which
+	 * immediately releases any test session waiting on it in the Test Server.
 	 */
-	private Boolean requestReceived;
+	private final CompletableFuture<RequestRepresenter> requestsReceived;
 	
 	/**
 	 * The options for configuring the service type to emulate.
 	 */
 	private ServerOptions serverOptions;
 	
+	/**
+	 * The emulated server for this session. The factory for the service type is resolved once when the
+	 * session is registered, and the server is shared by every request the secure client sends to the
+	 * session.
+	 */
+	private final EmulatedServer emulatedServer;
+	
 	/**
 	 * Requests associated with this test session that have been received from the secure client are
 	 * stored in this object.
@@ -32,15 +46,40 @@ public class HandlerOptions {
 	
 	/**
 	 * The number of requests saved for this handler. The type of test will affect how many are saved,
-	 * e.g. SAML2 will have 5 requests.
+	 * e.g. SAML2 will have 5 requests. Requests for the same session may arrive on different threads.
+	 */
+	private final AtomicInteger requestCount;
+	
+	/**
+	 * Journal that each saved request is also appended to, or null if the session has no journal. The
+	 * journal is only read to recover the session after a restart; see {@link RequestJournal}.
+	 * Guarded by the lock on `requests`.
+	 */
+	private RequestJournal journal;
+	
+	/**
+	 * Requests document that each saved request is also written to as it arrives, or null if the
+	 * requests are not written to a file. Guarded by the lock on `requests`.
 	 */
-	private int requestCount;
+	private RequestDocumentWriter requestsFile;
 	
-	public HandlerOptions(ServerOptions options) throws TransformerConfigurationException, ParserConfigurationException {
+	/**
+	 * Path of `requestsFile`, for log messages.
+	 */
+	private Path requestsFilePath;
+	
+	/**
+	 * The server port assigned to this session, or 0 if the session accepts requests on every port.
+	 * Assigned before the session is registered, so request threads always see the final value.
+	 */
+	private int port;
+	
+	public HandlerOptions(ServerOptions options) throws ParserConfigurationException {
 		this.serverOptions = options;
-		this.requestReceived = false;
-		this.requests = new RequestRepresenter();
-		this.requestCount = 0;
+		this.emulatedServer = EmulatedServerRegistry.createServer(options);
+		this.requestsReceived = new CompletableFuture<RequestRepresenter>();
+		this.requests = new RequestRepresenter(options.getBodyCapture());
+		this.requestCount = new AtomicInteger(0);
 	}
 	
 	/**
@@ -48,7 +87,16 @@ public class HandlerOptions {
 	 * @return Boolean if this handler has had a request
 	 */
 	public Boolean getReceived() {
-		return this.requestReceived;
+		return this.requestsReceived.isDone();
+	}
+	
+	/**
+	 * Future that is completed with the saved requests once this handler has received all the 
+	 * expected requests. Waiting on this future does not require a polling thread.
+	 * @return CompletableFuture for the requests in the Handler
+	 */
+	public CompletableFuture<RequestRepresenter> getRequestsReceived() {
+		return this.requestsReceived;
 	}
 	
 	/**
@@ -56,7 +104,7 @@ public class HandlerOptions {
 	 * @return int
 	 */
 	public int getRequestCount() {
-		return this.requestCount;
+		return this.requestCount.get();
 	}
 	
 	/**
@@ -76,22 +124,210 @@ public class HandlerOptions {
 	}
 	
 	/**
-	 * Replace the internal requests list with a new copy that has "request" appended to the end of the
-	 * array. The internal request counter will be incremented by one.
+	 * The server port assigned to this session. The servlet only routes requests that arrive on this
+	 * port to the session.
+	 * @return Port number, or 0 if the session accepts requests on every port
+	 */
+	public int getPort() {
+		return this.port;
+	}
+	
+	/**
+	 * Assign a server port to this session. This must be done before the session is registered.
+	 * @param port Port number, or 0 to accept requests on every port
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+	
+	/**
+	 * Emulated server that builds the responses for this session.
+	 * @return EmulatedServer
+	 */
+	public EmulatedServer getEmulatedServer() {
+		return this.emulatedServer;
+	}
+	
+	/**
+	 * Append "request" to the end of the internal requests document. The internal request counter will
+	 * be incremented by one. Safe to call from concurrent request threads; the requests document is
+	 * only modified by one thread at a time.
 	 * 
 	 * @param request Request from client to serialize
+	 * @return int The number of requests saved for this handler, including this one
 	 * @throws IOException Exception serializing a request to a representer
 	 */
-	public void saveRequest(HttpServletRequest request) throws IOException {
-		requests.serializeRequest(request);
-		this.requestCount += 1;
+	public int saveRequest(HttpServletRequest request) throws IOException {
+		synchronized (this.requests) {
+			Element requestElement = this.requests.serializeRequest(request);
+			if (this.journal != null) {
+				try {
+					this.journal.append(requestElement);
+				} catch (IOException e) {
+					// The request is still saved in memory
+					TestSuiteLogger.log(Level.WARNING, "Could not append request to journal " + this.journal.getPath(), e);
+				}
+			}
+			appendToRequestsFile();
+		}
+		return this.requestCount.incrementAndGet();
+	}
+	
+	/**
+	 * Write the requests of this session to a requests document as they arrive, see
+	 * {@link RequestDocumentWriter}, including requests restored from a journal afterwards. Open it
+	 * before the session is registered, as requests saved earlier are not written. The document is
+	 * complete once it is closed with {@link #closeRequestsFile()}.
+	 * 
+	 * @param path Filesystem path of the requests document, which is replaced if it exists
+	 * @throws IOException Exception if the document could not be opened or written
+	 */
+	public void openRequestsFile(Path path) throws IOException {
+		synchronized (this.requests) {
+			try {
+				this.requestsFile = RequestDocumentWriter.open(path);
+			} catch (TransformerConfigurationException e) {
+				throw new IOException("Could not create requests document writer", e);
+			}
+			this.requestsFilePath = path;
+		}
+	}
+	
+	/**
+	 * Write the end of the requests document of this session and close it. Requests saved afterwards
+	 * are not written to it. If the requests are not written to a file then nothing is done.
+	 */
+	public void closeRequestsFile() {
+		synchronized (this.requests) {
+			if (this.requestsFile == null) {
+				return;
+			}
+			try {
+				this.requestsFile.close();
+			} catch (IOException e) {
+				TestSuiteLogger.log(Level.WARNING, "Could not close requests file " + this.requestsFilePath, e);
+			}
+			this.requestsFile = null;
+		}
+	}
+	
+	/**
+	 * Write the last saved request to the requests document, if there is one. Called with the lock on
+	 * `requests` held.
+	 */
+	private void appendToRequestsFile() {
+		if (this.requestsFile == null) {
+			return;
+		}
+		try {
+			this.requestsFile.append(this.requests.loadLastRequest());
+			// Push the request to disk, so the document on disk follows the session as it runs
+			this.requestsFile.flush();
+		} catch (IOException e) {
+			// The request is still saved in memory
+			TestSuiteLogger.log(Level.WARNING, "Could not append request to requests file " + this.requestsFilePath, e);
+		}
+	}
+	
+	/**
+	 * Copy the requests saved so far, with the bodies that were spilled to files read back into memory.
+	 * The copy is taken under the same lock as {@link #saveRequest(HttpServletRequest)}, so a late
+	 * request from the client is either completely in both the document and the request set, or in
+	 * neither.
+	 * 
+	 * @return RequestsSnapshot owned by the caller
+	 * @throws IOException Exception if a spilled request body could not be read
+	 */
+	public RequestsSnapshot snapshotRequests() throws IOException {
+		synchronized (this.requests) {
+			return new RequestsSnapshot(this.requests.loadDocument(), this.requests.loadRequestSet());
+		}
+	}
+	
+	/**
+	 * Open the journal for this session, and append each saved request to it from now on. Requests
+	 * already in the journal from an earlier run of the same session are restored and counted, and if
+	 * they are all the expected requests then the handler is marked as received. Open it before the
+	 * session is registered, so no request is saved before the restored ones.
+	 * 
+	 * @param path Filesystem path of the journal
+	 * @throws IOException Exception if the journal could not be opened or its requests restored
+	 */
+	public void openJournal(Path path) throws IOException {
+		int recovered;
+		synchronized (this.requests) {
+			RequestJournal opened = RequestJournal.open(path);
+			for (Element requestElement : opened.getRecoveredRequests()) {
+				this.requests.restoreRequest(requestElement);
+				this.requestCount.incrementAndGet();
+				appendToRequestsFile();
+			}
+			recovered = opened.getRecoveredRequests().size();
+			this.journal = opened;
+		}
+		if (recovered > 0) {
+			TestSuiteLogger.log(Level.INFO, "Restored " + recovered + " request(s) from journal " + path);
+		}
+		if (this.requestCount.get() >= this.serverOptions.getExpectedRequestCount()) {
+			setReceived(true);
+		}
+	}
+	
+	/**
+	 * Close the journal of this session and keep its file, for a session that could not be registered.
+	 * Requests saved afterwards are not appended to it. If the session has no journal then nothing is
+	 * done.
+	 */
+	public void closeJournal() {
+		synchronized (this.requests) {
+			if (this.journal == null) {
+				return;
+			}
+			try {
+				this.journal.close();
+			} catch (IOException e) {
+				TestSuiteLogger.log(Level.WARNING, "Could not close journal " + this.journal.getPath(), e);
+			}
+			this.journal = null;
+		}
+	}
+	
+	/**
+	 * Close and delete the journal of this session, once its requests are no longer needed. If the
+	 * session has no journal then nothing is done.
+	 */
+	public void deleteJournal() {
+		synchronized (this.requests) {
+			if (this.journal == null) {
+				return;
+			}
+			try {
+				this.journal.delete();
+			} catch (IOException e) {
+				TestSuiteLogger.log(Level.WARNING, "Could not close journal " + this.journal.getPath(), e);
+			}
+			this.journal = null;
+		}
+	}
+	
+	/**
+	 * Delete the files that large request bodies of this session were spilled to, once its requests
+	 * are no longer needed.
+	 */
+	public void deleteBodyFiles() {
+		synchronized (this.requests) {
+			this.requests.deleteBodyFiles();
+		}
 	}
 	
 	/**
-	 * Update the value of the `requestReceived` property
+	 * Mark this handler as having received all of its requests, waking any thread waiting on
+	 * {@link #getRequestsReceived()}. Once received, a handler cannot be reset to waiting.
 	 * @param isReceived Boolean with state to set this Handler
 	 */
 	public void setReceived(Boolean isReceived) {
-		this.requestReceived = isReceived;
+		if (isReceived) {
+			this.requestsReceived.complete(this.requests);
+		}
 	}
 }
@@ -0,0 +1,82 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+
+import org.opengis.cite.jetty.io.ssl.SslHandshakeListener;
+
+/**
+ * Counts the TLS handshakes of the client connections of an embedded server, and how many of them
+ * resumed an earlier TLS session instead of making a full handshake.
+ *
+ * JSSE does not tell a server if a handshake was resumed, so a handshake is counted as resumed when
+ * its session was created before the client connection was accepted.
+ *
+ */
+public class HandshakeMetrics {
+
+	private final AtomicLong fullHandshakes = new AtomicLong();
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+	private final AtomicLong failedHandshakes = new AtomicLong();
+
+	/**
+	 * Create a listener for the handshake of one client connection.
+	 * @param connectionTime Time the client connection was accepted, in milliseconds since the epoch
+	 * @return Listener to add to the SslConnection of the client connection
+	 */
+	public SslHandshakeListener newListener(final long connectionTime) {
+		return new SslHandshakeListener() {
+			@Override
+			public void handshakeSucceeded(Event event) {
+				SSLSession session = event.getSSLEngine().getSession();
+				recordHandshake(session.getCreationTime(), connectionTime);
+			}
+
+			@Override
+			public void handshakeFailed(Event event, Throwable failure) {
+				failedHandshakes.incrementAndGet();
+			}
+		};
+	}
+
+	/**
+	 * Count a successful handshake.
+	 * @param sessionCreationTime Creation time of the TLS session, in milliseconds since the epoch
+	 * @param connectionTime Time the client connection was accepted, in milliseconds since the epoch
+	 */
+	void recordHandshake(long sessionCreationTime, long connectionTime) {
+		if (sessionCreationTime < connectionTime) {
+			resumedHandshakes.incrementAndGet();
+		} else {
+			fullHandshakes.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return Number of handshakes that created a new TLS session
+	 */
+	public long getFullHandshakes() {
+		return fullHandshakes.get();
+	}
+
+	/**
+	 * @return Number of handshakes that resumed an earlier TLS session
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes.get();
+	}
+
+	/**
+	 * @return Number of handshakes that failed
+	 */
+	public long getFailedHandshakes() {
+		return failedHandshakes.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{full=%d, resumed=%d, failed=%d}", getClass().getSimpleName(),
+				getFullHandshakes(), getResumedHandshakes(), getFailedHandshakes());
+	}
+}
@@ -0,0 +1,152 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import javax.net.ssl.SSLContext;
+
+import org.opengis.cite.jetty.util.ssl.SslContextFactory;
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+
+/**
+ * Watches the Java KeyStore of an embedded test server, and reloads its SslContextFactory when the file
+ * is changed, so a certificate can be rotated without restarting the server.
+ *
+ * On every change of the file its content is compared with the loaded KeyStore, so a KeyStore replaced
+ * by one of the same size within the granularity of the file modification time is still reloaded. The
+ * new KeyStore is loaded into an SSLContext by {@link SslContextCache} before the SslContextFactory
+ * is touched, so the factory is only locked to swap the SSLContext. New TLS connections use the new key;
+ * connections that were already accepted keep the SSLEngine they were created with. If the changed file
+ * cannot be loaded, for example while it is still being written, the server keeps using the previous
+ * key and the file is loaded again on its next change.
+ *
+ */
+public class KeyStoreWatcher implements Closeable {
+
+	private final File keystore;
+	private final String password;
+	private final SslContextFactory sslContextFactory;
+
+	/**
+	 * SSLContext currently used by the SslContextFactory. Guarded by the watcher's lock.
+	 */
+	private SSLContext sslContext;
+
+	private WatchService watchService;
+	private Thread watchThread;
+
+	/**
+	 * @param jks_path Path to the Java KeyStore used by `sslContextFactory`
+	 * @param jks_password Password to unlock the KeyStore
+	 * @param sslContextFactory SslContextFactory to reload, created with
+	 * {@link SslContextCache#newSslContextFactory(String, String)}
+	 */
+	public KeyStoreWatcher(String jks_path, String jks_password, SslContextFactory sslContextFactory) {
+		this.keystore = new File(jks_path).getAbsoluteFile();
+		this.password = jks_password;
+		this.sslContextFactory = sslContextFactory;
+		this.sslContext = sslContextFactory.getSslContext();
+	}
+
+	/**
+	 * Start watching the directory of the KeyStore on a daemon thread.
+	 * @throws IOException If the directory cannot be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (this.watchService != null) {
+			return;
+		}
+		final WatchService service = FileSystems.getDefault().newWatchService();
+		// Watch for created files too, as KeyStores are often replaced by moving a new file over them
+		this.keystore.getParentFile().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		this.watchService = service;
+
+		this.watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(service);
+			}
+		}, "ets-security-client10-keystore-watcher");
+		this.watchThread.setDaemon(true);
+		this.watchThread.start();
+	}
+
+	/**
+	 * Reload the SslContextFactory if the content of the KeyStore was changed since it was last loaded.
+	 * @return True if the SslContextFactory was reloaded with a new key
+	 */
+	public synchronized boolean reload() {
+		final SSLContext context;
+		try {
+			context = SslContextCache.reloadSslContext(this.keystore, this.password);
+		} catch (Exception e) {
+			TestSuiteLogger.log(Level.WARNING, "Could not load changed keystore " + this.keystore
+					+ ", keeping the previous key", e);
+			return false;
+		}
+		if (context == this.sslContext) {
+			return false;
+		}
+
+		try {
+			this.sslContextFactory.reload(new Consumer<SslContextFactory>() {
+				@Override
+				public void accept(SslContextFactory factory) {
+					factory.setSslContext(context);
+				}
+			});
+		} catch (Exception e) {
+			TestSuiteLogger.log(Level.WARNING, "Could not reload SSL context with keystore " + this.keystore, e);
+			return false;
+		}
+		this.sslContext = context;
+		TestSuiteLogger.log(Level.INFO, "Reloaded keystore " + this.keystore);
+		return true;
+	}
+
+	/**
+	 * Stop watching the KeyStore.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.watchService == null) {
+			return;
+		}
+		this.watchService.close();
+		this.watchService = null;
+		this.watchThread = null;
+	}
+
+	private void watch(WatchService service) {
+		final Path name = this.keystore.toPath().getFileName();
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					// Overflow events have no file name, and may hide a change of the KeyStore
+					changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+				}
+				key.reset();
+				if (changed) {
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Stopped by close()
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
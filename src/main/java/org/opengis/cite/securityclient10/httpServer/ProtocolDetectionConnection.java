@@ -0,0 +1,141 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+import org.opengis.cite.jetty.io.AbstractConnection;
+import org.opengis.cite.jetty.io.Connection;
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+
+/**
+ * First connection of every client connection accepted by {@link UnifiedSslConnectionFactory}. It
+ * reads the first bytes the client sends into the read-ahead buffer of a {@link UnifiedEndPoint}, and
+ * once they have arrived replaces itself with the connection for the detected protocol.
+ *
+ * Reading is non-blocking: while the client has not sent enough bytes, the connection registers fill
+ * interest with the endpoint and returns, so a slow or trickling client does not hold a selector or
+ * worker thread. The bytes that were read ahead stay in the UnifiedEndPoint and are read again by the
+ * new connection.
+ *
+ * While detecting, the idle timeout of the endpoint is set to the detection timeout, so a client that
+ * sends nothing is closed by the read timeout of the endpoint. The original idle timeout is restored
+ * once the protocol is detected.
+ *
+ * If the new connection accepts bytes when it is upgraded to ({@link Connection.UpgradeTo}), the
+ * read-ahead bytes are handed to it and it can read from the client endpoint directly, without the
+ * UnifiedEndPoint.
+ *
+ */
+public class ProtocolDetectionConnection extends AbstractConnection implements Connection.UpgradeFrom {
+
+	/**
+	 * Creates the connection for the detected protocol.
+	 */
+	public interface Listener {
+		/**
+		 * Create the connection that replaces the detection connection on the endpoint.
+		 * @param endPoint Endpoint with the read-ahead bytes, which the new connection must read from
+		 * @param tls True if the client started a TLS (or SSL) handshake, false for plain HTTP
+		 * @return New connection, which is opened by the endpoint
+		 */
+		Connection onDetected(UnifiedEndPoint endPoint, boolean tls);
+	}
+
+	private final UnifiedEndPoint aheadEndPoint;
+	private final long detectionTimeout;
+	private final Listener listener;
+
+	/**
+	 * Idle timeout of the endpoint before detection, restored once the protocol is detected
+	 */
+	private long idleTimeout;
+
+	/**
+	 * Connection for the detected protocol, set before the endpoint is upgraded
+	 */
+	private Connection detected;
+
+	/**
+	 * @param endPoint Endpoint to read ahead on
+	 * @param executor Executor of the connector
+	 * @param detectionTimeout Maximum number of milliseconds to wait for the first bytes, or 0 to use
+	 * the idle timeout of the endpoint
+	 * @param listener Listener to create the connection for the detected protocol
+	 */
+	public ProtocolDetectionConnection(UnifiedEndPoint endPoint, Executor executor, long detectionTimeout,
+			Listener listener) {
+		super(endPoint, executor);
+		this.aheadEndPoint = endPoint;
+		this.detectionTimeout = detectionTimeout;
+		this.listener = listener;
+	}
+
+	/**
+	 * Classify the first bytes of a client connection. A TLS handshake record starts with 0x16 and an
+	 * SSLv2 handshake with a byte of 0x80 or more, while an HTTP request starts with ASCII text.
+	 * @param bytes Bytes read ahead, at least one
+	 * @return True if the bytes start a TLS or SSL handshake
+	 */
+	public static boolean isTls(byte[] bytes) {
+		final byte b = bytes[0];
+		return b >= 0x7F || b < 0 || (b < 0x20 && b != '\n' && b != '\r' && b != '\t');
+	}
+
+	@Override
+	public void onOpen() {
+		super.onOpen();
+		this.idleTimeout = getEndPoint().getIdleTimeout();
+		if (this.detectionTimeout > 0) {
+			getEndPoint().setIdleTimeout(this.detectionTimeout);
+		}
+		// Read once the selector reports the first bytes, which runs the read on a worker thread
+		fillInterested();
+	}
+
+	@Override
+	public void onFillable() {
+		try {
+			while (!this.aheadEndPoint.isReadAheadComplete()) {
+				if (this.aheadEndPoint.readAhead() == 0) {
+					// Nothing to read yet: wait for the client without holding this thread
+					fillInterested();
+					return;
+				}
+			}
+		} catch (IOException e) {
+			TestSuiteLogger.log(Level.FINE, "Could not read from client " + getEndPoint().getRemoteAddress(), e);
+			close();
+			return;
+		}
+
+		byte[] bytes = this.aheadEndPoint.getBytes();
+		if (bytes.length == 0) {
+			// The client closed the connection without sending anything
+			close();
+			return;
+		}
+
+		getEndPoint().setIdleTimeout(this.idleTimeout);
+		this.detected = this.listener.onDetected(this.aheadEndPoint, isTls(bytes));
+		getEndPoint().upgrade(this.detected);
+	}
+
+	/**
+	 * Hand the read-ahead bytes to the connection for the detected protocol, if it accepts them.
+	 * Otherwise it reads them again through the UnifiedEndPoint.
+	 */
+	@Override
+	public ByteBuffer onUpgradeFrom() {
+		if (this.detected instanceof Connection.UpgradeTo) {
+			return this.aheadEndPoint.takeBytes();
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), getEndPoint());
+	}
+}
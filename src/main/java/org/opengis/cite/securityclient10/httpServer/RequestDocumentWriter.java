@@ -0,0 +1,146 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Element;
+
+/**
+ * Streaming writer for a requests document, see {@link RequestRepresenter}.
+ *
+ * The {@code <HttpRequestSet> } start tag is written when the writer is created, each
+ * {@code <Request> } element is serialized straight to the output stream when it is appended, and
+ * the end tag is written when the writer is closed. Requests can therefore be written as they
+ * arrive, and the whole document is never held in memory as a string. A writer is not thread safe.
+ *
+ */
+public class RequestDocumentWriter implements Closeable {
+
+	private static final byte[] START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<HttpRequestSet>\n")
+			.getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] END = "</HttpRequestSet>\n".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] NEWLINE = "\n".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Size of the buffer in front of the file channel
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OutputStream output;
+	private final Transformer transformer;
+	private boolean closed;
+
+	/**
+	 * Create a writer on an output stream and write the start of the document. The stream is closed
+	 * when the writer is closed.
+	 * @param output Output stream, which should be buffered
+	 * @throws IOException Exception if the start of the document could not be written
+	 * @throws TransformerConfigurationException Exception if a new transformer could not be created
+	 */
+	public RequestDocumentWriter(OutputStream output) throws IOException, TransformerConfigurationException {
+		this.output = output;
+
+		this.transformer = TransformerFactory.newInstance().newTransformer();
+		this.transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		this.transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		this.transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+		this.transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+
+		this.output.write(START);
+	}
+
+	/**
+	 * Create a writer on a new file, replacing any existing file. The file is written through a
+	 * buffered file channel, and is gzip compressed if its name ends with ".gz".
+	 * @param path Filesystem path of the requests document
+	 * @return RequestDocumentWriter for the file
+	 * @throws IOException Exception if the file could not be opened or written
+	 * @throws TransformerConfigurationException Exception if a new transformer could not be created
+	 */
+	public static RequestDocumentWriter open(Path path) throws IOException, TransformerConfigurationException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		OutputStream output = Channels.newOutputStream(channel);
+		try {
+			if (isGzipPath(path)) {
+				output = new GZIPOutputStream(output, BUFFER_SIZE);
+			}
+			return new RequestDocumentWriter(new BufferedOutputStream(output, BUFFER_SIZE));
+		} catch (IOException | TransformerConfigurationException e) {
+			output.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param path Filesystem path
+	 * @return True if the file name ends with ".gz"
+	 */
+	static boolean isGzipPath(Path path) {
+		Path fileName = path.getFileName();
+		return fileName != null && fileName.toString().endsWith(".gz");
+	}
+
+	/**
+	 * Write a {@code <Request> } element to the document.
+	 * @param requestElement Request element, see
+	 * {@link RequestRepresenter#serializeRequest(org.opengis.cite.servlet.http.HttpServletRequest)}
+	 * @throws IOException Exception if the writer is closed or the element could not be written
+	 */
+	public void append(Element requestElement) throws IOException {
+		if (this.closed) {
+			throw new IOException("Requests document writer is closed");
+		}
+		try {
+			this.transformer.transform(new DOMSource(requestElement), new StreamResult(this.output));
+		} catch (TransformerException e) {
+			throw new IOException("Could not write request element", e);
+		}
+		this.output.write(NEWLINE);
+	}
+
+	/**
+	 * Push appended requests to the underlying stream, so they are on disk if the test run stops
+	 * before the writer is closed. For a gzip file only complete compressed blocks are written.
+	 * @throws IOException Exception if the requests could not be written
+	 */
+	public void flush() throws IOException {
+		this.output.flush();
+	}
+
+	/**
+	 * Write the end of the document and close the output stream. Closing a closed writer has no
+	 * effect.
+	 * @throws IOException Exception if the end of the document could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.output.write(END);
+		} finally {
+			this.output.close();
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+/**
+ * Append-only journal of the {@code <Request> } elements captured for one test session.
+ *
+ * Each request is written to a memory-mapped region of the journal file as soon as it is serialized,
+ * as a record of its length, its CRC-32 checksum and the UTF-8 XML of the element. The length is
+ * written last, so a record only becomes visible once it is complete. Mapped pages are kept by the
+ * operating system if the JVM stops, so the requests received so far can be recovered by opening the
+ * journal again or rebuilt into a requests document with {@link #readDocument(Path)}. Reading stops at
+ * the first empty or damaged record, which drops a request that was being written when the JVM
+ * stopped.
+ *
+ * The journal is for crash recovery only. The requests of a running session are still kept in memory
+ * by {@link RequestRepresenter}, and the journal is never read while the session is running; it only
+ * costs one write per request. A journal is recovered when a session with the same path is started
+ * after a restart, and is deleted when its session ends. Journals left behind by sessions that were
+ * never resumed are removed with {@link #deleteStale(Path, String, long, TimeUnit)}.
+ *
+ * A journal is not thread safe; {@link HandlerOptions} only appends to it while holding the lock on
+ * its requests.
+ *
+ */
+public class RequestJournal implements Closeable {
+
+	/**
+	 * Identifies the file as a request journal, and its format version
+	 */
+	private static final byte[] MAGIC = "ETSRQJ01".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Length and checksum in front of each record
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	/**
+	 * Size of each mapped region of the file; larger records get a region of their own
+	 */
+	private static final int REGION_SIZE = 256 * 1024;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Transformer transformer;
+	private final List<Element> recoveredRequests;
+
+	/**
+	 * Mapped region that records are appended to, and its offset in the file
+	 */
+	private MappedByteBuffer region;
+	private long regionOffset;
+
+	/**
+	 * File offset where the next record is written
+	 */
+	private long position;
+
+	private RequestJournal(Path path, FileChannel channel, long position, List<Element> recoveredRequests)
+			throws TransformerConfigurationException {
+		this.path = path;
+		this.channel = channel;
+		this.position = position;
+		this.recoveredRequests = Collections.unmodifiableList(recoveredRequests);
+
+		this.transformer = TransformerFactory.newInstance().newTransformer();
+		this.transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		this.transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+		this.transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+	}
+
+	/**
+	 * Open the journal at a path for appending. If the file is already a journal, for example from a
+	 * test run that was stopped while waiting for the secure client, its complete records are kept and
+	 * new requests are appended after them. A missing or empty file is started as a new journal; any
+	 * other file is left unchanged.
+	 * @param path Filesystem path of the journal
+	 * @return RequestJournal positioned after the last complete record
+	 * @throws IOException Exception if the file could not be opened, read or written, or is not a
+	 * journal
+	 */
+	public static RequestJournal open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			List<byte[]> records = new ArrayList<byte[]>();
+			long position = readRecords(channel, records);
+			if (position < 0) {
+				// Only start a new journal in a new file, so another file at this path is never lost
+				if (channel.size() > 0) {
+					throw new IOException("Not a request journal: " + path);
+				}
+				channel.write(ByteBuffer.wrap(MAGIC), 0);
+				position = MAGIC.length;
+			}
+			return new RequestJournal(path, channel, position, parseRecords(records, path));
+		} catch (IOException | TransformerConfigurationException e) {
+			channel.close();
+			throw (e instanceof IOException) ? (IOException) e : new IOException(e);
+		}
+	}
+
+	/**
+	 * Rebuild a requests document from a journal, see {@link RequestRepresenter} for the structure.
+	 * @param path Filesystem path of the journal
+	 * @return Document with a root {@code <HttpRequestSet> } element and the complete requests of the
+	 * journal, in the order they were received
+	 * @throws IOException Exception if the file could not be read or is not a journal
+	 */
+	public static Document readDocument(Path path) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (readRecords(channel, records) < 0) {
+				throw new IOException("Not a request journal: " + path);
+			}
+		}
+		Document document = newDocumentBuilder().newDocument();
+		Element rootElement = document.createElement("HttpRequestSet");
+		document.appendChild(rootElement);
+		for (Element requestElement : parseRecords(records, path)) {
+			rootElement.appendChild(document.importNode(requestElement, true));
+		}
+		return document;
+	}
+
+	/**
+	 * Delete the journals in a directory that have not been written to for a while, such as those of
+	 * sessions that were stopped by a restart and never started again. Files that cannot be deleted are
+	 * logged and skipped.
+	 * @param directory Directory to sweep
+	 * @param glob Pattern of the journal file names, e.g. "requests-*.journal"
+	 * @param maxAge Time since the last write after which a journal is stale
+	 * @param unit Unit of `maxAge`
+	 * @return Number of journals deleted
+	 * @throws IOException Exception if the directory could not be listed
+	 */
+	public static int deleteStale(Path directory, String glob, long maxAge, TimeUnit unit) throws IOException {
+		long cutoff = System.currentTimeMillis() - unit.toMillis(maxAge);
+		int deleted = 0;
+		try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, glob)) {
+			for (Path journal : journals) {
+				try {
+					if (Files.getLastModifiedTime(journal).toMillis() < cutoff && Files.deleteIfExists(journal)) {
+						deleted++;
+					}
+				} catch (IOException e) {
+					TestSuiteLogger.log(Level.WARNING, "Could not delete stale request journal " + journal, e);
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * @return Filesystem path of the journal
+	 */
+	public Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * The requests that were already in the journal when it was opened.
+	 * @return Read-only list of {@code <Request> } elements, in the order they were received. The
+	 * elements belong to their own documents.
+	 */
+	public List<Element> getRecoveredRequests() {
+		return this.recoveredRequests;
+	}
+
+	/**
+	 * Append a {@code <Request> } element to the journal.
+	 * @param requestElement Request element, see
+	 * {@link RequestRepresenter#serializeRequest(org.opengis.cite.servlet.http.HttpServletRequest)}
+	 * @throws IOException Exception if the element could not be serialized or written
+	 */
+	public void append(Element requestElement) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			this.transformer.transform(new DOMSource(requestElement), new StreamResult(output));
+		} catch (TransformerException e) {
+			throw new IOException("Could not serialize request for journal " + this.path, e);
+		}
+		byte[] record = output.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record);
+
+		int recordSize = RECORD_HEADER_SIZE + record.length;
+		ensureRegion(recordSize);
+		int offset = (int) (this.position - this.regionOffset);
+
+		// Write the record body first and its length last, so a partial record is never read
+		this.region.position(offset + RECORD_HEADER_SIZE);
+		this.region.put(record);
+		this.region.putInt(offset + 4, (int) crc.getValue());
+		this.region.putInt(offset, record.length);
+		this.position += recordSize;
+	}
+
+	/**
+	 * Force the appended records to the storage device, so they also survive an operating system crash.
+	 * @throws IOException Exception if the records could not be forced
+	 */
+	public void force() throws IOException {
+		if (this.region != null) {
+			this.region.force();
+		}
+	}
+
+	/**
+	 * Close the journal, keeping the file. Unused mapped space at the end of the file is removed where
+	 * the platform allows it. A journal that nothing was appended to leaves the file unchanged, as
+	 * another journal for the same file may have appended to it since.
+	 * @throws IOException Exception if the journal could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		try {
+			if (this.region != null) {
+				force();
+				this.region = null;
+				try {
+					this.channel.truncate(this.position);
+				} catch (IOException e) {
+					// Some platforms do not truncate files that are still mapped; readers skip the empty tail
+					TestSuiteLogger.log(Level.FINE, "Could not truncate request journal " + this.path, e);
+				}
+			}
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Close the journal and delete its file, once its requests are no longer needed.
+	 * @throws IOException Exception if the journal could not be closed
+	 */
+	public void delete() throws IOException {
+		close();
+		try {
+			Files.deleteIfExists(this.path);
+		} catch (IOException e) {
+			// A file that is still mapped may not be deletable until the mapping is collected
+			TestSuiteLogger.log(Level.FINE, "Could not delete request journal " + this.path, e);
+		}
+	}
+
+	private void ensureRegion(int recordSize) throws IOException {
+		// Keep room for the empty length that ends the records
+		long needed = recordSize + 4;
+		if (this.region != null && this.position + needed <= this.regionOffset + this.region.capacity()) {
+			return;
+		}
+		this.regionOffset = this.position;
+		this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionOffset,
+				Math.max(REGION_SIZE, needed));
+	}
+
+	/**
+	 * Read the complete records of a journal.
+	 * @param channel Journal file channel
+	 * @param records List to add the record bodies to
+	 * @return File offset after the last complete record, or -1 if the file is not a journal
+	 */
+	private static long readRecords(FileChannel channel, List<byte[]> records) throws IOException {
+		long size = channel.size();
+		if (size < MAGIC.length) {
+			return -1;
+		}
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+		readFully(channel, magic, 0);
+		if (!Arrays.equals(magic.array(), MAGIC)) {
+			return -1;
+		}
+
+		long position = MAGIC.length;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while (position + RECORD_HEADER_SIZE <= size) {
+			header.clear();
+			readFully(channel, header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.allocate(length);
+			readFully(channel, record, position + RECORD_HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(record.array());
+			if ((int) crc.getValue() != header.getInt(4)) {
+				break;
+			}
+			records.add(record.array());
+			position += RECORD_HEADER_SIZE + length;
+		}
+		return position;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of request journal");
+			}
+		}
+	}
+
+	private static List<Element> parseRecords(List<byte[]> records, Path path) throws IOException {
+		List<Element> requests = new ArrayList<Element>();
+		if (records.isEmpty()) {
+			return requests;
+		}
+		DocumentBuilder builder = newDocumentBuilder();
+		for (byte[] record : records) {
+			try {
+				requests.add(builder.parse(new ByteArrayInputStream(record)).getDocumentElement());
+			} catch (SAXException e) {
+				throw new IOException("Could not parse request in journal " + path, e);
+			}
+		}
+		return requests;
+	}
+
+	private static DocumentBuilder newDocumentBuilder() throws IOException {
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+
+/**
+ * Asynchronous access log for the requests received by the test server.
+ *
+ * Request threads only copy the request details into an entry and offer it to a bounded ring buffer;
+ * a single daemon thread formats the entries and writes them through {@link TestSuiteLogger}. Request
+ * threads never wait on the log: when the buffer is full the entry is dropped and counted, and the
+ * count is reported with the next entry that is written.
+ *
+ * The logging level of the test suite logger is the switch for the access log:
+ * <ul>
+ * <li>{@link #ACCESS_LEVEL} logs one line per request with the session path, method, HTTPS flag,
+ * query string and authentication type</li>
+ * <li>{@link #HEADER_LEVEL} also logs the request headers</li>
+ * </ul>
+ * When neither level is loggable, no entry is created.
+ *
+ */
+public class RequestLog {
+
+	/**
+	 * Logging level for one line per request.
+	 */
+	public static final Level ACCESS_LEVEL = Level.INFO;
+
+	/**
+	 * Logging level for including the request headers.
+	 */
+	public static final Level HEADER_LEVEL = Level.FINE;
+
+	/**
+	 * Maximum number of entries waiting to be written.
+	 */
+	private static final int CAPACITY = 1024;
+
+	private static final BlockingQueue<Entry> entries = new ArrayBlockingQueue<Entry>(CAPACITY);
+
+	private static final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Start the writer thread when the first entry is recorded. The JVM guarantees the holder class is
+	 * only initialized once.
+	 */
+	private static class WriterHolder {
+		private static final Thread writer = startWriter();
+	}
+
+	private RequestLog() {
+	}
+
+	/**
+	 * Record a request in the access log. This does not block; the entry is written later by the log
+	 * writer thread, or dropped if too many entries are waiting.
+	 * @param request Request from the client
+	 * @param serviceType Service type emulated for the test session of the request
+	 */
+	public static void record(HttpServletRequest request, String serviceType) {
+		if (!TestSuiteLogger.isLoggable(ACCESS_LEVEL)) {
+			return;
+		}
+
+		List<String> headers = null;
+		if (TestSuiteLogger.isLoggable(HEADER_LEVEL)) {
+			headers = new ArrayList<String>();
+			for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements();) {
+				String name = names.nextElement();
+				headers.add(name);
+				headers.add(request.getHeader(name));
+			}
+		}
+
+		Entry entry = new Entry(System.currentTimeMillis(), serviceType, request.getPathInfo(),
+				request.getMethod(), request.isSecure(), request.getQueryString(), request.getAuthType(),
+				headers);
+
+		if (WriterHolder.writer.isAlive() && entries.offer(entry)) {
+			return;
+		}
+		dropped.incrementAndGet();
+	}
+
+	/**
+	 * Number of entries that were dropped because the log writer could not keep up.
+	 * @return Count of dropped entries since the last entry was written
+	 */
+	public static long getDroppedCount() {
+		return dropped.get();
+	}
+
+	private static Thread startWriter() {
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						write(entries.take());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "ets-security-client10-request-log");
+		writer.setDaemon(true);
+		writer.start();
+		return writer;
+	}
+
+	private static void write(Entry entry) {
+		StringBuilder line = new StringBuilder(256);
+		line.append("Request received: time=").append(entry.time)
+			.append(" service=").append(entry.serviceType)
+			.append(" path=").append(entry.path)
+			.append(" method=").append(entry.method)
+			.append(" https=").append(entry.secure)
+			.append(" query=").append(entry.queryString)
+			.append(" auth=").append(entry.authType);
+
+		long droppedEntries = dropped.getAndSet(0);
+		if (droppedEntries > 0) {
+			line.append(" dropped=").append(droppedEntries);
+		}
+
+		TestSuiteLogger.log(ACCESS_LEVEL, line.toString());
+
+		if (entry.headers != null) {
+			StringBuilder headerLines = new StringBuilder(256);
+			headerLines.append("Request headers: time=").append(entry.time).append(" path=").append(entry.path);
+			for (int i = 0; i < entry.headers.size(); i += 2) {
+				headerLines.append('\n').append(entry.headers.get(i)).append(": ")
+					.append(entry.headers.get(i + 1));
+			}
+			TestSuiteLogger.log(HEADER_LEVEL, headerLines.toString());
+		}
+	}
+
+	/**
+	 * Request details copied on the request thread. The servlet request itself must not be used after
+	 * the response is completed, so nothing refers back to it.
+	 */
+	private static class Entry {
+		private final long time;
+		private final String serviceType;
+		private final String path;
+		private final String method;
+		private final boolean secure;
+		private final String queryString;
+		private final String authType;
+		/**
+		 * Alternating header names and values, or null if headers are not logged
+		 */
+		private final List<String> headers;
+
+		private Entry(long time, String serviceType, String path, String method, boolean secure,
+				String queryString, String authType, List<String> headers) {
+			this.time = time;
+			this.serviceType = serviceType;
+			this.path = path;
+			this.method = method;
+			this.secure = secure;
+			this.queryString = queryString;
+			this.authType = authType;
+			this.headers = headers;
+		}
+	}
+}
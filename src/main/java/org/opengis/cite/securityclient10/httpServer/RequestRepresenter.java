@@ -1,27 +1,26 @@
 package org.opengis.cite.securityclient10.httpServer;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Enumeration;
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * Proxy class to serialize incoming HttpServletRequests into an internal XML document. This allows
@@ -34,29 +33,40 @@ public class RequestRepresenter {
 	 */
 	private Document requestsDocument = null;
 	
+	/**
+	 * Typed model of the serialized requests, in the order they were received
+	 */
+	private final List<CapturedRequest> capturedRequests = new ArrayList<CapturedRequest>();
+	
+	/**
+	 * Capture settings for request bodies
+	 */
+	private final BodyCapture bodyCapture;
+	
 	private DocumentBuilderFactory documentFactory;
 	private DocumentBuilder documentBuilder;
-	private TransformerFactory transformerFactory;
-	private Transformer transformer;
+	
+	/**
+	 * Create a new RequestRepresenter that captures request bodies as text, up to the default sizes
+	 * of {@link BodyCapture#DEFAULT}
+	 * @throws ParserConfigurationException Exception if new document builder could not be created
+	 */
+	public RequestRepresenter() throws ParserConfigurationException {
+		this(BodyCapture.DEFAULT);
+	}
 	
 	/**
 	 * Create a new RequestRepresenter
-	 * @throws TransformerConfigurationException Exception if a new transformer could not be created
+	 * @param bodyCapture How request bodies are captured and stored
 	 * @throws ParserConfigurationException Exception if new document builder could not be created
 	 */
-	public RequestRepresenter() throws TransformerConfigurationException, ParserConfigurationException {
+	public RequestRepresenter(BodyCapture bodyCapture) throws ParserConfigurationException {
+		this.bodyCapture = bodyCapture;
+		
 		// Create factories and builders and re-use them
 		this.documentFactory = DocumentBuilderFactory.newInstance();
 		this.documentBuilder = documentFactory.newDocumentBuilder();
 		
-		this.transformerFactory = TransformerFactory.newInstance();
-		this.transformer = transformerFactory.newTransformer();
-		
-		// Adjust defaults for XML document-to-String output
-		this.transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		this.transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-		this.transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-		
 		this.createDocument();
 	}
 	
@@ -71,6 +81,15 @@ public class RequestRepresenter {
 		this.requestsDocument.appendChild(rootElement);
 	}
 	
+	/**
+	 * The document containing the serialized requests. See {@link #serializeRequest(HttpServletRequest)}
+	 * for the structure.
+	 * @return Document with a root {@code <HttpRequestSet> } element
+	 */
+	public Document getDocument() {
+		return this.requestsDocument;
+	}
+	
 	/**
 	 * Add the metadata from the HttpServletRequest to the XML document.
 	 * Each request will serialize to a {@code <Request> } element inside the root {@code <HttpRequestSet> }
@@ -78,69 +97,222 @@ public class RequestRepresenter {
 	 * 
 	 * <pre>
 	 * {@code
-	 * <Request method="GET" https="true" queryString="?service=WMS&request=GetCapabilities" authentication="">
+	 * <Request method="GET" https="true" protocol="HTTP/2.0" queryString="?service=WMS&request=GetCapabilities" authentication="" path="/nonce/full">
 	 *   <Header name="Accepts">text/xml</Header>
 	 *   <Header name="User-Agent">curl</Header>
-	 *   <Body contentEncoding="utf-8" contentLength="0"></Body>
+	 *   <Body contentEncoding="utf-8" contentLength="0" storage="text" size="0"></Body>
 	 * </Request>
 	 * }
 	 * </pre>
 	 * 
 	 * There may be 0 or more Header elements. There is always a single Body element, which may have no
 	 * text content. attributes on the Request element may be empty, but should still be specified.
+	 * The protocol is the HTTP version negotiated with the client, "HTTP/1.1" or "HTTP/2.0".
+	 * 
+	 * The body is streamed with the {@link BodyCapture} of this representer. Its content is the body
+	 * text, or the base64 encoded body for "base64" storage. A body that was spilled to a file has no
+	 * content and a "file" attribute instead; {@link #loadDocument()} and {@link #loadRequestSet()} read
+	 * it back, and the file is deleted with {@link #deleteBodyFiles()} when the session is released. A
+	 * "digest" storage body has no content and a "digest" attribute with its SHA-256 digest. A body cut
+	 * off at the maximum size has truncated="true".
+	 * 
+	 * The request is also added to the typed model returned by {@link #getRequestSet()}.
 	 * 
 	 * @param request Request from client to serialize as XML
-	 * @throws IOException Request Reader exception
+	 * @return The {@code <Request> } element added to the document
+	 * @throws IOException Exception if the request body could not be read or spilled to a file
 	 */
-	public void serializeRequest(HttpServletRequest request) throws IOException {
+	public Element serializeRequest(HttpServletRequest request) throws IOException {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		for (Enumeration<String> headerNames = request.getHeaderNames(); headerNames.hasMoreElements();) {
+			String headerName = headerNames.nextElement();
+			headers.put(headerName, request.getHeader(headerName));
+		}
+		
+		CapturedBody capturedBody = this.bodyCapture.capture(request.getInputStream());
+		
+		CapturedRequest captured = new CapturedRequest(request.getPathInfo(), request.getMethod(),
+				request.isSecure(), request.getProtocol(), request.getQueryString(), request.getAuthType(), headers,
+				request.getCharacterEncoding(), request.getContentLength(), capturedBody);
+		this.capturedRequests.add(captured);
+		
 		Element rootElement = this.requestsDocument.getDocumentElement();
 		
 		Element requestElement = this.requestsDocument.createElement("Request");
-		requestElement.setAttribute("method", request.getMethod());
-		requestElement.setAttribute("https", request.isSecure() ? "true" : "false");
-		requestElement.setAttribute("queryString", request.getQueryString());
-		requestElement.setAttribute("authentication", request.getAuthType());
+		requestElement.setAttribute("method", captured.getMethod());
+		requestElement.setAttribute("https", captured.isHttps() ? "true" : "false");
+		requestElement.setAttribute("protocol", captured.getProtocol());
+		requestElement.setAttribute("queryString", captured.getQueryString());
+		requestElement.setAttribute("authentication", captured.getAuthentication());
+		requestElement.setAttribute("path", captured.getPath());
 		rootElement.appendChild(requestElement);
 		
-		for (Enumeration<String> headers = request.getHeaderNames(); headers.hasMoreElements();) {
-        	String headerName = headers.nextElement();
-        	String headerValue = request.getHeader(headerName);
-        	
-        	Element header = this.requestsDocument.createElement("Header");
-        	header.setAttribute("name", headerName);
-        	header.setTextContent(headerValue);
-        	requestElement.appendChild(header);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+        	Element headerElement = this.requestsDocument.createElement("Header");
+        	headerElement.setAttribute("name", header.getKey());
+        	headerElement.setTextContent(header.getValue());
+        	requestElement.appendChild(headerElement);
         }
 		
 		Element body = this.requestsDocument.createElement("Body");
-		body.setAttribute("contentEncoding", request.getCharacterEncoding());
-		body.setAttribute("contentLength", String.valueOf(request.getContentLength()));
-		String bodyContent = "";
-		bodyContent = request.getReader().lines().collect(Collectors.joining(System.lineSeparator()));
-		body.setTextContent(bodyContent);
+		body.setAttribute("contentEncoding", captured.getContentEncoding());
+		body.setAttribute("contentLength", String.valueOf(captured.getContentLength()));
+		body.setAttribute("storage", capturedBody.getStorage().toString());
+		body.setAttribute("size", String.valueOf(capturedBody.getSize()));
+		if (capturedBody.isTruncated()) {
+			body.setAttribute("truncated", "true");
+		}
+		if (capturedBody.getFile() != null) {
+			body.setAttribute("file", capturedBody.getFile().toAbsolutePath().toString());
+		}
+		if (capturedBody.getDigest() != null) {
+			body.setAttribute("digest", capturedBody.getDigest());
+		}
+		if (capturedBody.isInMemory()) {
+			setBodyContent(body, captured);
+		}
 		requestElement.appendChild(body);
+		
+		return requestElement;
+	}
+	
+	private static void setBodyContent(Element body, CapturedRequest captured) {
+		CapturedBody capturedBody = captured.getCapturedBody();
+		if (capturedBody.getStorage() == BodyCapture.Storage.BASE64) {
+			body.setTextContent(Base64.getEncoder().encodeToString(capturedBody.bytes()));
+		} else {
+			body.setTextContent(captured.getBody());
+		}
+	}
+	
+	/**
+	 * Add a request that was serialized earlier, for example one recovered from a
+	 * {@link RequestJournal}. The element is copied into the document and added to the typed model, as
+	 * if the request had just been serialized.
+	 * @param requestElement {@code <Request> } element, see {@link #serializeRequest(HttpServletRequest)}
+	 */
+	public void restoreRequest(Element requestElement) {
+		Element restored = (Element) this.requestsDocument.importNode(requestElement, true);
+		this.requestsDocument.getDocumentElement().appendChild(restored);
+		this.capturedRequests.add(RequestSet.readRequest(restored));
+	}
+	
+	/**
+	 * Delete the files that request bodies were spilled to. The requests keep their "file" attributes,
+	 * but the files are gone; call this once the test session no longer needs the bodies.
+	 */
+	public void deleteBodyFiles() {
+		for (CapturedRequest captured : this.capturedRequests) {
+			Path file = captured.getCapturedBody().getFile();
+			if (file == null) {
+				continue;
+			}
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				TestSuiteLogger.log(Level.WARNING, "Could not delete request body file " + file, e);
+			}
+		}
+	}
+	
+	/**
+	 * Typed view of the requests serialized so far, with indexes by HTTP method and by path suffix.
+	 * This is a snapshot; requests serialized afterwards are not included.
+	 * @return Read-only RequestSet
+	 */
+	public RequestSet getRequestSet() {
+		return new RequestSet(this.capturedRequests);
+	}
+	
+	/**
+	 * Copy of the requests document in which the bodies that were spilled to files are read back into
+	 * their Body elements, as if they had been kept in memory. The copy does not depend on the spill
+	 * files, so it can still be read once they are deleted.
+	 * @return Document with a root {@code <HttpRequestSet> } element
+	 * @throws IOException Exception if a spill file could not be read
+	 */
+	public Document loadDocument() throws IOException {
+		Document document = (Document) this.requestsDocument.cloneNode(true);
+		// The document has a Request element for every captured request, in the same order
+		int index = 0;
+		Element rootElement = document.getDocumentElement();
+		for (Node node = rootElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			CapturedRequest captured = this.capturedRequests.get(index++);
+			if (captured.getCapturedBody().getFile() != null) {
+				loadBody((Element) node, captured);
+			}
+		}
+		return document;
 	}
 	
 	/**
-	 * Save requests to a document at a path
+	 * The request that was serialized or restored last, with its body read back into memory if it was
+	 * spilled to a file, so it can be written out as it arrives.
+	 * @return The last {@code <Request> } element of the document, or a copy of it with the spilled
+	 * body, or null if there are no requests
+	 * @throws IOException Exception if the spill file could not be read
+	 */
+	Element loadLastRequest() throws IOException {
+		if (this.capturedRequests.isEmpty()) {
+			return null;
+		}
+		Element requestElement = (Element) this.requestsDocument.getDocumentElement().getLastChild();
+		CapturedRequest captured = this.capturedRequests.get(this.capturedRequests.size() - 1);
+		if (captured.getCapturedBody().getFile() == null) {
+			return requestElement;
+		}
+		Element copy = (Element) requestElement.cloneNode(true);
+		loadBody(copy, captured);
+		return copy;
+	}
+	
+	private static void loadBody(Element requestElement, CapturedRequest captured) throws IOException {
+		for (Node child = requestElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE && "Body".equals(child.getNodeName())) {
+				Element body = (Element) child;
+				body.removeAttribute("file");
+				setBodyContent(body, captured.load());
+			}
+		}
+	}
+	
+	/**
+	 * Typed view of the requests serialized so far, like {@link #getRequestSet()}, in which the bodies
+	 * that were spilled to files are read back into memory.
+	 * @return Read-only RequestSet
+	 * @throws IOException Exception if a spill file could not be read
+	 */
+	public RequestSet loadRequestSet() throws IOException {
+		List<CapturedRequest> loaded = new ArrayList<CapturedRequest>(this.capturedRequests.size());
+		for (CapturedRequest captured : this.capturedRequests) {
+			loaded.add(captured.load());
+		}
+		return new RequestSet(loaded);
+	}
+	
+	/**
+	 * Save requests to a document at a path. The document is streamed to the file one request at a
+	 * time through {@link RequestDocumentWriter}, and is gzip compressed if the file name ends with
+	 * ".gz". Bodies that were spilled to files are only referenced by their "file" attributes; a test
+	 * session writes its requests as they arrive with {@link HandlerOptions#openRequestsFile(Path)}
+	 * instead.
 	 * @param path Filesystem path to save requests document
-	 * @throws TransformerException Exception transforming requestsDocument to Stream
-	 * @throws FileNotFoundException Exception if destination could not be opened for writing
+	 * @throws TransformerException Exception if a transformer for the document could not be created
+	 * @throws IOException Exception if destination could not be opened or written
 	 */
-	public void saveToPath(Path path) throws TransformerException, FileNotFoundException {		
-		// Convert to String
-		StringWriter stringWriter = new StringWriter();
-		
-		this.transformer.transform(new DOMSource(this.requestsDocument), new StreamResult(stringWriter));
-		
-		String xmlDoc = stringWriter.toString();
-		
-		System.out.println("Writing to file: " + path.toString());
-		
-		// Open file and write string
-		PrintWriter outputFile = new PrintWriter(path.toAbsolutePath().toString());
-		outputFile.print(xmlDoc);
-		outputFile.close();
+	public void saveToPath(Path path) throws TransformerException, IOException {
+		TestSuiteLogger.log(Level.FINE, "Writing to file: " + path.toString());
 		
+		try (RequestDocumentWriter writer = RequestDocumentWriter.open(path.toAbsolutePath())) {
+			Element rootElement = this.requestsDocument.getDocumentElement();
+			for (Node node = rootElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+				if (node.getNodeType() == Node.ELEMENT_NODE) {
+					writer.append((Element) node);
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,219 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Immutable, indexed view of the secure client requests in a request set document. See
+ * {@link RequestRepresenter#serializeRequest(org.opengis.cite.servlet.http.HttpServletRequest)} for
+ * the document structure.
+ *
+ * Requests are indexed by HTTP method and by the path after the session path when the view is
+ * created, so looking up the requests for either is a single map lookup. The view is read-only
+ * afterwards, so it can be shared by every test class in a test suite run without copying or locking.
+ *
+ */
+public class RequestSet {
+
+	private final List<CapturedRequest> requests;
+
+	/**
+	 * Requests indexed by HTTP method, in request order
+	 */
+	private final Map<String, List<CapturedRequest>> requestsByMethod;
+
+	/**
+	 * Requests indexed by the path after the session path, in request order
+	 */
+	private final Map<String, List<CapturedRequest>> requestsByPathSuffix;
+
+	private final boolean allHttps;
+
+	/**
+	 * Create a view of a list of requests.
+	 * @param requests Requests in the order they were received. The list is copied.
+	 */
+	public RequestSet(List<CapturedRequest> requests) {
+		this.requests = Collections.unmodifiableList(new ArrayList<CapturedRequest>(requests));
+
+		Map<String, List<CapturedRequest>> byMethod = new HashMap<String, List<CapturedRequest>>();
+		Map<String, List<CapturedRequest>> byPathSuffix = new HashMap<String, List<CapturedRequest>>();
+		boolean https = true;
+		for (CapturedRequest request : this.requests) {
+			addToIndex(byMethod, request.getMethod(), request);
+			addToIndex(byPathSuffix, request.getPathSuffix(), request);
+			https &= request.isHttps();
+		}
+		this.requestsByMethod = readOnlyIndex(byMethod);
+		this.requestsByPathSuffix = readOnlyIndex(byPathSuffix);
+		this.allHttps = https;
+	}
+
+	/**
+	 * Read the requests from a request set document.
+	 * @param document Document with a root {@code <HttpRequestSet> } element
+	 * @return RequestSet with the requests in document order
+	 */
+	public static RequestSet fromDocument(Document document) {
+		List<CapturedRequest> requests = new ArrayList<CapturedRequest>();
+		Element root = document.getDocumentElement();
+		if (root != null) {
+			for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+				if (node.getNodeType() == Node.ELEMENT_NODE && "Request".equals(node.getNodeName())) {
+					requests.add(readRequest((Element) node));
+				}
+			}
+		}
+		return new RequestSet(requests);
+	}
+
+	/**
+	 * @return Read-only list of every request, in the order they were received
+	 */
+	public List<CapturedRequest> getRequests() {
+		return this.requests;
+	}
+
+	/**
+	 * Retrieve the requests made with an HTTP method.
+	 * @param method HTTP method, e.g. "GET"
+	 * @return Read-only list of requests in the order they were received, empty if there are none
+	 */
+	public List<CapturedRequest> getRequests(String method) {
+		List<CapturedRequest> methodRequests = this.requestsByMethod.get(method);
+		if (methodRequests == null) {
+			return Collections.emptyList();
+		}
+		return methodRequests;
+	}
+
+	/**
+	 * Retrieve the requests made to a path under the session path.
+	 * @param pathSuffix Path after the session path, e.g. "/full" or "/saml2". Use an empty string for
+	 * requests to the session path itself.
+	 * @return Read-only list of requests in the order they were received, empty if there are none
+	 */
+	public List<CapturedRequest> getRequestsByPathSuffix(String pathSuffix) {
+		List<CapturedRequest> pathRequests = this.requestsByPathSuffix.get(pathSuffix);
+		if (pathRequests == null) {
+			return Collections.emptyList();
+		}
+		return pathRequests;
+	}
+
+	/**
+	 * @return Number of requests
+	 */
+	public int size() {
+		return this.requests.size();
+	}
+
+	/**
+	 * @return True if there are no requests
+	 */
+	public boolean isEmpty() {
+		return this.requests.isEmpty();
+	}
+
+	/**
+	 * @return True if every request was sent over HTTPS. This is also true if there are no requests.
+	 */
+	public boolean isAllHttps() {
+		return this.allHttps;
+	}
+
+	private static void addToIndex(Map<String, List<CapturedRequest>> index, String key,
+			CapturedRequest request) {
+		List<CapturedRequest> keyRequests = index.get(key);
+		if (keyRequests == null) {
+			keyRequests = new ArrayList<CapturedRequest>();
+			index.put(key, keyRequests);
+		}
+		keyRequests.add(request);
+	}
+
+	private static Map<String, List<CapturedRequest>> readOnlyIndex(Map<String, List<CapturedRequest>> index) {
+		for (Map.Entry<String, List<CapturedRequest>> entry : index.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(index);
+	}
+
+	/**
+	 * Read a single {@code <Request> } element.
+	 */
+	static CapturedRequest readRequest(Element requestElement) {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		String contentEncoding = "";
+		int contentLength = -1;
+		CapturedBody body = CapturedBody.EMPTY_BODY;
+
+		NodeList children = requestElement.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			if (child.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			Element element = (Element) child;
+			if ("Header".equals(element.getNodeName())) {
+				headers.put(element.getAttribute("name"), element.getTextContent());
+			} else if ("Body".equals(element.getNodeName())) {
+				contentEncoding = element.getAttribute("contentEncoding");
+				try {
+					contentLength = Integer.parseInt(element.getAttribute("contentLength"));
+				} catch (NumberFormatException e) {
+					contentLength = -1;
+				}
+				body = readBody(element, contentEncoding);
+			}
+		}
+
+		// Documents written before the path was recorded have no path attribute
+		String path = requestElement.hasAttribute("path") ? requestElement.getAttribute("path") : null;
+
+		return new CapturedRequest(path, requestElement.getAttribute("method"),
+				"true".equals(requestElement.getAttribute("https")),
+				requestElement.getAttribute("protocol"),
+				requestElement.getAttribute("queryString"),
+				requestElement.getAttribute("authentication"),
+				headers, contentEncoding, contentLength, body);
+	}
+
+	private static CapturedBody readBody(Element bodyElement, String contentEncoding) {
+		// Documents written before streaming capture only have text bodies
+		BodyCapture.Storage storage = BodyCapture.Storage.parse(bodyElement.getAttribute("storage"));
+		boolean truncated = "true".equals(bodyElement.getAttribute("truncated"));
+		String digest = bodyElement.hasAttribute("digest") ? bodyElement.getAttribute("digest") : null;
+		Path file = bodyElement.hasAttribute("file") ? Paths.get(bodyElement.getAttribute("file")) : null;
+
+		byte[] bytes = null;
+		if (file == null && storage != BodyCapture.Storage.DIGEST) {
+			if (storage == BodyCapture.Storage.BASE64) {
+				bytes = Base64.getMimeDecoder().decode(bodyElement.getTextContent());
+			} else {
+				bytes = bodyElement.getTextContent().getBytes(CapturedRequest.bodyCharset(contentEncoding));
+			}
+		}
+
+		long size;
+		try {
+			size = Long.parseLong(bodyElement.getAttribute("size"));
+		} catch (NumberFormatException e) {
+			size = (bytes == null) ? 0 : bytes.length;
+		}
+
+		return new CapturedBody(storage, bytes, file, size, truncated, digest);
+	}
+}
@@ -0,0 +1,38 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import org.w3c.dom.Document;
+
+/**
+ * Consistent copy of the requests of a test session, as a document and as its typed view, taken with
+ * {@link HandlerOptions#snapshotRequests()}. The copy does not change when more requests are saved
+ * for the session, and the bodies that were spilled to files are kept in memory.
+ *
+ */
+public class RequestsSnapshot {
+
+	private final Document document;
+	private final RequestSet requestSet;
+
+	/**
+	 * @param document Copy of the requests document
+	 * @param requestSet Typed view of the same requests
+	 */
+	public RequestsSnapshot(Document document, RequestSet requestSet) {
+		this.document = document;
+		this.requestSet = requestSet;
+	}
+
+	/**
+	 * @return Document with a root {@code <HttpRequestSet> } element, owned by the caller
+	 */
+	public Document getDocument() {
+		return this.document;
+	}
+
+	/**
+	 * @return Read-only, indexed view of the same requests
+	 */
+	public RequestSet getRequestSet() {
+		return this.requestSet;
+	}
+}
@@ -0,0 +1,331 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+
+/**
+ * Lifecycle manager for the embedded test servers, with one shared server for each bind address and
+ * port pool.
+ *
+ * A server is started by the first test session that acquires its address and ports, and is shared by
+ * every session that acquires it while it is running. Each address and port pool has its own lock, so
+ * concurrent sessions for the same ports wait for one server to start instead of each binding the
+ * ports, and sessions for other ports are not delayed. The manager counts the sessions using each server; when
+ * the last session releases a server it is shut down after the idle timeout, unless another session
+ * acquires it first.
+ *
+ * A port can only belong to one pool at a time: a pool that shares a port with a running server on the
+ * same address, such as "8080-8081" while "8080" is running, is rejected instead of failing to bind.
+ * A running server keeps the KeyStore it was started with, so a session that gives a different
+ * KeyStore for the same pool is rejected as well.
+ *
+ */
+public class ServerManager {
+
+	private final long idleTimeoutMillis;
+
+	/**
+	 * Managed servers, keyed by bind address and port pool
+	 */
+	private final ConcurrentMap<String, ManagedServer> servers = new ConcurrentHashMap<String, ManagedServer>();
+
+	private final ScheduledExecutorService idleScheduler = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ets-security-client10-server-idle");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Lock for claiming the ports of a pool, held briefly and never while a server starts or stops
+	 */
+	private final Object portClaims = new Object();
+
+	/**
+	 * State of the server for one address and port pool. Apart from `claimed`, which is guarded by
+	 * {@link ServerManager#portClaims}, the mutable fields are guarded by the object's lock.
+	 */
+	private static class ManagedServer {
+		final String host;
+		final int[] ports;
+		TestServer server;
+		String jksPath;
+		String jksPassword;
+		int sessions;
+		ScheduledFuture<?> idleShutdown;
+		boolean claimed;
+
+		ManagedServer(String host, int[] ports) {
+			this.host = host;
+			this.ports = ports.clone();
+		}
+	}
+
+	/**
+	 * Create a manager without any running servers.
+	 * @param idleTimeout Time a server is kept running after its last session is released. Zero shuts
+	 * it down when the last session is released, and a negative value keeps it running until
+	 * {@link #shutdown()}.
+	 * @param unit Unit of `idleTimeout`
+	 */
+	public ServerManager(long idleTimeout, TimeUnit unit) {
+		this.idleTimeoutMillis = (idleTimeout < 0) ? -1 : unit.toMillis(idleTimeout);
+	}
+
+	/**
+	 * Acquire the server for an address and port pool for a test session, starting it if it is not
+	 * running. Every call must be followed by a call to {@link #release(String, int[])} once the session
+	 * no longer needs the server.
+	 *
+	 * @param host String of host interface to bind
+	 * @param ports Ports to bind, see {@link TestServer#parsePorts(String)}
+	 * @param jks_path Path to the Java KeyStore, which must match the KeyStore of a running server
+	 * @param jks_password Password to unlock the KeyStore, which must match that of a running server
+	 * @return Running TestServer for the address and ports
+	 * @throws IllegalStateException If the pool shares a port with the server of another pool, or the
+	 * server for the pool is running with a different KeyStore. The session is not counted.
+	 * @throws Exception Exception if the server could not be started. The session is not counted.
+	 */
+	public TestServer acquire(String host, int[] ports, String jks_path, String jks_password) throws Exception {
+		ManagedServer managed = managedServer(host, ports);
+		synchronized (managed) {
+			if (managed.server == null) {
+				claimPorts(managed);
+				try {
+					managed.server = startServer(host, ports, jks_path, jks_password);
+				} finally {
+					if (managed.server == null) {
+						unclaimPorts(managed);
+					}
+				}
+				managed.jksPath = canonicalKeystorePath(jks_path);
+				managed.jksPassword = jks_password;
+				TestSuiteLogger.log(Level.FINE, "Started test server on " + key(host, ports));
+			} else if (!Objects.equals(managed.jksPath, canonicalKeystorePath(jks_path))
+					|| !Objects.equals(managed.jksPassword, jks_password)) {
+				// The keystore path is not shown, as it may end up in the test results
+				throw new IllegalStateException("The test server on " + key(host, ports)
+						+ " is already running with a different keystore or keystore password;"
+						+ " use the same keystore for every test session, or another port");
+			}
+			if (managed.idleShutdown != null) {
+				managed.idleShutdown.cancel(false);
+				managed.idleShutdown = null;
+			}
+			managed.sessions++;
+			return managed.server;
+		}
+	}
+
+	/**
+	 * Release a server acquired with {@link #acquire(String, int[], String, String)}. When no session
+	 * is using the server anymore it is shut down after the idle timeout.
+	 *
+	 * @param host String of host interface the server is bound to
+	 * @param ports Ports the server is bound to
+	 * @throws IllegalStateException If no session has acquired the server
+	 */
+	public void release(String host, int[] ports) {
+		final String key = key(host, ports);
+		final ManagedServer managed = this.servers.get(key);
+		if (managed == null) {
+			throw new IllegalStateException("Test server was not acquired: " + key);
+		}
+		synchronized (managed) {
+			if (managed.sessions == 0) {
+				throw new IllegalStateException("Test server was not acquired: " + key);
+			}
+			managed.sessions--;
+			if (managed.sessions > 0 || this.idleTimeoutMillis < 0) {
+				return;
+			}
+			if (this.idleTimeoutMillis == 0) {
+				stopServer(managed, key);
+				return;
+			}
+			managed.idleShutdown = this.idleScheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (managed) {
+						// A session may have acquired the server while this task was waiting for the lock
+						if (managed.sessions == 0 && managed.idleShutdown != null) {
+							managed.idleShutdown = null;
+							stopServer(managed, key);
+						}
+					}
+				}
+			}, this.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * The number of test sessions using the server for an address and port pool.
+	 * @param host String of host interface
+	 * @param ports Ports of the server
+	 * @return Number of sessions that acquired the server and have not released it
+	 */
+	public int getSessionCount(String host, int[] ports) {
+		ManagedServer managed = this.servers.get(key(host, ports));
+		if (managed == null) {
+			return 0;
+		}
+		synchronized (managed) {
+			return managed.sessions;
+		}
+	}
+
+	/**
+	 * @param host String of host interface
+	 * @param ports Ports of the server
+	 * @return True if the server for the address and ports is running
+	 */
+	public boolean isRunning(String host, int[] ports) {
+		ManagedServer managed = this.servers.get(key(host, ports));
+		if (managed == null) {
+			return false;
+		}
+		synchronized (managed) {
+			return managed.server != null;
+		}
+	}
+
+	/**
+	 * Shut down every running server, whether or not sessions are still using it. Servers acquired
+	 * afterwards are started again.
+	 */
+	public void shutdown() {
+		List<String> keys = new ArrayList<String>(this.servers.keySet());
+		for (String key : keys) {
+			ManagedServer managed = this.servers.get(key);
+			synchronized (managed) {
+				if (managed.idleShutdown != null) {
+					managed.idleShutdown.cancel(false);
+					managed.idleShutdown = null;
+				}
+				managed.sessions = 0;
+				stopServer(managed, key);
+			}
+		}
+	}
+
+	/**
+	 * Start a server. Called while holding the lock for the address and port pool.
+	 *
+	 * @param host String of host interface to bind
+	 * @param ports Ports to bind
+	 * @param jks_path Path to the Java KeyStore
+	 * @param jks_password Password to unlock the KeyStore
+	 * @return Running TestServer
+	 * @throws Exception for any errors starting the embedded Jetty server
+	 */
+	protected TestServer startServer(String host, int[] ports, String jks_path, String jks_password)
+			throws Exception {
+		return new TestServer(host, ports, jks_path, jks_password);
+	}
+
+	/**
+	 * Claim the ports of `managed` before its server is started.
+	 * @throws IllegalStateException If a port is claimed by the server of another pool on the same
+	 * address
+	 */
+	private void claimPorts(ManagedServer managed) {
+		synchronized (this.portClaims) {
+			for (ManagedServer other : this.servers.values()) {
+				if (other != managed && other.claimed && overlaps(managed, other)) {
+					throw new IllegalStateException("Test server ports " + key(managed.host, managed.ports)
+							+ " overlap the running test server on " + key(other.host, other.ports)
+							+ "; use the same port pool for every test session, or pools without shared ports");
+				}
+			}
+			managed.claimed = true;
+		}
+	}
+
+	private void unclaimPorts(ManagedServer managed) {
+		synchronized (this.portClaims) {
+			managed.claimed = false;
+		}
+	}
+
+	/**
+	 * True if the pools share a port on the same address. A wildcard address shares its ports with
+	 * every address.
+	 */
+	private static boolean overlaps(ManagedServer first, ManagedServer second) {
+		if (!isWildcard(first.host) && !isWildcard(second.host) && !first.host.equals(second.host)) {
+			return false;
+		}
+		for (int port : first.ports) {
+			for (int other : second.ports) {
+				if (port == other) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isWildcard(String host) {
+		return host == null || host.isEmpty() || "0.0.0.0".equals(host) || "::".equals(host);
+	}
+
+	private static String canonicalKeystorePath(String jks_path) {
+		return (jks_path == null) ? null : new File(jks_path).toPath().toAbsolutePath().normalize().toString();
+	}
+
+	private ManagedServer managedServer(String host, int[] ports) {
+		String key = key(host, ports);
+		ManagedServer managed = this.servers.get(key);
+		if (managed == null) {
+			ManagedServer created = new ManagedServer(host, ports);
+			managed = this.servers.putIfAbsent(key, created);
+			if (managed == null) {
+				managed = created;
+			}
+		}
+		return managed;
+	}
+
+	/**
+	 * Stop the server of `managed` if it is running. Called while holding its lock. Failures are
+	 * logged, and a new server is started by the next session either way.
+	 */
+	private void stopServer(ManagedServer managed, String key) {
+		if (managed.server == null) {
+			return;
+		}
+		try {
+			managed.server.shutdown();
+			TestSuiteLogger.log(Level.FINE, "Stopped test server on " + key);
+		} catch (Exception e) {
+			TestSuiteLogger.log(Level.WARNING, "Could not stop test server on " + key, e);
+		}
+		managed.server = null;
+		managed.jksPath = null;
+		managed.jksPassword = null;
+		unclaimPorts(managed);
+	}
+
+	private static String key(String host, int[] ports) {
+		StringBuilder key = new StringBuilder((host == null) ? "" : host);
+		for (int i = 0; i < ports.length; i++) {
+			key.append((i == 0) ? ':' : ',').append(ports[i]);
+		}
+		return key.toString();
+	}
+}
@@ -1,5 +1,7 @@
 package org.opengis.cite.securityclient10.httpServer;
 
+import java.nio.file.Path;
+
 /**
  * Class for options passed to emulated server types in TestServer.
  * Used to specify all Requirement Classes from the Web Services 
@@ -42,6 +44,20 @@ public class ServerOptions {
 	 * for valid values.
 	 */
 	private String serviceType;
+	/**
+	 * How request bodies from the secure client are captured.
+	 */
+	private BodyCapture bodyCapture;
+	/**
+	 * The path of the journal the requests from the secure client are 
+	 * appended to as they arrive. Optional.
+	 */
+	private Path journalPath;
+	/**
+	 * The path of the requests document the requests from the secure 
+	 * client are written to as they arrive. Optional.
+	 */
+	private Path requestsFilePath;
 
 	public ServerOptions(String serviceType) {
 		this.serviceType = serviceType;
@@ -50,6 +66,15 @@ public class ServerOptions {
 		this.httpExceptionHandling = false;
 		this.httpMethods = false;
 		this.httpPostContentType = false;
+		this.bodyCapture = BodyCapture.DEFAULT;
+	}
+	
+	/**
+	 * Get how request bodies from the secure client are captured.
+	 * @return BodyCapture
+	 */
+	public BodyCapture getBodyCapture() {
+		return this.bodyCapture;
 	}
 	
 	/**
@@ -124,6 +149,22 @@ public class ServerOptions {
 		return this.idpUrl;
 	}
 	
+	/**
+	 * Get the path of the request journal for the test session.
+	 * @return Path, or null if the session has no journal
+	 */
+	public Path getJournalPath() {
+		return this.journalPath;
+	}
+	
+	/**
+	 * Get the path of the requests document for the test session.
+	 * @return Path, or null if the requests are not written to a file
+	 */
+	public Path getRequestsFilePath() {
+		return this.requestsFilePath;
+	}
+	
 	/**
 	 * Get the type of server to be emulated.
 	 * @return String
@@ -144,6 +185,35 @@ public class ServerOptions {
 		}
 	}
 	
+	/**
+	 * Set how request bodies from the secure client are captured. If null,
+	 * the default text capture is used.
+	 * @param capture BodyCapture configuration
+	 */
+	public void setBodyCapture(BodyCapture capture) {
+		this.bodyCapture = (capture == null) ? BodyCapture.DEFAULT : capture;
+	}
+	
+	/**
+	 * Set the path of the request journal for the test session, see 
+	 * {@link RequestJournal}. If null, the session has no journal.
+	 * @param path Filesystem path of the journal
+	 */
+	public void setJournalPath(Path path) {
+		this.journalPath = path;
+	}
+	
+	/**
+	 * Set the path of the requests document for the test session, which
+	 * each request is appended to as it arrives through a 
+	 * {@link RequestDocumentWriter}. If null, the requests are not written 
+	 * to a file.
+	 * @param path Filesystem path of the requests document
+	 */
+	public void setRequestsFilePath(Path path) {
+		this.requestsFilePath = path;
+	}
+	
 	public void setCors(boolean enabled) {
 		this.cors = enabled;
 	}
@@ -0,0 +1,262 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+import org.opengis.cite.servlet.ReadListener;
+import org.opengis.cite.servlet.ServletInputStream;
+import org.opengis.cite.servlet.ServletOutputStream;
+import org.opengis.cite.servlet.WriteListener;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+
+/**
+ * Sends synthetic requests through every registered emulated server, so the first real test session
+ * does not pay for class loading, XML factory discovery and just-in-time compilation of the request
+ * path.
+ *
+ * For each service type a server is created with SAML 2 authentication, and the same requests a secure
+ * client makes in a test session are handled: a capabilities request, a capabilities request to the
+ * "/full" path without a security context (which builds a SAML authentication request and redirects to
+ * the Identity Provider) and the SAML callback. Each request is also captured with a
+ * {@link RequestRepresenter}. Requests are handled in memory; no connection is made to the embedded
+ * server and nothing is registered in it.
+ *
+ */
+public class ServerWarmup {
+
+	/**
+	 * Session path of the synthetic requests
+	 */
+	private static final String PATH = "/warmup";
+
+	/**
+	 * Identity Provider URL for the SAML redirect, it is never requested
+	 */
+	private static final String IDP_URL = "https://localhost/idp/saml2";
+
+	private ServerWarmup() {
+	}
+
+	/**
+	 * Handle the synthetic requests with an emulated server for each registered service type. Failures
+	 * are logged and the remaining service types are still warmed up.
+	 * @return Number of service types whose requests were all handled
+	 */
+	public static int warmUpEmulatedServers() {
+		int warmedUp = 0;
+		for (String serviceType : EmulatedServerRegistry.getServiceTypes()) {
+			try {
+				warmUp(serviceType);
+				warmedUp++;
+			} catch (IOException | TransformerException | ParserConfigurationException
+					| RuntimeException e) {
+				TestSuiteLogger.log(Level.WARNING, "Could not warm up emulated server for " + serviceType, e);
+			}
+		}
+		return warmedUp;
+	}
+
+	/**
+	 * Handle the synthetic requests with an emulated server for one service type.
+	 * @param serviceType Service type test run property value, e.g. "wms13"
+	 * @throws IOException Exception if a request could not be captured or a response written
+	 * @throws TransformerException Exception if a response document could not be serialized
+	 * @throws ParserConfigurationException Exception if the request representer could not be created
+	 */
+	static void warmUp(String serviceType) throws IOException, TransformerException,
+			ParserConfigurationException {
+		ServerOptions options = new ServerOptions(serviceType);
+		options.setAuthentication("saml2");
+		options.setIdpUrl(IDP_URL);
+		EmulatedServer server = EmulatedServerRegistry.createServer(options);
+		RequestRepresenter representer = new RequestRepresenter(options.getBodyCapture());
+
+		String query = "service=" + serviceName(serviceType) + "&request=GetCapabilities";
+		HttpServletRequest[] requests = new HttpServletRequest[] {
+				syntheticRequest("GET", PATH, query),
+				syntheticRequest("GET", PATH + "/full", query),
+				syntheticRequest("POST", PATH + "/saml2", "")
+		};
+		for (HttpServletRequest request : requests) {
+			representer.serializeRequest(request);
+			server.handleRequest(request, syntheticResponse());
+		}
+	}
+
+	/**
+	 * The SERVICE parameter value for a service type, which is its name without the version digits,
+	 * e.g. "WMS" for "wms13".
+	 * @param serviceType Service type test run property value
+	 * @return String with service name in upper case
+	 */
+	static String serviceName(String serviceType) {
+		int end = serviceType.length();
+		while (end > 0 && Character.isDigit(serviceType.charAt(end - 1))) {
+			end--;
+		}
+		return serviceType.substring(0, end).toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Create an HTTPS request to the embedded server. Methods without a value for a synthetic request
+	 * return null, false, -1 or an empty enumeration.
+	 * @param method HTTP method
+	 * @param path Request path, including the session path
+	 * @param queryString Query string without "?", may be empty
+	 * @return HttpServletRequest
+	 */
+	static HttpServletRequest syntheticRequest(final String method, final String path, final String queryString) {
+		final Map<String, String> parameters = new LinkedHashMap<String, String>();
+		for (String pair : queryString.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				parameters.put(pair.substring(0, separator), pair.substring(separator + 1));
+			}
+		}
+
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method invoked, Object[] args) {
+				switch (invoked.getName()) {
+					case "getMethod":
+						return method;
+					case "getPathInfo":
+					case "getRequestURI":
+						return path;
+					case "getQueryString":
+						return queryString.isEmpty() ? null : queryString;
+					case "getParameter":
+						return parameters.get(args[0]);
+					case "getParameterNames":
+						return Collections.enumeration(parameters.keySet());
+					case "getScheme":
+						return "https";
+					case "getServerName":
+						return "localhost";
+					case "getServerPort":
+						return 443;
+					case "isSecure":
+						return true;
+					case "getProtocol":
+						return "HTTP/1.1";
+					case "getInputStream":
+						return new EmptyInputStream();
+					default:
+						return defaultValue(proxy, invoked, args);
+				}
+			}
+		};
+		return (HttpServletRequest) Proxy.newProxyInstance(ServerWarmup.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, handler);
+	}
+
+	/**
+	 * Create a response that discards its body. Methods without a value return null, false, -1 or an
+	 * empty enumeration.
+	 * @return HttpServletResponse
+	 */
+	static HttpServletResponse syntheticResponse() {
+		final DiscardingOutputStream output = new DiscardingOutputStream();
+		final PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method invoked, Object[] args) {
+				switch (invoked.getName()) {
+					case "getOutputStream":
+						return output;
+					case "getWriter":
+						return writer;
+					default:
+						return defaultValue(proxy, invoked, args);
+				}
+			}
+		};
+		return (HttpServletResponse) Proxy.newProxyInstance(ServerWarmup.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, handler);
+	}
+
+	private static Object defaultValue(Object proxy, Method invoked, Object[] args) {
+		Class<?> type = invoked.getReturnType();
+		if ("equals".equals(invoked.getName())) {
+			return proxy == args[0];
+		} else if ("hashCode".equals(invoked.getName())) {
+			return System.identityHashCode(proxy);
+		} else if ("toString".equals(invoked.getName())) {
+			return "Synthetic " + invoked.getDeclaringClass().getSimpleName();
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return -1;
+		} else if (type == long.class) {
+			return -1L;
+		} else if (type == Enumeration.class) {
+			return Collections.emptyEnumeration();
+		}
+		return null;
+	}
+
+	/**
+	 * Request body of a synthetic request, which is always empty
+	 */
+	private static class EmptyInputStream extends ServletInputStream {
+		@Override
+		public int read() {
+			return -1;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return true;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			throw new IllegalStateException("Synthetic requests are not asynchronous");
+		}
+	}
+
+	/**
+	 * Response body of a synthetic request, which is not kept
+	 */
+	private static class DiscardingOutputStream extends ServletOutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			throw new IllegalStateException("Synthetic responses are not asynchronous");
+		}
+	}
+}
@@ -1,18 +1,18 @@
 package org.opengis.cite.securityclient10.httpServer;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Enumeration;
 
-import org.opengis.cite.securityclient10.Identifiers;
 import org.opengis.cite.securityclient10.Namespaces;
 import org.opengis.cite.securityclient10.Schemas;
 import org.opengis.cite.securityclient10.util.XMLUtils;
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import org.opengis.cite.servlet.http.HttpServletResponse;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
-import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.Element;
@@ -36,7 +36,7 @@ public class ServerWms111 extends EmulatedServer {
 	 * @param options ServerOptions object with emulated server configuration
 	 */
 	public ServerWms111(ServerOptions options) {
-		this.options = options;
+		super(options);
 	}
 	
 	/**
@@ -45,11 +45,9 @@ public class ServerWms111 extends EmulatedServer {
 	 * @param request Request from client
 	 * @param response Response to build to send back to client
 	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the response output stream could not be written
 	 */
-	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException {
-		System.out.println("Building WMS 1.1.1 Response");
-		System.out.println("Query Params: " + request.getQueryString());
-		
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException, IOException {
 		enableCors(response);
 		
 		// If mandatory query parameters are missing, return an exception
@@ -116,21 +114,38 @@ public class ServerWms111 extends EmulatedServer {
 	 * document. If `completeCapabilities` is true, then a complete capabilities document with a Content 
 	 * section (Layers) will be generated, and the embedded links will use the "/full" URL. If false, then 
 	 * a partial capabilities document will be generated without a Content section (Layers), and clients
-	 * must use authentication to request the complete capabilities.
+	 * must use authentication to request the complete capabilities. The serialized document is cached
+	 * for the server options and base URL, so repeated requests skip writing the document.
 	 * 
 	 * Source: Annex A
 	 * 
 	 * @param request Source request from client, used to build absolute URLs for HREFs
 	 * @param response Response to build to send back to client
 	 * @param completeCapabilities If true, build a complete capabilities document
-	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the document or the response output stream could not be written
 	 */
-	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws TransformerException {
+	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws IOException {
 		response.setContentType("application/vnd.ogc.wms_xml");
 		response.setStatus(HttpServletResponse.SC_OK);
 		
 		// Extract scheme/host/port/path for HREFs
 		String baseHref = getUri(request, false);
+		
+		writeCapabilities(baseHref, completeCapabilities, response);
+	}
+	
+	/**
+	 * Write the Capabilities document for `baseHref`. See 
+	 * {@link #buildCapabilities(HttpServletRequest, HttpServletResponse, boolean)}.
+	 * 
+	 * @param baseHref The base URL of the request, used to build absolute URLs for HREFs
+	 * @param completeCapabilities If true, write a complete capabilities document
+	 * @param writer CapabilitiesWriter to write the document to
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	@Override
+	protected void writeCapabilitiesDocument(String baseHref, boolean completeCapabilities, 
+			CapabilitiesWriter writer) throws XMLStreamException {
 		String href;
 		
 		if (completeCapabilities) {
@@ -139,315 +154,152 @@ public class ServerWms111 extends EmulatedServer {
 			href = baseHref;
 		}
 		
-		
-		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		DocumentType doctype = domImplementation.createDocumentType("doctype", null,
-				Schemas.WMS_111);
-		Document doc = domImplementation.createDocument(null, "WMT_MS_Capabilities", doctype);
-		
-		Element rootElement = doc.getDocumentElement();
-		rootElement.setAttribute("version", "1.1.1");
+		writer.startDocument("WMT_MS_Capabilities", Schemas.WMS_111);
+		writer.startElement("WMT_MS_Capabilities");
+		writer.attribute("version", "1.1.1");
 		
 		// Service Section
-		Element service = doc.createElement("Service");
-		rootElement.appendChild(service);
-		
-		Element name = doc.createElement("Name");
-		name.setTextContent("WMS");
-		service.appendChild(name);
-		
-		Element title = doc.createElement("Title");
-		title.setTextContent("ETS Security Client 1.0 WMS 1.1.1");
-		service.appendChild(title);
-		
-		Element abstractElement = doc.createElement("Abstract");
-		abstractElement.setTextContent("WMS 1.1.1 for validating secure client requests under ETS Security Client 1.0");
-		service.appendChild(abstractElement);
-		
-		Element onlineResource = doc.createElement("OnlineResource");
-		onlineResource.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		onlineResource.setAttribute("xlink:type", "simple");
-		onlineResource.setAttribute("xlink:href", href);
-		service.appendChild(onlineResource);
+		writer.startElement("Service");
+		writer.textElement("Name", "WMS");
+		writer.textElement("Title", "ETS Security Client 1.0 WMS 1.1.1");
+		writer.textElement("Abstract", "WMS 1.1.1 for validating secure client requests under ETS Security Client 1.0");
+		writeOnlineResource(writer, href);
+		writer.endElement();
 		
 		// Capability Section
-		Element capability = doc.createElement("Capability");
-		rootElement.appendChild(capability);
+		writer.startElement("Capability");
 		
 		// Capability > Request
-		Element requestElement = doc.createElement("Request");
-		capability.appendChild(requestElement);
+		writer.startElement("Request");
 		
 		// Capability > Request > GetCapabilities
-		Element getCapabilities = doc.createElement("GetCapabilities");
-		requestElement.appendChild(getCapabilities);
-		
-		Element getCapabilitiesFormat = doc.createElement("Format");
-		getCapabilitiesFormat.setTextContent("application/vnd.ogc.wms_xml");
-		getCapabilities.appendChild(getCapabilitiesFormat);
-		
-		Element getCapabilitiesDCPType = doc.createElement("DCPType");
-		getCapabilities.appendChild(getCapabilitiesDCPType);
-		
-		Element getCapabilitiesDCPTypeHTTP = doc.createElement("HTTP");
-		getCapabilitiesDCPType.appendChild(getCapabilitiesDCPTypeHTTP);
-		
-		Element getCapabilitiesDCPTypeHTTPGet = doc.createElement("Get");
-		getCapabilitiesDCPTypeHTTP.appendChild(getCapabilitiesDCPTypeHTTPGet);
-		
-		Element getCapabilitiesDCPTypeHTTPGetOR = doc.createElement("OnlineResource");
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xlink:type", "simple");
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xlink:href", href);
-		getCapabilitiesDCPTypeHTTPGet.appendChild(getCapabilitiesDCPTypeHTTPGetOR);
-		
-		Element getCapabilitiesDCPTypeHTTPPost = doc.createElement("Post");
-		getCapabilitiesDCPTypeHTTP.appendChild(getCapabilitiesDCPTypeHTTPPost);
-		
-		Element getCapabilitiesDCPTypeHTTPPostOR = doc.createElement("OnlineResource");
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xlink:type", "simple");
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xlink:href", href);
-		getCapabilitiesDCPTypeHTTPPost.appendChild(getCapabilitiesDCPTypeHTTPPostOR);
+		writer.startElement("GetCapabilities");
+		writer.textElement("Format", "application/vnd.ogc.wms_xml");
+		writer.startElement("DCPType");
+		writer.startElement("HTTP");
+		writer.startElement("Get");
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.startElement("Post");
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 		
 		// Capability > Request > GetMap
-		Element getMap = doc.createElement("GetMap");
-		requestElement.appendChild(getMap);
-		
-		Element getMapFormat = doc.createElement("Format");
-		getMapFormat.setTextContent("image/png");
-		getMap.appendChild(getMapFormat);
-		
-		Element getMapDCPType = doc.createElement("DCPType");
-		getMap.appendChild(getMapDCPType);
-		
-		Element getMapDCPTypeHTTP = doc.createElement("HTTP");
-		getMapDCPType.appendChild(getMapDCPTypeHTTP);
-		
-		Element getMapDCPTypeHTTPGet = doc.createElement("Get");
-		getMapDCPTypeHTTP.appendChild(getMapDCPTypeHTTPGet);
-		
-		Element getMapDCPTypeHTTPGetOR = doc.createElement("OnlineResource");
-		getMapDCPTypeHTTPGetOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getMapDCPTypeHTTPGetOR.setAttribute("xlink:type", "simple");
-		getMapDCPTypeHTTPGetOR.setAttribute("xlink:href", href);
-		getMapDCPTypeHTTPGet.appendChild(getMapDCPTypeHTTPGetOR);
+		writer.startElement("GetMap");
+		writer.textElement("Format", "image/png");
+		writer.startElement("DCPType");
+		writer.startElement("HTTP");
+		writer.startElement("Get");
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		
+		// End Capability > Request
+		writer.endElement();
 		
 		// Capability > Exception
-		Element exception = doc.createElement("Exception");
-		capability.appendChild(exception);
-		
-		Element exceptionFormat = doc.createElement("Format");
-		exceptionFormat.setTextContent("application/vnd.ogc.se_xml");
-		exception.appendChild(exceptionFormat);
+		writer.startElement("Exception");
+		writer.textElement("Format", "application/vnd.ogc.se_xml");
+		writer.endElement();
 		
 		if (completeCapabilities) {
 			// Capabilities > Layer
-			Element layer = doc.createElement("Layer");
-			capability.appendChild(layer);
-			
-			Element layerTitle = doc.createElement("Title");
-			layerTitle.setTextContent("False Layer Data");
-			layer.appendChild(layerTitle);
-			
-			Element layerSrs = doc.createElement("SRS");
-			layerSrs.setTextContent("EPSG:4326");
-			layer.appendChild(layerSrs);
+			writer.startElement("Layer");
+			writer.textElement("Title", "False Layer Data");
+			writer.textElement("SRS", "EPSG:4326");
+			writer.endElement();
 		}
 		
 		// Capability > VendorSpecificCapabilities
-		Element vendorSpecificCapabilities = buildVendorSpecificCapabilities(doc, baseHref);
-		capability.appendChild(vendorSpecificCapabilities);
+		writeVendorSpecificCapabilities(writer, baseHref);
 		
-		printWriter.print(XMLUtils.writeDocumentToString(doc, true));
+		writer.endElement();
+		writer.endElement();
+	}
+	
+	/**
+	 * Write a WMS OnlineResource element linking to `href`.
+	 * 
+	 * @param writer CapabilitiesWriter to write the element to
+	 * @param href String with URL to embed
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	private void writeOnlineResource(CapabilitiesWriter writer, String href) throws XMLStreamException {
+		writer.emptyElement("OnlineResource");
+		writer.namespace("xlink", Namespaces.XLINK);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
 	}
 	
 	/**
-	 * Build an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildGetElement(Document doc, String href) {
-		Element get = doc.createElement("ows:Get");
-		get.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		get.setAttribute("xlink:type", "simple");
-		get.setAttribute("xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-		
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			get.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElement("ows:ValuesReference");
-			constraintValuesReference.setAttribute("ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			get.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElement("ows:AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			Element valueGet = doc.createElement("ows:Value");
-			valueGet.setTextContent("GET");
-			constraintAllowedValues.appendChild(valueGet);
-			
-			Element valuePost = doc.createElement("ows:Value");
-			valuePost.setTextContent("POST");
-			constraintAllowedValues.appendChild(valuePost);
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElement("ows:NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElement("ows:NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		return get;
+	private void writeGetElement(CapabilitiesWriter writer, String href) throws XMLStreamException {
+		writer.startElement("ows", "Get", Namespaces.OWS);
+		writer.namespace("xlink", Namespaces.XLINK);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "ows", Namespaces.OWS, new String[] {"GET", "POST"}, false);
+		writer.endElement();
 	}
 	
 	/**
-	 * Build an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildPostElement(Document doc, String href) {
-		Element post = doc.createElement("ows:Post");
-		post.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		post.setAttribute("xlink:type", "simple");
-		post.setAttribute("xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-		
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			post.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElement("ows:ValuesReference");
-			constraintValuesReference.setAttribute("ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElement("ows:AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			Element valueGet = doc.createElement("ows:Value");
-			valueGet.setTextContent("GET");
-			constraintAllowedValues.appendChild(valueGet);
-			
-			Element valuePost = doc.createElement("ows:Value");
-			valuePost.setTextContent("POST");
-			constraintAllowedValues.appendChild(valuePost);
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElement("ows:NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElement("ows:NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP POST Content-Type Constraint
-		if (this.options.getHttpPostContentType()) {
-			Element constraint = doc.createElement("ows:Constraint");
-			constraint.setAttribute("name", Identifiers.CONTENT_TYPE);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElement("ows:AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			Element value = doc.createElement("ows:Value");
-			value.setTextContent("application/x-www-form-urlencoded");
-			constraintAllowedValues.appendChild(value);
-		}
-		
-		return post;
+	private void writePostElement(CapabilitiesWriter writer, String href) throws XMLStreamException {
+		writer.startElement("ows", "Post", Namespaces.OWS);
+		writer.namespace("xlink", Namespaces.XLINK);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "ows", Namespaces.OWS, new String[] {"GET", "POST"}, true);
+		writer.endElement();
 	}
 	
 	/**
-	 * Create the VendorSpecificCapabilities element and populate it with security annotations based on
+	 * Write the VendorSpecificCapabilities element and populate it with security annotations based on
 	 * the test run properties for the ETS.
 	 */
-	private Element buildVendorSpecificCapabilities(Document doc, String href) {
-		Element vendorSpecificCapabilities = doc.createElement("VendorSpecificCapabilities");
-		
+	private void writeVendorSpecificCapabilities(CapabilitiesWriter writer, String href) throws XMLStreamException {
 		String completeCapabilitiesUrl = href + "/full";
 		
-		Element extendedSecurityCapabilities = doc.createElement("ows_security:ExtendedSecurityCapabilities");
-		extendedSecurityCapabilities.setAttribute("xmlns:ows_security", Namespaces.OWS_SECURITY);
-		vendorSpecificCapabilities.appendChild(extendedSecurityCapabilities);
-		
-		Element operationsMetadata = doc.createElement("ows:OperationsMetadata");
-		operationsMetadata.setAttribute("xmlns:ows", Namespaces.OWS);
-		extendedSecurityCapabilities.appendChild(operationsMetadata);
+		writer.startElement("VendorSpecificCapabilities");
+		writer.startElement("ows_security", "ExtendedSecurityCapabilities", Namespaces.OWS_SECURITY);
+		writer.namespace("ows_security", Namespaces.OWS_SECURITY);
+		writer.startElement("ows", "OperationsMetadata", Namespaces.OWS);
+		writer.namespace("ows", Namespaces.OWS);
 		
 		// GetCapabilities
-		Element getCapabilities = doc.createElement("ows:Operation");
-		getCapabilities.setAttribute("name", "GetCapabilities");
-		operationsMetadata.appendChild(getCapabilities);
-		
-		Element getCapabilitiesDcp = doc.createElement("ows:DCP");
-		getCapabilities.appendChild(getCapabilitiesDcp);
-		
-		Element getCapabilitiesDcpHttp = doc.createElement("ows:HTTP");
-		getCapabilitiesDcp.appendChild(getCapabilitiesDcpHttp);
-		
-		// GetCapabilities GET
-		Element getCapabilitiesDcpHttpGet = this.buildGetElement(doc, completeCapabilitiesUrl);
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpGet);
-		
-		// GetCapabilities POST
-		Element getCapabilitiesDcpHttpPost = this.buildPostElement(doc, completeCapabilitiesUrl);
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpPost);
-		
-		return vendorSpecificCapabilities;
+		writer.startElement("ows", "Operation", Namespaces.OWS);
+		writer.attribute("name", "GetCapabilities");
+		writer.startElement("ows", "DCP", Namespaces.OWS);
+		writer.startElement("ows", "HTTP", Namespaces.OWS);
+		
+		// GetCapabilities GET and POST
+		this.writeGetElement(writer, completeCapabilitiesUrl);
+		this.writePostElement(writer, completeCapabilitiesUrl);
+		
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 	}
 
 	/**
@@ -465,10 +317,9 @@ public class ServerWms111 extends EmulatedServer {
 		response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 		
 		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		DocumentType doctype = domImplementation.createDocumentType("doctype", null,
+		DocumentType doctype = this.domImplementation.createDocumentType("doctype", null,
 				Schemas.WMS_111_SE);
-		Document doc = domImplementation.createDocument(null, "ServiceExceptionReport", doctype);
+		Document doc = this.domImplementation.createDocument(null, "ServiceExceptionReport", doctype);
 		
 		Element rootElement = doc.getDocumentElement();
 		rootElement.setAttribute("version", "1.1.1");
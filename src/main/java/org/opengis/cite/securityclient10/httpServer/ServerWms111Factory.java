@@ -0,0 +1,18 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+/**
+ * Factory for emulated WMS 1.1.1 servers, registered for the "wms111" service type.
+ *
+ */
+public class ServerWms111Factory implements EmulatedServerFactory {
+
+	@Override
+	public String getServiceType() {
+		return "wms111";
+	}
+
+	@Override
+	public EmulatedServer createServer(ServerOptions options) {
+		return new ServerWms111(options);
+	}
+}
@@ -1,17 +1,17 @@
 package org.opengis.cite.securityclient10.httpServer;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Enumeration;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
-import org.opengis.cite.securityclient10.Identifiers;
 import org.opengis.cite.securityclient10.Namespaces;
 import org.opengis.cite.securityclient10.Schemas;
 import org.opengis.cite.securityclient10.util.XMLUtils;
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import org.opengis.cite.servlet.http.HttpServletResponse;
-import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -34,8 +34,7 @@ public class ServerWms13 extends EmulatedServer {
 	 * @param options ServerOptions object with emulated server configuration
 	 */
 	public ServerWms13(ServerOptions options) {
-		this.documentFactory.setNamespaceAware(true);
-		this.options = options;
+		super(options);
 	}
 	
 	/**
@@ -44,11 +43,9 @@ public class ServerWms13 extends EmulatedServer {
 	 * @param request Request from client
 	 * @param response Response to build to send back to client
 	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the response output stream could not be written
 	 */
-	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException {
-		System.out.println("Building WMS 1.3.0 Response");
-		System.out.println("Query Params: " + request.getQueryString());
-		
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException, IOException {
 		enableCors(response);
 		
 		// If mandatory query parameters are missing, return an exception
@@ -110,20 +107,37 @@ public class ServerWms13 extends EmulatedServer {
 	 * XML document. If `completeCapabilities` is true, then a complete capabilities document with a 
 	 * Content section (Layers) will be generated, and the embedded links will use the "/full" URL. If 
 	 * false, then a partial capabilities document will be generated without a Content section (Layers), 
-	 * and clients must use authentication to request the complete capabilities.
+	 * and clients must use authentication to request the complete capabilities. The serialized document
+	 * is cached for the server options and base URL, so repeated requests skip writing the document.
 	 * 
 	 * Source: Annex E.1, Annex H.1
 	 * @param request Source request from client, used to build absolute URLs for HREFs
 	 * @param response Response to build to send back to client
 	 * @param completeCapabilities If true, build a complete capabilities document
-	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the document or the response output stream could not be written
 	 */
-	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws TransformerException {
+	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws IOException {
 		response.setContentType("application/vnd.ogc.wms_xml");
 		response.setStatus(HttpServletResponse.SC_OK);
 		
 		// Extract scheme/host/port/path for HREFs
 		String baseHref = getUri(request, false);
+		
+		writeCapabilities(baseHref, completeCapabilities, response);
+	}
+	
+	/**
+	 * Write the Capabilities document for `baseHref`. See 
+	 * {@link #buildCapabilities(HttpServletRequest, HttpServletResponse, boolean)}.
+	 * 
+	 * @param baseHref The base URL of the request, used to build absolute URLs for HREFs
+	 * @param completeCapabilities If true, write a complete capabilities document
+	 * @param writer CapabilitiesWriter to write the document to
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	@Override
+	protected void writeCapabilitiesDocument(String baseHref, boolean completeCapabilities, 
+			CapabilitiesWriter writer) throws XMLStreamException {
 		String href;
 		
 		if (completeCapabilities) {
@@ -132,327 +146,170 @@ public class ServerWms13 extends EmulatedServer {
 			href = baseHref;
 		}
 		
-		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		Document doc = domImplementation.createDocument(Namespaces.WMS, "WMS_Capabilities", null);
+		writer.startDocument();
+		writer.startElement("", "WMS_Capabilities", Namespaces.WMS);
+		writer.namespace("", Namespaces.WMS);
+		writer.namespace("ows", Namespaces.OWS);
+		writer.namespace("xlink", Namespaces.XLINK);
+		writer.namespace("xsi", Namespaces.XSI);
+		writer.attribute("version", "1.3.0");
+		writer.attribute("xsi", "schemaLocation", Namespaces.XSI, Namespaces.WMS + " " + Schemas.WMS_13);
 		
-		Element rootElement = doc.getDocumentElement();
-		rootElement.setAttribute("version", "1.3.0");
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:xlink", Namespaces.XLINK);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:xsi", Namespaces.XSI);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:ows", Namespaces.OWS);
-		rootElement.setAttributeNS(Namespaces.XSI, "xsi:schemaLocation", Namespaces.WMS + " " + Schemas.WMS_13);
-
 		// Service Section
-		Element service = doc.createElementNS(Namespaces.WMS, "Service");
-		rootElement.appendChild(service);
-		
-		Element name = doc.createElementNS(Namespaces.WMS, "Name");
-		name.setTextContent("WMS");
-		service.appendChild(name);
-		
-		Element title = doc.createElementNS(Namespaces.WMS, "Title");
-		title.setTextContent("ETS Security Client 1.0 WMS 1.3.0");
-		service.appendChild(title);
-		
-		Element abstractElement = doc.createElementNS(Namespaces.WMS, "Abstract");
-		abstractElement.setTextContent("WMS 1.3.0 for validating secure client requests under ETS Security Client 1.0");
-		service.appendChild(abstractElement);
-		
-		Element onlineResource = doc.createElementNS(Namespaces.WMS, "OnlineResource");
-		onlineResource.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		onlineResource.setAttribute("xlink:type", "simple");
-		onlineResource.setAttribute("xlink:href", href);
-		service.appendChild(onlineResource);
+		writer.startElement("", "Service", Namespaces.WMS);
+		writer.textElement("", "Name", Namespaces.WMS, "WMS");
+		writer.textElement("", "Title", Namespaces.WMS, "ETS Security Client 1.0 WMS 1.3.0");
+		writer.textElement("", "Abstract", Namespaces.WMS, 
+				"WMS 1.3.0 for validating secure client requests under ETS Security Client 1.0");
+		writeOnlineResource(writer, href);
+		writer.endElement();
 		
 		// Capability Section
-		Element capability = doc.createElementNS(Namespaces.WMS, "Capability");
-		rootElement.appendChild(capability);
+		writer.startElement("", "Capability", Namespaces.WMS);
 		
 		// Capability > Request
-		Element requestElement = doc.createElementNS(Namespaces.WMS, "Request");
-		capability.appendChild(requestElement);
+		writer.startElement("", "Request", Namespaces.WMS);
 		
 		// Capability > Request > GetCapabilities
-		Element getCapabilities = doc.createElementNS(Namespaces.WMS, "GetCapabilities");
-		requestElement.appendChild(getCapabilities);
-		
-		Element getCapabilitiesFormat = doc.createElementNS(Namespaces.WMS, "Format");
-		getCapabilitiesFormat.setTextContent("application/vnd.ogc.wms_xml");
-		getCapabilities.appendChild(getCapabilitiesFormat);
-		
-		Element getCapabilitiesDCPType = doc.createElementNS(Namespaces.WMS, "DCPType");
-		getCapabilities.appendChild(getCapabilitiesDCPType);
-		
-		Element getCapabilitiesDCPTypeHTTP = doc.createElementNS(Namespaces.WMS, "HTTP");
-		getCapabilitiesDCPType.appendChild(getCapabilitiesDCPTypeHTTP);
-		
-		Element getCapabilitiesDCPTypeHTTPGet = doc.createElementNS(Namespaces.WMS, "Get");
-		getCapabilitiesDCPTypeHTTP.appendChild(getCapabilitiesDCPTypeHTTPGet);
-		
-		Element getCapabilitiesDCPTypeHTTPGetOR = doc.createElementNS(Namespaces.WMS, "OnlineResource");
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xlink:type", "simple");
-		getCapabilitiesDCPTypeHTTPGetOR.setAttribute("xlink:href", href);
-		getCapabilitiesDCPTypeHTTPGet.appendChild(getCapabilitiesDCPTypeHTTPGetOR);
-		
-		Element getCapabilitiesDCPTypeHTTPPost = doc.createElementNS(Namespaces.WMS, "Post");
-		getCapabilitiesDCPTypeHTTP.appendChild(getCapabilitiesDCPTypeHTTPPost);
-		
-		Element getCapabilitiesDCPTypeHTTPPostOR = doc.createElementNS(Namespaces.WMS, "OnlineResource");
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xlink:type", "simple");
-		getCapabilitiesDCPTypeHTTPPostOR.setAttribute("xlink:href", href);
-		getCapabilitiesDCPTypeHTTPPost.appendChild(getCapabilitiesDCPTypeHTTPPostOR);
+		writer.startElement("", "GetCapabilities", Namespaces.WMS);
+		writer.textElement("", "Format", Namespaces.WMS, "application/vnd.ogc.wms_xml");
+		writer.startElement("", "DCPType", Namespaces.WMS);
+		writer.startElement("", "HTTP", Namespaces.WMS);
+		writer.startElement("", "Get", Namespaces.WMS);
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.startElement("", "Post", Namespaces.WMS);
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 		
 		// Capability > Request > GetMap
-		Element getMap = doc.createElementNS(Namespaces.WMS, "GetMap");
-		requestElement.appendChild(getMap);
-		
-		Element getMapFormat = doc.createElementNS(Namespaces.WMS, "Format");
-		getMapFormat.setTextContent("image/png");
-		getMap.appendChild(getMapFormat);
-		
-		Element getMapDCPType = doc.createElementNS(Namespaces.WMS, "DCPType");
-		getMap.appendChild(getMapDCPType);
-		
-		Element getMapDCPTypeHTTP = doc.createElementNS(Namespaces.WMS, "HTTP");
-		getMapDCPType.appendChild(getMapDCPTypeHTTP);
-		
-		Element getMapDCPTypeHTTPGet = doc.createElementNS(Namespaces.WMS, "Get");
-		getMapDCPTypeHTTP.appendChild(getMapDCPTypeHTTPGet);
-		
-		Element getMapDCPTypeHTTPGetOR = doc.createElementNS(Namespaces.WMS, "OnlineResource");
-		getMapDCPTypeHTTPGetOR.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		getMapDCPTypeHTTPGetOR.setAttribute("xlink:type", "simple");
-		getMapDCPTypeHTTPGetOR.setAttribute("xlink:href", href);
-		getMapDCPTypeHTTPGet.appendChild(getMapDCPTypeHTTPGetOR);
+		writer.startElement("", "GetMap", Namespaces.WMS);
+		writer.textElement("", "Format", Namespaces.WMS, "image/png");
+		writer.startElement("", "DCPType", Namespaces.WMS);
+		writer.startElement("", "HTTP", Namespaces.WMS);
+		writer.startElement("", "Get", Namespaces.WMS);
+		writeOnlineResource(writer, href);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
+		
+		// End Capability > Request
+		writer.endElement();
 		
 		// Capability > Exception
-		Element exception = doc.createElementNS(Namespaces.WMS, "Exception");
-		capability.appendChild(exception);
-		
-		Element exceptionFormat = doc.createElementNS(Namespaces.WMS, "Format");
-		exceptionFormat.setTextContent("application/vnd.ogc.se_xml");
-		exception.appendChild(exceptionFormat);
+		writer.startElement("", "Exception", Namespaces.WMS);
+		writer.textElement("", "Format", Namespaces.WMS, "application/vnd.ogc.se_xml");
+		writer.endElement();
 		
 		if (completeCapabilities) {
 			// Capability > Layer
-			Element layer = doc.createElementNS(Namespaces.WMS, "Layer");
-			capability.appendChild(layer);
-			
-			Element layerTitle = doc.createElementNS(Namespaces.WMS, "Title");
-			layerTitle.setTextContent("False Layer Data");
-			layer.appendChild(layerTitle);
-			
-			Element layerSrs = doc.createElementNS(Namespaces.WMS, "CRS");
-			layerSrs.setTextContent("EPSG:4326");
-			layer.appendChild(layerSrs);
+			writer.startElement("", "Layer", Namespaces.WMS);
+			writer.textElement("", "Title", Namespaces.WMS, "False Layer Data");
+			writer.textElement("", "CRS", Namespaces.WMS, "EPSG:4326");
+			writer.endElement();
 		}
 		
 		// Capability > ExtendedSecurityCapabilities
-		Element vendorSpecificCapabilities = buildExtendedSecurityCapabilities(doc, baseHref);
-		capability.appendChild(vendorSpecificCapabilities);
+		writeExtendedSecurityCapabilities(writer, baseHref);
 		
-		printWriter.print(XMLUtils.writeDocumentToString(doc, true));
+		writer.endElement();
+		writer.endElement();
+	}
+	
+	/**
+	 * Write a WMS OnlineResource element linking to `href`.
+	 * 
+	 * @param writer CapabilitiesWriter to write the element to
+	 * @param href String with URL to embed
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	private void writeOnlineResource(CapabilitiesWriter writer, String href) throws XMLStreamException {
+		writer.emptyElement("", "OnlineResource", Namespaces.WMS);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
 	}
 	
 	/**
-	 * Build an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
 	 * @param methods Methods to support in HTTP Methods constraint
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildGetElement(Document doc, String href, String[] methods) {
-		Element get = doc.createElementNS(Namespaces.OWS, "Get");
-		get.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		get.setAttribute("xlink:type", "simple");
-		get.setAttribute("xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			get.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElementNS(Namespaces.OWS, "ValuesReference");
-			constraintValuesReference.setAttributeNS(Namespaces.OWS, "ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			get.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			for (int i = 0; i < methods.length; i++) {
-				String method = methods[i];
-				
-				Element value = doc.createElementNS(Namespaces.OWS, "Value");
-				value.setTextContent(method);
-				constraintAllowedValues.appendChild(value);
-			}
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		return get;
+	private void writeGetElement(CapabilitiesWriter writer, String href, String[] methods) throws XMLStreamException {
+		writer.startElement("", "Get", Namespaces.OWS);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "", Namespaces.OWS, methods, false);
+		writer.endElement();
 	}
 	
 	/**
-	 * Build an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
 	 * @param methods Methods to support in HTTP Methods constraint
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildPostElement(Document doc, String href, String[] methods) {
-		Element post = doc.createElementNS(Namespaces.OWS, "Post");
-		post.setAttribute("xmlns:xlink", Namespaces.XLINK);
-		post.setAttribute("xlink:type", "simple");
-		post.setAttribute("xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			post.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElementNS(Namespaces.OWS, "ValuesReference");
-			constraintValuesReference.setAttributeNS(Namespaces.OWS, "ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			for (int i = 0; i < methods.length; i++) {
-				String method = methods[i];
-				
-				Element value = doc.createElementNS(Namespaces.OWS, "Value");
-				value.setTextContent(method);
-				constraintAllowedValues.appendChild(value);
-			}
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP POST Content-Type Constraint
-		if (this.options.getHttpPostContentType()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS, "Constraint");
-			constraint.setAttribute("name", Identifiers.CONTENT_TYPE);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			Element value = doc.createElementNS(Namespaces.OWS, "Value");
-			value.setTextContent("application/x-www-form-urlencoded");
-			constraintAllowedValues.appendChild(value);
-		}
-		
-		return post;
+	private void writePostElement(CapabilitiesWriter writer, String href, String[] methods) throws XMLStreamException {
+		writer.startElement("", "Post", Namespaces.OWS);
+		writer.attribute("xlink", "type", Namespaces.XLINK, "simple");
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "", Namespaces.OWS, methods, true);
+		writer.endElement();
 	}
 	
 	/**
-	 * Create the ExtendedSecurityCapabilities element and populate it with security annotations based on
+	 * Write the ExtendedSecurityCapabilities element and populate it with security annotations based on
 	 * the test run properties for the ETS.
 	 */
-	private Element buildExtendedSecurityCapabilities(Document doc, String href) {
-		Element extendedSecurityCapabilities = doc.createElementNS(Namespaces.OWS_SECURITY, "ExtendedSecurityCapabilities");
+	private void writeExtendedSecurityCapabilities(CapabilitiesWriter writer, String href) throws XMLStreamException {
 		String completeCapabilitiesUrl = href + "/full";
 		
-		Element operationsMetadata = doc.createElementNS(Namespaces.OWS, "OperationsMetadata");
-		extendedSecurityCapabilities.appendChild(operationsMetadata);
+		writer.startElement("", "ExtendedSecurityCapabilities", Namespaces.OWS_SECURITY);
+		writer.namespace("", Namespaces.OWS_SECURITY);
+		writer.startElement("", "OperationsMetadata", Namespaces.OWS);
+		writer.namespace("", Namespaces.OWS);
 		
 		// GetCapabilities
-		Element getCapabilities = doc.createElementNS(Namespaces.OWS, "Operation");
-		getCapabilities.setAttribute("name", "GetCapabilities");
-		operationsMetadata.appendChild(getCapabilities);
-		
-		Element getCapabilitiesDcp = doc.createElementNS(Namespaces.OWS, "DCP");
-		getCapabilities.appendChild(getCapabilitiesDcp);
+		writer.startElement("", "Operation", Namespaces.OWS);
+		writer.attribute("name", "GetCapabilities");
+		writer.startElement("", "DCP", Namespaces.OWS);
+		writer.startElement("", "HTTP", Namespaces.OWS);
 		
-		Element getCapabilitiesDcpHttp = doc.createElementNS(Namespaces.OWS, "HTTP");
-		getCapabilitiesDcp.appendChild(getCapabilitiesDcpHttp);
-		
-		// GetCapabilities GET
+		// GetCapabilities GET and POST
 		String[] getCapabilitiesMethods = {"GET", "POST"};
-		Element getCapabilitiesDcpHttpGet = this.buildGetElement(doc, completeCapabilitiesUrl, getCapabilitiesMethods);
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpGet);
+		this.writeGetElement(writer, completeCapabilitiesUrl, getCapabilitiesMethods);
+		this.writePostElement(writer, completeCapabilitiesUrl, getCapabilitiesMethods);
 		
-		// GetCapabilities POST
-		Element getCapabilitiesDcpHttpPost = this.buildPostElement(doc, completeCapabilitiesUrl, getCapabilitiesMethods);
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpPost);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 		
 		// GetMap
-		Element getMap = doc.createElementNS(Namespaces.OWS, "Operation");
-		getMap.setAttribute("name", "GetMap");
-		operationsMetadata.appendChild(getMap);
-		
-		Element getMapDcp = doc.createElementNS(Namespaces.OWS, "DCP");
-		getMap.appendChild(getMapDcp);
-		
-		Element getMapDcpHttp = doc.createElementNS(Namespaces.OWS, "HTTP");
-		getMapDcp.appendChild(getMapDcpHttp);
+		writer.startElement("", "Operation", Namespaces.OWS);
+		writer.attribute("name", "GetMap");
+		writer.startElement("", "DCP", Namespaces.OWS);
+		writer.startElement("", "HTTP", Namespaces.OWS);
 		
 		// GetMap GET
 		String[] getMapMethods = {"GET"};
-		Element getMapDcpHttpGet = this.buildGetElement(doc, completeCapabilitiesUrl, getMapMethods);
-		getMapDcpHttp.appendChild(getMapDcpHttpGet);
+		this.writeGetElement(writer, completeCapabilitiesUrl, getMapMethods);
+		
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 		
-		return extendedSecurityCapabilities;
+		writer.endElement();
+		writer.endElement();
 	}
 	
 	/**
@@ -470,8 +327,7 @@ public class ServerWms13 extends EmulatedServer {
 		response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 		
 		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		Document doc = domImplementation.createDocument(Namespaces.OGC, "ServiceExceptionReport", null);
+		Document doc = this.domImplementation.createDocument(Namespaces.OGC, "ServiceExceptionReport", null);
 		
 		Element rootElement = doc.getDocumentElement();
 		rootElement.setAttribute("version", "1.3.0");
@@ -0,0 +1,18 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+/**
+ * Factory for emulated WMS 1.3.0 servers, registered for the "wms13" service type.
+ *
+ */
+public class ServerWms13Factory implements EmulatedServerFactory {
+
+	@Override
+	public String getServiceType() {
+		return "wms13";
+	}
+
+	@Override
+	public EmulatedServer createServer(ServerOptions options) {
+		return new ServerWms13(options);
+	}
+}
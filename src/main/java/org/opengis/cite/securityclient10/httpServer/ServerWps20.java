@@ -1,17 +1,17 @@
 package org.opengis.cite.securityclient10.httpServer;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Enumeration;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
-import org.opengis.cite.securityclient10.Identifiers;
 import org.opengis.cite.securityclient10.Namespaces;
 import org.opengis.cite.securityclient10.Schemas;
 import org.opengis.cite.securityclient10.util.XMLUtils;
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import org.opengis.cite.servlet.http.HttpServletResponse;
-import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -34,8 +34,7 @@ public class ServerWps20 extends EmulatedServer {
 	 * @param options ServerOptions object with emulated server configuration
 	 */
 	public ServerWps20(ServerOptions options) {
-		this.documentFactory.setNamespaceAware(true);
-		this.options = options;
+		super(options);
 	}
 	
 	/**
@@ -44,11 +43,9 @@ public class ServerWps20 extends EmulatedServer {
 	 * @param request Request from client
 	 * @param response Response to build to send back to client
 	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the response output stream could not be written
 	 */
-	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException {
-		System.out.println("Building WPS 2.0 Response");
-		System.out.println("Query Params: " + request.getQueryString());
-		
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws TransformerException, IOException {
 		enableCors(response);
 		
 		// If mandatory query parameters are missing, return an exception
@@ -102,147 +99,37 @@ public class ServerWps20 extends EmulatedServer {
 	}
 	
 	/**
-	 * Build an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Get element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
 	 * @param methods Methods to support in HTTP Methods constraint
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildGetElement(Document doc, String href, String[] methods) {
-		Element get = doc.createElementNS(Namespaces.OWS_2, "Get");
-		get.setAttributeNS(Namespaces.XLINK, "xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			get.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElementNS(Namespaces.OWS_2, "ValuesReference");
-			constraintValuesReference.setAttributeNS(Namespaces.OWS_2, "ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			get.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS_2, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			for (int i = 0; i < methods.length; i++) {
-				String method = methods[i];
-				
-				Element value = doc.createElementNS(Namespaces.OWS_2, "Value");
-				value.setTextContent(method);
-				constraintAllowedValues.appendChild(value);
-			}
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS_2, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			get.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS_2, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		return get;
+	private void writeGetElement(CapabilitiesWriter writer, String href, String[] methods) throws XMLStreamException {
+		writer.startElement("", "Get", Namespaces.OWS_2);
+		writer.namespace("", Namespaces.OWS_2);
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "", Namespaces.OWS_2, methods, false);
+		writer.endElement();
 	}
 	
 	/**
-	 * Build an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
+	 * Write an ows:Post element for an ows:Operation endpoint, using `href` as the embedded URL.
 	 * Will add annotations as necessary from the ServerOptions.
 	 * 
-	 * @param doc Document for creating elements
+	 * @param writer CapabilitiesWriter to write the element to
 	 * @param href String with URL to embed
 	 * @param methods Methods to support in HTTP Methods constraint
-	 * @return Element tree
+	 * @throws XMLStreamException Exception if the document could not be written
 	 */
-	private Element buildPostElement(Document doc, String href, String[] methods) {
-		Element post = doc.createElementNS(Namespaces.OWS_2, "Post");
-		post.setAttributeNS(Namespaces.XLINK, "xlink:href", href);
-		
-		// Add SAML2 constraint
-		if (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.SAML2);
-			post.appendChild(constraint);
-			
-			Element constraintValuesReference = doc.createElementNS(Namespaces.OWS_2, "ValuesReference");
-			constraintValuesReference.setAttributeNS(Namespaces.OWS_2, "ows:reference", this.options.getIdpUrl());
-			constraint.appendChild(constraintValuesReference);
-		}
-		
-		// Add HTTP Methods Constraint
-		if (this.options.getHttpMethods()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.HTTP_METHODS);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS_2, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			for (int i = 0; i < methods.length; i++) {
-				String method = methods[i];
-				
-				Element value = doc.createElementNS(Namespaces.OWS_2, "Value");
-				value.setTextContent(method);
-				constraintAllowedValues.appendChild(value);
-			}
-		}
-		
-		// Add W3C CORS Constraint
-		if (this.options.getCors()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.W3C_CORS);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS_2, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP Exception Handling Constraint
-		if (this.options.getHttpExceptionHandling()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.EXCEPTION_HANDLING);
-			post.appendChild(constraint);
-			
-			Element constraintNoValues = doc.createElementNS(Namespaces.OWS_2, "NoValues");
-			constraint.appendChild(constraintNoValues);
-		}
-		
-		// Add HTTP POST Content-Type Constraint
-		if (this.options.getHttpPostContentType()) {
-			Element constraint = doc.createElementNS(Namespaces.OWS_2, "Constraint");
-			constraint.setAttribute("name", Identifiers.CONTENT_TYPE);
-			post.appendChild(constraint);
-			
-			Element constraintAllowedValues = doc.createElementNS(Namespaces.OWS_2, "AllowedValues");
-			constraint.appendChild(constraintAllowedValues);
-			
-			Element value = doc.createElementNS(Namespaces.OWS_2, "Value");
-			value.setTextContent("application/x-www-form-urlencoded");
-			constraintAllowedValues.appendChild(value);
-		}
-		
-		return post;
+	private void writePostElement(CapabilitiesWriter writer, String href, String[] methods) throws XMLStreamException {
+		writer.startElement("", "Post", Namespaces.OWS_2);
+		writer.namespace("", Namespaces.OWS_2);
+		writer.attribute("xlink", "href", Namespaces.XLINK, href);
+		writeConstraints(writer, "", Namespaces.OWS_2, methods, true);
+		writer.endElement();
 	}
 	
 	/**
@@ -250,22 +137,39 @@ public class ServerWps20 extends EmulatedServer {
 	 * XML document. If `completeCapabilities` is true, then a complete capabilities document with a 
 	 * Content section (Layers) will be generated, and the embedded links will use the "/full" URL. If 
 	 * false, then a partial capabilities document will be generated without a Content section (Contents), 
-	 * and clients must use authentication to request the complete capabilities.
+	 * and clients must use authentication to request the complete capabilities. The serialized document
+	 * is cached for the server options and base URL, so repeated requests skip writing the document.
 	 * 
 	 * Source: OGC 14-065r2, Annex B.4.2; OGC 06-121r9 Section 7
 	 * @param request Source request from client, used to build absolute URLs for HREFs
 	 * @param response Response to build to send back to client
 	 * @param completeCapabilities If true, build a complete capabilities document
-	 * @throws TransformerException Exception if transformer could not convert document to stream
+	 * @throws IOException Exception if the document or the response output stream could not be written
 	 */
-	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws TransformerException {
+	public void buildCapabilities(HttpServletRequest request, HttpServletResponse response, boolean completeCapabilities) throws IOException {
 		response.setContentType("text/xml");
 		response.setStatus(HttpServletResponse.SC_OK);
 		
-		boolean samlAuth = (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null);
-		
 		// Extract scheme/host/port/path for HREFs
 		String baseHref = getUri(request, false);
+		
+		writeCapabilities(baseHref, completeCapabilities, response);
+	}
+	
+	/**
+	 * Write the Capabilities document for `baseHref`. See 
+	 * {@link #buildCapabilities(HttpServletRequest, HttpServletResponse, boolean)}.
+	 * 
+	 * @param baseHref The base URL of the request, used to build absolute URLs for HREFs
+	 * @param completeCapabilities If true, write a complete capabilities document
+	 * @param writer CapabilitiesWriter to write the document to
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	@Override
+	protected void writeCapabilitiesDocument(String baseHref, boolean completeCapabilities, 
+			CapabilitiesWriter writer) throws XMLStreamException {
+		boolean samlAuth = (this.options.getAuthentication().equals("saml2") && this.options.getIdpUrl() != null);
+		
 		String href;
 		
 		if (samlAuth) {
@@ -274,108 +178,77 @@ public class ServerWps20 extends EmulatedServer {
 			href = baseHref;
 		}
 		
-		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		Document doc = domImplementation.createDocument(Namespaces.WPS_20, "wps:Capabilities", null);
+		writer.startDocument();
+		writer.startElement("wps", "Capabilities", Namespaces.WPS_20);
+		writer.namespace("ows", Namespaces.OWS_2);
+		writer.namespace("wps", Namespaces.WPS_20);
+		writer.namespace("xlink", Namespaces.XLINK);
+		writer.namespace("xsi", Namespaces.XSI);
+		writer.attribute("service", "WPS");
+		writer.attribute("version", "2.0.0");
+		writer.attribute("xsi", "schemaLocation", Namespaces.XSI, Namespaces.WPS_20 + " " + Schemas.WPS_20);
 		
-		Element rootElement = doc.getDocumentElement();
-		rootElement.setAttribute("service", "WPS");
-		rootElement.setAttribute("version", "2.0.0");
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:ows", Namespaces.OWS_2);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:wps", Namespaces.WPS_20);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:xlink", Namespaces.XLINK);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:xml", Namespaces.XML);
-		rootElement.setAttributeNS(Namespaces.XMLNS, "xmlns:xsi", Namespaces.XSI);
-		rootElement.setAttributeNS(Namespaces.XSI, "xsi:schemaLocation", Namespaces.WPS_20 + " " + Schemas.WPS_20);
-
 		// Service Identification Section
-		Element serviceIdentification = doc.createElementNS(Namespaces.OWS_2, "ows:ServiceIdentification");
-		rootElement.appendChild(serviceIdentification);
-		
-		Element title = doc.createElementNS(Namespaces.OWS_2, "ows:Title");
-		title.setTextContent("ETS Security Client 1.0 WPS 2.0");
-		serviceIdentification.appendChild(title);
-		
-		Element abstractElement = doc.createElementNS(Namespaces.OWS_2, "ows:Abstract");
-		abstractElement.setTextContent("WPS 2.0 for validating secure client requests under ETS Security Client 1.0");
-		serviceIdentification.appendChild(abstractElement);
-		
-		Element serviceType = doc.createElementNS(Namespaces.OWS_2, "ows:ServiceType");
-		serviceType.setTextContent("WPS");
-		serviceIdentification.appendChild(serviceType);
-		
-		Element serviceTypeVersion = doc.createElementNS(Namespaces.OWS_2, "ows:ServiceTypeVersion");
-		serviceTypeVersion.setTextContent("2.0.0");
-		serviceIdentification.appendChild(serviceTypeVersion);
-		
-		Element fees = doc.createElementNS(Namespaces.OWS_2, "ows:Fees");
-		fees.setTextContent("NONE");
-		serviceIdentification.appendChild(fees);
-		
-		Element accessConstraints = doc.createElementNS(Namespaces.OWS_2, "ows:AccessConstraints");
-		accessConstraints.setTextContent("NONE");
-		serviceIdentification.appendChild(accessConstraints);
+		writer.startElement("ows", "ServiceIdentification", Namespaces.OWS_2);
+		writer.textElement("ows", "Title", Namespaces.OWS_2, "ETS Security Client 1.0 WPS 2.0");
+		writer.textElement("ows", "Abstract", Namespaces.OWS_2, 
+				"WPS 2.0 for validating secure client requests under ETS Security Client 1.0");
+		writer.textElement("ows", "ServiceType", Namespaces.OWS_2, "WPS");
+		writer.textElement("ows", "ServiceTypeVersion", Namespaces.OWS_2, "2.0.0");
+		writer.textElement("ows", "Fees", Namespaces.OWS_2, "NONE");
+		writer.textElement("ows", "AccessConstraints", Namespaces.OWS_2, "NONE");
+		writer.endElement();
 		
 		// Operations Metadata Section
-		Element operationsMetadata = doc.createElementNS(Namespaces.OWS_2, "ows:OperationsMetadata");
-		rootElement.appendChild(operationsMetadata);
+		writer.startElement("ows", "OperationsMetadata", Namespaces.OWS_2);
 		
 		// GetCapabilities Operation Section
-		Element getCapabilities = doc.createElementNS(Namespaces.OWS_2, "ows:Operation");
-		getCapabilities.setAttribute("name", "GetCapabilities");
-		operationsMetadata.appendChild(getCapabilities);
-		
-		Element getCapabilitiesDcp = doc.createElementNS(Namespaces.OWS_2, "ows:DCP");
-		getCapabilities.appendChild(getCapabilitiesDcp);
-		
-		Element getCapabilitiesDcpHttp = doc.createElementNS(Namespaces.OWS_2, "ows:HTTP");
-		getCapabilitiesDcp.appendChild(getCapabilitiesDcpHttp);
-		
 		String[] getCapabilitiesMethods = {"GET", "POST"};
-		Element getCapabilitiesDcpHttpGet = this.buildGetElement(doc, href, getCapabilitiesMethods);		
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpGet);
-		
-		Element getCapabilitiesDcpHttpPost = this.buildPostElement(doc, href, getCapabilitiesMethods);
-		getCapabilitiesDcpHttp.appendChild(getCapabilitiesDcpHttpPost);
+		writeOperation(writer, "GetCapabilities", href, getCapabilitiesMethods);
 		
 		// DescribeProcess Operation Section
-		Element describeProcess = doc.createElementNS(Namespaces.OWS_2, "ows:Operation");
-		describeProcess.setAttribute("name", "DescribeProcess");
-		operationsMetadata.appendChild(describeProcess);
-		
-		Element describeProcessDcp = doc.createElementNS(Namespaces.OWS_2, "ows:DCP");
-		describeProcess.appendChild(describeProcessDcp);
-		
-		Element describeProcessDcpHttp = doc.createElementNS(Namespaces.OWS_2, "ows:HTTP");
-		describeProcessDcp.appendChild(describeProcessDcpHttp);
-		
 		String[] describeProcessMethods = {"GET", "POST"};
-		Element describeProcessDcpHttpGet = this.buildGetElement(doc, href, describeProcessMethods);
-		describeProcessDcpHttp.appendChild(describeProcessDcpHttpGet);
+		writeOperation(writer, "DescribeProcess", href, describeProcessMethods);
 		
-		Element describeProcessDcpHttpPost = this.buildPostElement(doc, href, describeProcessMethods);
-		describeProcessDcpHttp.appendChild(describeProcessDcpHttpPost);
+		writer.endElement();
 		
 		if (completeCapabilities) {
 			// Contents Section
-			Element contents = doc.createElementNS(Namespaces.WPS_20, "wps:Contents");
-			rootElement.appendChild(contents);
+			writer.startElement("wps", "Contents", Namespaces.WPS_20);
 			
 			// Sample ProcessSummary, needed to validate Contents element
-			Element processSummary = doc.createElementNS(Namespaces.WPS_20, "wps:ProcessSummary");
-			processSummary.setAttribute("jobControlOptions", "sync-execute dismiss");
-			contents.appendChild(processSummary);
+			writer.startElement("wps", "ProcessSummary", Namespaces.WPS_20);
+			writer.attribute("jobControlOptions", "sync-execute dismiss");
+			writer.textElement("ows", "Title", Namespaces.OWS_2, "False Process");
+			writer.textElement("ows", "Identifier", Namespaces.OWS_2, href + "/false-process");
+			writer.endElement();
 			
-			Element processTitle = doc.createElementNS(Namespaces.OWS_2, "ows:Title");
-			processTitle.setTextContent("False Process");
-			processSummary.appendChild(processTitle);
-			
-			Element processIdentifier = doc.createElementNS(Namespaces.OWS_2, "ows:Identifier");
-			processIdentifier.setTextContent(href + "/false-process");
-			processSummary.appendChild(processIdentifier);
+			writer.endElement();
 		}
 		
-		printWriter.print(XMLUtils.writeDocumentToString(doc, true));
+		writer.endElement();
+	}
+	
+	/**
+	 * Write an ows:Operation element with GET and POST endpoints at `href`.
+	 * 
+	 * @param writer CapabilitiesWriter to write the element to
+	 * @param name Name of the operation
+	 * @param href String with URL to embed
+	 * @param methods Methods to support in HTTP Methods constraint
+	 * @throws XMLStreamException Exception if the document could not be written
+	 */
+	private void writeOperation(CapabilitiesWriter writer, String name, String href, String[] methods) 
+			throws XMLStreamException {
+		writer.startElement("ows", "Operation", Namespaces.OWS_2);
+		writer.attribute("name", name);
+		writer.startElement("ows", "DCP", Namespaces.OWS_2);
+		writer.startElement("ows", "HTTP", Namespaces.OWS_2);
+		this.writeGetElement(writer, href, methods);
+		this.writePostElement(writer, href, methods);
+		writer.endElement();
+		writer.endElement();
+		writer.endElement();
 	}
 	
 	/**
@@ -394,8 +267,7 @@ public class ServerWps20 extends EmulatedServer {
 		response.setStatus(code);
 		
 		PrintWriter printWriter = getWriterForResponse(response);
-		DOMImplementation domImplementation = this.documentBuilder.getDOMImplementation();
-		Document doc = domImplementation.createDocument(Namespaces.OWS_2, "ExceptionReport", null);
+		Document doc = this.domImplementation.createDocument(Namespaces.OWS_2, "ExceptionReport", null);
 		
 		Element rootElement = doc.getDocumentElement();
 		rootElement.setAttribute("version", "1.0.0");
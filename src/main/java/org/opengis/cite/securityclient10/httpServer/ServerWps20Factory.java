@@ -0,0 +1,18 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+/**
+ * Factory for emulated WPS 2.0 servers, registered for the "wps20" service type.
+ *
+ */
+public class ServerWps20Factory implements EmulatedServerFactory {
+
+	@Override
+	public String getServiceType() {
+		return "wps20";
+	}
+
+	@Override
+	public EmulatedServer createServer(ServerOptions options) {
+		return new ServerWps20(options);
+	}
+}
@@ -0,0 +1,95 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe registry of the test sessions that are waiting for secure client requests, keyed by the
+ * session path (nonce). Each session has its own HandlerOptions object holding its state.
+ *
+ * The registry is backed by a ConcurrentHashMap, which locks individual hash bins on update and never
+ * locks on lookup. Request threads in the servlet can therefore find their session without contending
+ * with test runner threads that are registering or removing other sessions.
+ *
+ */
+public class SessionRegistry {
+
+	/**
+	 * Session state objects, keyed by session path
+	 */
+	private final ConcurrentMap<String, HandlerOptions> sessions;
+
+	public SessionRegistry() {
+		this.sessions = new ConcurrentHashMap<String, HandlerOptions>();
+	}
+
+	/**
+	 * Retrieve the state for a registered session. This does not block.
+	 *
+	 * @param path Session path to look up
+	 * @return HandlerOptions for the session, or null if the path is not registered
+	 */
+	public HandlerOptions get(String path) {
+		return this.sessions.get(path);
+	}
+
+	/**
+	 * Register a new session. A path may only be registered once until it is removed, so concurrent
+	 * registrations of the same path cannot overwrite each other.
+	 *
+	 * @param path Session path to register
+	 * @param options HandlerOptions with the state for the session
+	 * @throws IllegalStateException If the path is already registered
+	 */
+	public void register(String path, HandlerOptions options) {
+		if (this.sessions.putIfAbsent(path, options) != null) {
+			throw new IllegalStateException("Test session path is already registered: " + path);
+		}
+	}
+
+	/**
+	 * Remove a session from the registry. If the path is not registered then nothing is done.
+	 *
+	 * @param path Session path to remove
+	 * @return HandlerOptions for the removed session, or null if the path was not registered
+	 */
+	public HandlerOptions remove(String path) {
+		return this.sessions.remove(path);
+	}
+
+	/**
+	 * Choose the port for a new session from a pool of server ports: the port with the fewest
+	 * registered sessions, or the first such port if several are tied. The sessions are counted without
+	 * locking, so sessions that are assigned at the same time may share a port; the pool is balanced
+	 * again as sessions are registered and removed.
+	 *
+	 * @param ports Server ports to choose from, at least one
+	 * @return Port with the fewest sessions
+	 */
+	public int assignPort(int[] ports) {
+		int[] counts = new int[ports.length];
+		for (HandlerOptions options : this.sessions.values()) {
+			for (int i = 0; i < ports.length; i++) {
+				if (ports[i] == options.getPort()) {
+					counts[i]++;
+					break;
+				}
+			}
+		}
+		int assigned = 0;
+		for (int i = 1; i < ports.length; i++) {
+			if (counts[i] < counts[assigned]) {
+				assigned = i;
+			}
+		}
+		return ports[assigned];
+	}
+
+	/**
+	 * The number of sessions currently registered.
+	 * @return int
+	 */
+	public int size() {
+		return this.sessions.size();
+	}
+}
@@ -0,0 +1,192 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.opengis.cite.jetty.util.ssl.SslContextFactory;
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+
+/**
+ * Cache of the SSL contexts of the embedded test servers, keyed by the path of the Java KeyStore.
+ *
+ * The KeyStore is loaded and the SSLContext created once, and reused by every server started
+ * afterwards until the content of the KeyStore file changes. The modification time and size of the
+ * file are checked first; as a KeyStore can be replaced by one of the same size within the
+ * granularity of the file modification time, {@link #reloadSslContext(File, String)} compares the
+ * SHA-256 digest of the content instead. As the TLS session cache belongs to the SSLContext,
+ * secure clients can also resume their TLS sessions with a server that was restarted, instead of
+ * making a full handshake.
+ *
+ */
+public final class SslContextCache {
+
+	/**
+	 * Maximum number of TLS sessions kept for resumption
+	 */
+	public static final int SESSION_CACHE_SIZE = 1024;
+
+	/**
+	 * Number of seconds a TLS session can be resumed, long enough for every request of a test run
+	 */
+	public static final int SESSION_TIMEOUT_SECONDS = 3600;
+
+	private static final Map<String, CachedContext> contexts = new HashMap<String, CachedContext>();
+
+	/**
+	 * SSLContext loaded from a KeyStore file, with the file state and content digest it was loaded from
+	 */
+	private static class CachedContext {
+		long lastModified;
+		long length;
+		final byte[] digest;
+		final String password;
+		final SSLContext sslContext;
+
+		CachedContext(long lastModified, long length, byte[] digest, String password, SSLContext sslContext) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.digest = digest;
+			this.password = password;
+			this.sslContext = sslContext;
+		}
+
+		boolean isCurrent(File keystore, String password) {
+			return this.lastModified == keystore.lastModified() && this.length == keystore.length()
+					&& this.password.equals(password);
+		}
+
+		boolean hasContent(byte[] digest, String password) {
+			return Arrays.equals(this.digest, digest) && this.password.equals(password);
+		}
+	}
+
+	private SslContextCache() {
+	}
+
+	/**
+	 * Create an SslContextFactory for an embedded server, using the cached SSLContext for the KeyStore
+	 * and the session cache settings of this class.
+	 *
+	 * @param jks_path Path to the Java KeyStore, which is also used as the trust store
+	 * @param jks_password Password to unlock the KeyStore
+	 * @return SslContextFactory that does not load the KeyStore when it is started
+	 * @throws FileNotFoundException If the KeyStore does not exist
+	 * @throws GeneralSecurityException If the KeyStore could not be unlocked or the SSLContext created
+	 * @throws IOException If the KeyStore could not be read
+	 */
+	public static SslContextFactory newSslContextFactory(String jks_path, String jks_password)
+			throws GeneralSecurityException, IOException {
+		SslContextFactory sslContextFactory = new SslContextFactory();
+		sslContextFactory.setSslContext(getSslContext(new File(jks_path), jks_password));
+		sslContextFactory.setSessionCachingEnabled(true);
+		sslContextFactory.setSslSessionCacheSize(SESSION_CACHE_SIZE);
+		sslContextFactory.setSslSessionTimeout(SESSION_TIMEOUT_SECONDS);
+		return sslContextFactory;
+	}
+
+	/**
+	 * Get the SSLContext for a KeyStore, loading it if it is not cached or the file was modified since
+	 * it was cached. A file with a new modification time or size but the same content keeps its
+	 * SSLContext.
+	 *
+	 * @param keystore Java KeyStore file, which is also used as the trust store
+	 * @param password Password to unlock the KeyStore
+	 * @return Initialized SSLContext, shared by every caller with the same KeyStore
+	 * @throws FileNotFoundException If the KeyStore does not exist
+	 * @throws GeneralSecurityException If the KeyStore could not be unlocked or the SSLContext created
+	 * @throws IOException If the KeyStore could not be read
+	 */
+	public static synchronized SSLContext getSslContext(File keystore, String password)
+			throws GeneralSecurityException, IOException {
+		if (!keystore.exists()) {
+			throw new FileNotFoundException("Missing keystore: " + keystore.getAbsolutePath());
+		}
+		CachedContext cached = contexts.get(keystore.getAbsolutePath());
+		if (cached != null && cached.isCurrent(keystore, password)) {
+			return cached.sslContext;
+		}
+		return loadIfChanged(keystore, password);
+	}
+
+	/**
+	 * Get the SSLContext for a KeyStore after the file was changed, for example by
+	 * {@link KeyStoreWatcher}. The file is read and its content compared with the cached KeyStore,
+	 * whatever its modification time and size, so a KeyStore replaced within the granularity of the
+	 * modification time is still loaded.
+	 *
+	 * @param keystore Java KeyStore file, which is also used as the trust store
+	 * @param password Password to unlock the KeyStore
+	 * @return Initialized SSLContext, the cached one if the content and password are unchanged
+	 * @throws FileNotFoundException If the KeyStore does not exist
+	 * @throws GeneralSecurityException If the KeyStore could not be unlocked or the SSLContext created
+	 * @throws IOException If the KeyStore could not be read
+	 */
+	public static synchronized SSLContext reloadSslContext(File keystore, String password)
+			throws GeneralSecurityException, IOException {
+		if (!keystore.exists()) {
+			throw new FileNotFoundException("Missing keystore: " + keystore.getAbsolutePath());
+		}
+		return loadIfChanged(keystore, password);
+	}
+
+	/**
+	 * Read the KeyStore, and load it unless the cached SSLContext has the same content. Called while
+	 * holding the class lock.
+	 */
+	private static SSLContext loadIfChanged(File keystore, String password)
+			throws GeneralSecurityException, IOException {
+		String key = keystore.getAbsolutePath();
+		// Take the file state before reading, so a change while reading is seen by the next check
+		long lastModified = keystore.lastModified();
+		long length = keystore.length();
+		byte[] content = Files.readAllBytes(keystore.toPath());
+		byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+
+		CachedContext cached = contexts.get(key);
+		if (cached != null && cached.hasContent(digest, password)) {
+			cached.lastModified = lastModified;
+			cached.length = length;
+			return cached.sslContext;
+		}
+
+		cached = new CachedContext(lastModified, length, digest, password, loadSslContext(content, password));
+		contexts.put(key, cached);
+		TestSuiteLogger.log(Level.FINE, "Loaded keystore " + key);
+		return cached.sslContext;
+	}
+
+	private static SSLContext loadSslContext(byte[] content, String password)
+			throws GeneralSecurityException, IOException {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+		try (InputStream input = new ByteArrayInputStream(content)) {
+			keyStore.load(input, password.toCharArray());
+		}
+
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, password.toCharArray());
+		TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(
+				TrustManagerFactory.getDefaultAlgorithm());
+		trustManagers.init(keyStore);
+
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+		sslContext.getServerSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+		sslContext.getServerSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+		return sslContext;
+	}
+}
@@ -1,17 +1,13 @@
 package org.opengis.cite.securityclient10.httpServer;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.concurrent.Callable;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 
 import javax.xml.transform.TransformerException;
 
@@ -21,52 +17,69 @@ import org.opengis.cite.servlet.http.HttpServlet;
 import org.opengis.cite.servlet.http.HttpServletRequest;
 import org.opengis.cite.servlet.http.HttpServletResponse;
 
-import org.opengis.cite.jetty.http.HttpVersion;
-import org.opengis.cite.jetty.http.pathmap.MappedResource;
+import org.opengis.cite.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.opengis.cite.jetty.http2.HTTP2Cipher;
+import org.opengis.cite.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.opengis.cite.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.opengis.cite.jetty.server.Connector;
-import org.opengis.cite.jetty.server.Handler;
 import org.opengis.cite.jetty.server.HttpConfiguration;
 import org.opengis.cite.jetty.server.HttpConnectionFactory;
 import org.opengis.cite.jetty.server.SecureRequestCustomizer;
 import org.opengis.cite.jetty.server.Server;
 import org.opengis.cite.jetty.server.ServerConnector;
-import org.opengis.cite.jetty.server.handler.ContextHandlerCollection;
 import org.opengis.cite.jetty.servlet.ServletContextHandler;
-import org.opengis.cite.jetty.servlet.ServletHandler;
 import org.opengis.cite.jetty.servlet.ServletHolder;
 import org.opengis.cite.jetty.util.ssl.SslContextFactory;
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
 
 /**
  * A wrapper class around the Jetty Server class. This adds functionality for the testing suite for
- * adding/removing servlets to capture test client requests.
+ * adding/removing test sessions to capture test client requests.
  *
  */
 public class TestServer {
 	
-	private int serverPort;
-	private Server jettyServer;
+	/**
+	 * Maximum number of seconds a test session will wait for the secure client to send its requests.
+	 */
+	private static final long REQUEST_TIMEOUT_SECONDS = 300;
 	
 	/**
-	 * A ContextHandlerCollection is used to dynamically add and remove servlets from the running
-	 * embedded server. (Otherwise the server would have to be stopped before new servlets could be
-	 * added.)
+	 * Maximum number of ports in a port pool
 	 */
-	private ContextHandlerCollection serverHandlers;
+	public static final int MAX_PORTS = 64;
+	
+	private final int[] serverPorts;
+	private final HandshakeMetrics handshakeMetrics = new HandshakeMetrics();
+	private Server jettyServer;
+	private KeyStoreWatcher keyStoreWatcher;
 	
 	/**
-	 * Use a HashMap to track which servlet handlers are waiting for test requests.
-	 * When unfulfilled, the Boolean will be true. It is set to false in the TestAsyncServlet class.
+	 * Use a concurrent registry to track which servlet handlers are waiting for test requests.
+	 * The HandlerOptions are marked as received in the TestAsyncServlet class. Each server has its own
+	 * registry, so the servlet of a server only routes the sessions registered on it.
 	 */
-	private static volatile HashMap<String, HandlerOptions> handlerBlocks;
+	private final SessionRegistry handlerBlocks = new SessionRegistry();
 	
 	/**
-	 * Use a servlet class to capture requests from the secure client. The path that is requested by the
+	 * Use a servlet class to capture requests from the secure client. A single instance of the servlet
+	 * is mapped to every path on the server. The first segment of the path that is requested by the
 	 * client corresponds to the test session created in TestNGController; in the parent class here
-	 * (TestServer) the path is used to track if a request is fulfilled using the handlerBlocks HashMap.
+	 * (TestServer) the path is used to look up the session and track if a request is fulfilled using the
+	 * handlerBlocks SessionRegistry.
 	 *
 	 */
 	@SuppressWarnings("serial")
 	public static class TestAsyncServlet extends HttpServlet {
+		private final SessionRegistry handlerBlocks;
+		
+		/**
+		 * @param handlerBlocks Registry of the test sessions of the server the servlet is mapped on
+		 */
+		public TestAsyncServlet(SessionRegistry handlerBlocks) {
+			this.handlerBlocks = handlerBlocks;
+		}
+		
 		@Override
 		protected void doGet(HttpServletRequest request, HttpServletResponse response) throws 
 			ServletException, IOException {
@@ -87,77 +100,74 @@ public class TestServer {
 		
 		protected void handleRequest(HttpServletRequest request, HttpServletResponse response) throws 
 			ServletException, IOException {
+            // Route the request to its test session using the first path segment
+            final HandlerOptions options = getSessionOptions(request);
+            
+            if (options == null || (options.getPort() != 0 && options.getPort() != request.getLocalPort())) {
+            	// The test session has already finished, was never registered, or was assigned another
+            	// port of the pool
+            	response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            	return;
+            }
+            
             final AsyncContext ctxt = request.startAsync();
-            // Remove the leading slash from the path to determine the registered path
-            String path = request.getServletPath().substring(1);
             
             ctxt.start(new Runnable() {
-                private EmulatedServer emulated;
-
 				@Override
                 public void run() {
-                    System.out.println("Request received.");
-                    
-                    // Log request details
-                    System.out.printf("Path: %s\n", request.getPathInfo());
-                    System.out.printf("HTTP Method: %s\n", request.getMethod());
-                    System.out.printf("Is Secure: %s\n", request.isSecure() ? "true" : "false");
-                    System.out.printf("Query String: %s\n", request.getQueryString());
-                    System.out.printf("Auth Type: %s\n", request.getAuthType());
-                    
-                    System.out.println("Request Headers:");
-                    for (Enumeration<String> headers = request.getHeaderNames(); headers.hasMoreElements();) {
-                    	String headerName = headers.nextElement();
-                    	String headerValue = request.getHeader(headerName);
-                    	System.out.printf("%s: %s\n", headerName, headerValue);
-                    }
-                    
-                    System.out.println();
-                    
-                    // Split out nonce from the path
-                    String nonce = path.split("/")[0];
-                    HandlerOptions options = handlerBlocks.get(nonce);
+                    // Log request details without blocking on console output
+                    RequestLog.record(request, options.getServerOptions().getServiceType());
                     
                     // Save request
+                    int requestCount;
                     try {
-						options.saveRequest(request);
+						requestCount = options.saveRequest(request);
 					} catch (IOException e1) {
 						// When the request could not be serialized, ignore it and leave the 
 						// document empty.
-						e1.printStackTrace();
+						TestSuiteLogger.log(Level.WARNING, "Could not save request for " + request.getPathInfo(), e1);
+						requestCount = options.getRequestCount();
 					}
                     
-                    // Return the proper document to the client
+                    // Return the proper document to the client, using the emulated server that was
+                    // created for the session's service type when it was registered
                     ServerOptions serverOptions = options.getServerOptions();
-                    String serviceType = serverOptions.getServiceType();
-                    if (serviceType.equals("wms111")) {
-                		emulated = new ServerWms111(serverOptions);
-                    } else if (serviceType.equals("wms13")) {
-                    	emulated = new ServerWms13(serverOptions);
-                    } else if (serviceType.equals("wps20")) {
-                    	emulated = new ServerWps20(serverOptions);
-                    } else {
-                    	System.err.println("Unknown service type for emulation: " + serviceType);
+                    try {
+                    	options.getEmulatedServer().handleRequest(request, response);
+                    } catch (IOException | TransformerException e) {
+                    	// When an IO Exception occurs trying to build a response
+                    	TestSuiteLogger.log(Level.WARNING, "Could not build response for " + request.getPathInfo(), e);
                     }
                     
-                    if (emulated != null) {
-                    	try {
-    						emulated.handleRequest(request, response);
-    					} catch (IOException | TransformerException e) {
-    						// When an IO Exception occurs trying to build a response
-    						e.printStackTrace();
-    					}
-                    }
+                    ctxt.complete();
                     
                     // Ask ServerOptions for the number of expected requests for the authentication type
-                    if (options.getRequestCount() == serverOptions.getExpectedRequestCount()) {
-	                    // Mark path handler as no longer waiting for request
-	                    options.setReceived(true);	                    
+                    if (requestCount == serverOptions.getExpectedRequestCount()) {
+	                    // Mark path handler as no longer waiting for request, releasing the waiting
+	                    // test session only after the response has been completed
+	                    options.setReceived(true);
                     }
-                    ctxt.complete();
                 }
             });
         }
+		
+		/**
+		 * Find the test session for a request. The servlet is mapped to "/*", so the path info holds the
+		 * full request path and its first segment is the session path (nonce), e.g. "/nonce/full".
+		 * 
+		 * @param request Request from client
+		 * @return HandlerOptions for the session, or null if no session is registered for the path
+		 */
+		private HandlerOptions getSessionOptions(HttpServletRequest request) {
+			String pathInfo = request.getPathInfo();
+			if (pathInfo == null || pathInfo.length() < 2) {
+				return null;
+			}
+			
+			int end = pathInfo.indexOf('/', 1);
+			String nonce = (end == -1) ? pathInfo.substring(1) : pathInfo.substring(1, end);
+			return handlerBlocks.get(nonce);
+		}
 	}
 
 	/**
@@ -168,53 +178,183 @@ public class TestServer {
 	 * @throws Exception for any errors starting the embedded Jetty server
 	 */
 	public TestServer(String host, int port, String jks_path, String jks_password) throws Exception {
-		handlerBlocks = new HashMap<String, HandlerOptions>();
-		serverPort = port;
+		this(host, new int[] { port }, jks_path, jks_password);
+	}
+	
+	/**
+	 * Create a server with a pool of ports. Each port has its own connector, with its own acceptor and
+	 * selector threads, and each test session is assigned one port of the pool when it is registered.
+	 * 
+	 * @param host String of host interface to bind
+	 * @param ports Ports to bind, at least one
+	 * @param jks_path Path to the Java KeyStore
+     * @param jks_password Password to unlock the KeyStore 
+	 * @throws Exception for any errors starting the embedded Jetty server
+	 */
+	public TestServer(String host, int[] ports, String jks_path, String jks_password) throws Exception {
+		if (ports.length == 0) {
+			throw new IllegalArgumentException("At least one port is required");
+		}
+		serverPorts = ports.clone();
 		
 		jettyServer = new Server();
 		jettyServer.setStopAtShutdown(true);
 		jettyServer.setStopTimeout(1);
 		
-		// Set up HTTPS
-		// Check for Keystore
-		File keystore = new File(jks_path);
-		if (!keystore.exists()) {
-			throw new FileNotFoundException("Missing keystore: " + keystore.getAbsolutePath());
-		}
+		// Set up HTTPS, reusing the KeyStore and TLS sessions of earlier servers for the same KeyStore
+		SslContextFactory sslContextFactory = SslContextCache.newSslContextFactory(jks_path, jks_password);
+		sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
 		
-		SslContextFactory sslContextFactory = new SslContextFactory();
-		sslContextFactory.setKeyStorePath(keystore.getAbsolutePath());
-		sslContextFactory.setKeyStorePassword(jks_password);
-		sslContextFactory.setTrustStorePath(keystore.getAbsolutePath());
-		sslContextFactory.setTrustStorePassword(jks_password);
-		
-		HttpConfiguration httpsConfig = new HttpConfiguration();
-		httpsConfig.setSecureScheme("https");
-		httpsConfig.setSecurePort(port);
-		httpsConfig.addCustomizer(new SecureRequestCustomizer());
-		
-		// Use a ServerConnector so we can force the host address and port 
-		ServerConnector connector = new ServerConnector(jettyServer,
-				new UnifiedSslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
-				new HttpConnectionFactory(httpsConfig));
-		connector.setPort(port);
-		connector.setHost(host);
-		jettyServer.setConnectors(new Connector[] { connector });
+		// Use a ServerConnector for each port so we can force the host address and port. The connectors
+		// share the SSL context and the handshake metrics.
+		// HTTPS clients negotiate HTTP/2 or HTTP/1.1 with ALPN. HTTP clients use HTTP/1.1, which switches
+		// to HTTP/2 (h2c) for clients that start with the HTTP/2 connection preface.
+		boolean alpnAvailable = true;
+		Connector[] connectors = new Connector[serverPorts.length];
+		for (int i = 0; i < serverPorts.length; i++) {
+			HttpConfiguration httpsConfig = new HttpConfiguration();
+			httpsConfig.setSecureScheme("https");
+			httpsConfig.setSecurePort(serverPorts[i]);
+			httpsConfig.addCustomizer(new SecureRequestCustomizer());
+			
+			HttpConnectionFactory http11 = new HttpConnectionFactory(httpsConfig);
+			HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpsConfig);
+			HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(httpsConfig);
+			ALPNServerConnectionFactory alpn = alpnAvailable ? newAlpnConnectionFactory(h2, http11) : null;
+			alpnAvailable = alpn != null;
+			
+			UnifiedSslConnectionFactory unifiedFactory = new UnifiedSslConnectionFactory(sslContextFactory,
+					alpnAvailable ? alpn.getProtocol() : http11.getProtocol(), http11.getProtocol());
+			unifiedFactory.setHandshakeMetrics(handshakeMetrics);
+			
+			ServerConnector connector = alpnAvailable
+					? new ServerConnector(jettyServer, unifiedFactory, alpn, h2, http11, h2c)
+					: new ServerConnector(jettyServer, unifiedFactory, http11, h2c);
+			connector.setPort(serverPorts[i]);
+			connector.setHost(host);
+			connectors[i] = connector;
+		}
+		if (!alpnAvailable) {
+			TestSuiteLogger.log(Level.WARNING, "ALPN is not supported by this Java VM, HTTPS clients can only "
+					+ "use HTTP/1.1");
+		}
+		jettyServer.setConnectors(connectors);
 		
-		// Use ContextHandlerCollection to add contexts/handlers *after* the server has been started
-		serverHandlers = new ContextHandlerCollection();
-		jettyServer.setHandler(serverHandlers);
+		// Use a single long-lived servlet for all test sessions, which routes each request by its first
+		// path segment. Sessions can then be added and removed without starting or stopping handlers.
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+		context.setContextPath("/");
+		ServletHolder holder = new ServletHolder(new TestAsyncServlet(handlerBlocks));
+		holder.setAsyncSupported(true);
+		context.addServlet(holder, "/*");
+		jettyServer.setHandler(context);
 		
 		jettyServer.start();
+		
+		// Reload the key for new connections when the KeyStore is changed, without stopping the server
+		keyStoreWatcher = new KeyStoreWatcher(jks_path, jks_password, sslContextFactory);
+		try {
+			keyStoreWatcher.start();
+		} catch (IOException e) {
+			TestSuiteLogger.log(Level.WARNING, "Could not watch keystore " + jks_path
+					+ " for changes, restart the server to use a changed keystore", e);
+		}
 	}
 	
 	/**
-	 * Return the port the server is currently using.
+	 * Create the ALPN connection factory that negotiates the protocol of HTTPS connections, preferring
+	 * HTTP/2 and using HTTP/1.1 for clients that do not use ALPN.
+	 * 
+	 * @param h2 HTTP/2 connection factory
+	 * @param http11 HTTP/1.1 connection factory
+	 * @return ALPN connection factory, or null if the Java VM does not support ALPN
+	 */
+	private static ALPNServerConnectionFactory newAlpnConnectionFactory(HTTP2ServerConnectionFactory h2,
+			HttpConnectionFactory http11) {
+		try {
+			ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(h2.getProtocol(), http11.getProtocol());
+			alpn.setDefaultProtocol(http11.getProtocol());
+			return alpn;
+		} catch (IllegalStateException e) {
+			// No ALPN processor could be loaded
+			TestSuiteLogger.log(Level.FINE, "Could not create ALPN connection factory", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Return the port the server is currently using. For a server with a pool of ports this is the first
+	 * port of the pool.
 	 * 
 	 * @return int Current port being used by the embedded server
 	 */
 	public int getPort() {
-		return serverPort;
+		return serverPorts[0];
+	}
+	
+	/**
+	 * Return the pool of ports the server is bound to.
+	 * 
+	 * @return Copy of the ports, in the order they were given
+	 */
+	public int[] getPorts() {
+		return serverPorts.clone();
+	}
+	
+	/**
+	 * Return the counts of the TLS handshakes of client connections to every port of the server.
+	 * 
+	 * @return Handshake metrics of the server
+	 */
+	public HandshakeMetrics getHandshakeMetrics() {
+		return handshakeMetrics;
+	}
+	
+	/**
+	 * Parse a port test run property, which is a single port, a range of ports such as "10080-10083",
+	 * or a comma-separated list of ports and ranges. Repeated ports are only used once.
+	 * 
+	 * @param ports Port test run property value
+	 * @return Ports in the order they were given
+	 * @throws IllegalArgumentException If the value is not a valid port, range or list, or has more than
+	 * {@link #MAX_PORTS} ports
+	 */
+	public static int[] parsePorts(String ports) {
+		if (ports == null || ports.trim().isEmpty()) {
+			throw new IllegalArgumentException("Missing port");
+		}
+		Set<Integer> pool = new LinkedHashSet<Integer>();
+		for (String item : ports.split(",")) {
+			String[] range = item.trim().split("-", -1);
+			if (range.length > 2) {
+				throw new IllegalArgumentException("Invalid port range: " + item);
+			}
+			int first = parsePort(range[0]);
+			int last = (range.length == 2) ? parsePort(range[1]) : first;
+			if (last < first) {
+				throw new IllegalArgumentException("Invalid port range: " + item);
+			}
+			for (int port = first; port <= last; port++) {
+				pool.add(port);
+				if (pool.size() > MAX_PORTS) {
+					throw new IllegalArgumentException("More than " + MAX_PORTS + " ports in: " + ports);
+				}
+			}
+		}
+		int[] parsed = new int[pool.size()];
+		int i = 0;
+		for (Integer port : pool) {
+			parsed[i++] = port;
+		}
+		return parsed;
+	}
+	
+	private static int parsePort(String port) {
+		int parsed = Integer.parseInt(port.trim());
+		if (parsed < 1 || parsed > 65535) {
+			throw new IllegalArgumentException("Invalid port: " + port);
+		}
+		return parsed;
 	}
 	
 	/**
@@ -233,29 +373,78 @@ public class TestServer {
 	}
 	
 	/**
-	 * Create a new ServletContextHandler for the given `path`, and create a shared handler block boolean.
-	 * The boolean will be used by the waitForRequest thread to delay until the request is fulfilled or a
-	 * timeout is hit.
-	 * The Handler will catch requests to `path`, and to `path/*` where `*` is a wildcard.
+	 * Copy the requests received so far for a registered path, see
+	 * {@link HandlerOptions#snapshotRequests()}.
+	 * 
+	 * @param path String of the path to retrieve from the stored Handlers
+	 * @return RequestsSnapshot, or null if no session is registered for the path
+	 * @throws IOException Exception if a spilled request body could not be read
+	 */
+	public RequestsSnapshot snapshotRequests(String path) throws IOException {
+		HandlerOptions options = handlerBlocks.get(path);
+		if (options == null) {
+			return null;
+		} else {
+			return options.snapshotRequests();
+		}
+	}
+	
+	/**
+	 * Register the session state for the given `path` in the shared handler blocks registry. The state 
+	 * will be used by the waitForRequest thread to delay until the request is fulfilled or a timeout is
+	 * hit.
+	 * The servlet will then route requests for `path`, and for `path/*` where `*` is a wildcard, to this
+	 * session. If the server options have a requests file path, each request is written to that requests
+	 * document as it arrives. If they have a journal path, the requests are also appended to that
+	 * journal, and requests already in it from an earlier run of the session are restored.
+	 * 
+	 * The session is assigned the port of the pool with the fewest sessions, and the servlet only routes
+	 * requests that arrive on that port to the session.
 	 * 
 	 * @param path HTTP path to dynamically add to the embedded server
 	 * @param serverOptions ServerOptions Object with options for the type of OWS to emulate, will 
 	 * determine which capabilities document will be presented to the client
-	 * @throws Exception Exception if context could not be started
+	 * @return The port assigned to the session, which the secure client must connect to
+	 * @throws IllegalStateException If a test session is already registered for `path`
+	 * @throws IllegalArgumentException If no emulated server is registered for the service type
+	 * @throws Exception Exception if the session state could not be created
 	 */
-	public void registerHandler(String path, ServerOptions serverOptions) throws Exception {
+	public int registerHandler(String path, ServerOptions serverOptions) throws Exception {
 		HandlerOptions options = new HandlerOptions(serverOptions);
-		handlerBlocks.put(path, options);
-
-		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
-        context.setContextPath("/");
-        ServletHolder baseHolder = context.addServlet(TestAsyncServlet.class, "/" + path);
-        baseHolder.setAsyncSupported(true);
-        ServletHolder wildcardHolder = context.addServlet(TestAsyncServlet.class, "/" + path + "/*");
-        wildcardHolder.setAsyncSupported(true);
-        serverHandlers.addHandler(context);
-        
-        context.start();
+		if (serverPorts.length > 1) {
+			options.setPort(handlerBlocks.assignPort(serverPorts));
+		}
+		
+		// Open the requests document before the session can receive requests, so it has all of them
+		Path requestsFilePath = serverOptions.getRequestsFilePath();
+		if (requestsFilePath != null) {
+			try {
+				options.openRequestsFile(requestsFilePath);
+			} catch (IOException e) {
+				// The session still captures requests in memory
+				TestSuiteLogger.log(Level.WARNING, "Could not open requests file " + requestsFilePath, e);
+			}
+		}
+		// Restore the requests from the journal before the session is visible, so a request that arrives
+		// right after registration is saved after them
+		Path journalPath = serverOptions.getJournalPath();
+		if (journalPath != null) {
+			try {
+				options.openJournal(journalPath);
+			} catch (IOException e) {
+				// The session still captures requests in memory
+				TestSuiteLogger.log(Level.WARNING, "Could not open request journal " + journalPath, e);
+			}
+		}
+		try {
+			handlerBlocks.register(path, options);
+		} catch (IllegalStateException e) {
+			// The journal is kept, as it belongs to the session already registered for the path
+			options.closeJournal();
+			options.closeRequestsFile();
+			throw e;
+		}
+		return (options.getPort() == 0) ? getPort() : options.getPort();
 	}
 	
 	/**
@@ -264,81 +453,47 @@ public class TestServer {
 	 * @throws Exception for any errors shutting down the embedded server
 	 */
 	public void shutdown() throws Exception {
+		keyStoreWatcher.close();
 		jettyServer.stop();
+		TestSuiteLogger.log(Level.FINE, "TLS handshakes of test server on port " + getPort() + ": "
+				+ handshakeMetrics);
 	}
 	
 	/**
-	 * Iterate through the registered ServletContextHandler instances on this server for the first one to
-	 * have a mapping matching `path`, and if found then that ServletContextHandler is removed. If no match
-	 * is found then nothing is done.
+	 * Remove the session state for `path` from the registry, after which the servlet will no longer
+	 * route requests for `path`. The requests document of the session, if any, is completed and closed,
+	 * and the request journal of the session, if any, and the files its request bodies were spilled to
+	 * are deleted. If no session is registered for `path` then nothing is done.
 	 * 
 	 * @param path HTTP path to dynamically remove from the embedded server
-	 * @throws ServletException For any errors removing a servlet context handler
 	 */
-	public void unregisterHandler(String path) throws ServletException {
-		Handler[] handlers = serverHandlers.getHandlers();
-		
-		for (Handler context : handlers) {
-			if (context.getClass() == ServletContextHandler.class) {
-				ServletHandler servletHandler = ((ServletContextHandler) context).getServletHandler();
-				MappedResource<ServletHolder> a = servletHandler.getMappedServlet("/" + path);
-				if (a != null) {
-					serverHandlers.removeHandler(context);
-					break;
-				}
-			}
+	public void unregisterHandler(String path) {
+		HandlerOptions options = handlerBlocks.remove(path);
+		if (options != null) {
+			options.closeRequestsFile();
+			options.deleteJournal();
+			options.deleteBodyFiles();
 		}
 	}
 	
 	/**
-	 * Block the thread until a request is received, or the
-	 * timeout is hit.
+	 * Block the thread until the expected requests are received, or the timeout is hit. The calling
+	 * thread waits on the handler's completion future, so it is woken as soon as the servlet has saved
+	 * the last request and no separate polling thread is needed.
 	 * 
-	 * @param path The unique code associated with the thread created to wait for the servlet activation
+	 * @param path The unique code associated with the servlet handler to wait for
 	 * @throws InterruptedException For any errors caused by the waiting thread being interrupted 
-	 * @throws ExecutionException For any errors caused by the waiting thread having an exception
+	 * @throws ExecutionException For any errors caused by the completion future having an exception
 	 */
 	public void waitForRequest(String path) throws InterruptedException, ExecutionException {
 		HandlerOptions options = handlerBlocks.get(path);
-		options.setReceived(false);
-		
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		Future<String> future = executor.submit(new WaitTask(path));
 		
 		try {
-            System.out.println("Started wait.");
-            System.out.println(future.get(300, TimeUnit.SECONDS));
-            System.out.println("Finished!");
-        } catch (TimeoutException e) {
-            future.cancel(true);
-            System.out.println("Terminated!");
-        }
-
-        executor.shutdownNow();
-	}
-	
-	/**
-	 * Thread class for delaying until a servlet request has been made
-	 */
-	class WaitTask implements Callable<String> {
-		private String path;
-		
-		/**
-		 * @param path The unique path associated with this waiting thread task and the servlet
-		 */
-		public WaitTask(String path) {
-			this.path = path;
-		}
-
-		@Override
-		public String call() throws Exception {
-			System.out.println("Waiting…");
-			HandlerOptions options = handlerBlocks.get(path);
-			while (!options.getReceived()) {
-				Thread.sleep(1000);
-			}
-			return "";
+			TestSuiteLogger.log(Level.FINE, "Waiting for requests to " + path);
+			options.getRequestsReceived().get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			TestSuiteLogger.log(Level.FINE, "Received requests to " + path);
+		} catch (TimeoutException e) {
+			TestSuiteLogger.log(Level.FINE, "Timed out waiting for requests to " + path);
 		}
 	}
 }
-
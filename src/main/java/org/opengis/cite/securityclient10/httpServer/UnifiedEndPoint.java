@@ -5,6 +5,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadPendingException;
 import java.nio.channels.WritePendingException;
+import java.util.Arrays;
 
 import org.opengis.cite.jetty.io.Connection;
 import org.opengis.cite.jetty.io.EndPoint;
@@ -14,6 +15,10 @@ import org.opengis.cite.jetty.util.Callback;
  * Subclass of EndPoint for reading the first few bytes of a client connection to determine if it is
  * a TLS handshake (HTTPS enabled) or not (HTTP only).
  * 
+ * The bytes are read ahead without blocking by a {@link ProtocolDetectionConnection}, and are returned
+ * again by {@link #fill(ByteBuffer)} to the connection for the detected protocol, or taken by it when
+ * it is upgraded to. Once they have been drained, fills go straight to the wrapped endpoint.
+ * 
  * Source: https://stackoverflow.com/a/40076056/237958
  *
  */
@@ -24,101 +29,136 @@ public class UnifiedEndPoint implements EndPoint {
 	 */
 	private final EndPoint endPoint;
 	/**
-	 * Buffer for reading bytes from start
+	 * Bytes read from start
 	 */
-	private final ByteBuffer start;
+	private final byte[] bytes;
 	/**
-	 * How many bytes from the start need to be read
+	 * Buffer for reading bytes from start, in flush mode. Null once the bytes have been returned by
+	 * {@link #fill(ByteBuffer)} or taken by {@link #takeBytes()}, after which every fill goes straight
+	 * to the wrapped endpoint.
 	 */
-	private int leftToRead;
+	private volatile ByteBuffer start;
 	/**
-	 * Bytes read from start
+	 * True once all the bytes from the start have been read, or the client closed the connection
 	 */
-	private final byte[] bytes;
+	private volatile boolean complete;
 	/**
-	 * Buffered exception for throwing later
+	 * How many bytes from the start have been read
 	 */
-	private IOException pendingException = null; 
+	private volatile int length;
 	
+	/**
+	 * The endpoint is not locked: Jetty only lets one thread fill an endpoint at a time, and the bytes
+	 * are read ahead by the {@link ProtocolDetectionConnection} before any other connection fills.
+	 * 
+	 * @param channel Endpoint of the client connection
+	 * @param readAheadLength Number of bytes to read ahead
+	 */
 	public UnifiedEndPoint(final EndPoint channel, final int readAheadLength) {
 		this.endPoint = channel;
-		start = ByteBuffer.wrap(bytes = new byte[readAheadLength]);
-		start.flip();
-		leftToRead = readAheadLength;
+		this.bytes = new byte[readAheadLength];
+		final ByteBuffer buffer = ByteBuffer.wrap(this.bytes);
+		buffer.flip();
+		this.start = buffer;
 	}
 	
 	@Override
-	public synchronized int fill(final ByteBuffer dst) throws IOException {
-		throwPendingException();
+	public int fill(final ByteBuffer dst) throws IOException {
+		final ByteBuffer buffer = start;
+		if (buffer == null) {
+			return endPoint.fill(dst);
+		}
 		
-		if (leftToRead > 0) {
+		if (!complete) {
 			readAhead();
+			if (!complete) {
+				return 0;
+			}
 		}
 		
-		if (leftToRead > 0) {
-			return 0;
+		final int n = readFromStart(buffer, dst);
+		if (buffer.hasRemaining()) {
+			return n;
 		}
 		
-		final int sr = start.remaining();
-		
-		if (sr > 0) {
-			dst.compact();
-			final int n = readFromStart(dst);
-			if (n < sr) {
-				return n;
-			}
+		// Drained: later fills skip the read-ahead buffer
+		start = null;
+		final int filled = endPoint.fill(dst);
+		if (filled < 0) {
+			return (n > 0) ? n : filled;
 		}
-		
-		return sr + endPoint.fill(dst);
+		return n + filled;
 	}
 	
+	/**
+	 * The bytes read ahead so far. Once {@link #isReadAheadComplete()} is true, this is the complete
+	 * read-ahead, which is shorter than the read-ahead length if the client closed the connection.
+	 * @return Copy of the bytes read ahead
+	 */
 	public byte[] getBytes() {
-		if (pendingException == null) {
-			try {
-				readAhead();
-			} catch (final IOException e) {
-				pendingException = e;
-			}
-		}
-		
-		return bytes;
+		return Arrays.copyOf(bytes, length);
 	}
 	
-	// TODO: Add wait for slow clients
-	private synchronized void readAhead() throws IOException {
-		if (leftToRead > 0) {
-			final int n = endPoint.fill(start);
-			
-			if (n == -1) {
-				leftToRead = -1;
-			} else {
-				leftToRead -= n;
-			}
-			
-			if (leftToRead <= 0) {
-				start.rewind();
-			}
-		}
+	/**
+	 * Take the bytes read ahead, so that they are not returned again by {@link #fill(ByteBuffer)}. Used
+	 * to hand them to a connection that accepts bytes when it is upgraded to, see
+	 * {@link org.opengis.cite.jetty.io.Connection.UpgradeTo}.
+	 * @return Buffer in flush mode with the bytes that were not filled yet, or null if there are none
+	 */
+	public ByteBuffer takeBytes() {
+		final ByteBuffer buffer = start;
+		start = null;
+		return buffer;
+	}
+	
+	/**
+	 * @return The endpoint of the client connection that is wrapped by this endpoint
+	 */
+	public EndPoint getWrappedEndPoint() {
+		return endPoint;
 	}
 	
-	private int readFromStart(final ByteBuffer dst) throws IOException {
-		final int n = Math.min(dst.remaining(), start.remaining());
-		if (n > 0) {
-			dst.put(bytes, start.position(), n);
-			start.position(start.position() + n);
-			dst.flip();
+	/**
+	 * @return True if all the read-ahead bytes have been read, or the client closed the connection
+	 */
+	public boolean isReadAheadComplete() {
+		return complete;
+	}
+	
+	/**
+	 * Read the bytes that are available from the client into the read-ahead buffer, without waiting
+	 * for more. Register fill interest on this endpoint to be called back when more bytes arrive.
+	 * @return Number of bytes read, 0 if none are available yet, or -1 if the client closed the
+	 * connection
+	 * @throws IOException Exception if the connection could not be read
+	 */
+	public int readAhead() throws IOException {
+		final ByteBuffer buffer = start;
+		if (complete || buffer == null) {
+			return 0;
+		}
+		
+		final int n = endPoint.fill(buffer);
+		
+		length = buffer.limit();
+		if (n == -1 || length == bytes.length) {
+			complete = true;
 		}
 		return n;
 	}
 	
-	private void throwPendingException() throws IOException {
-		if (pendingException != null) {
-			final IOException e = pendingException;
-			pendingException = null;
-			throw e;
-		}
+	/**
+	 * Append the read-ahead bytes that fit to `dst`, which is in flush mode.
+	 */
+	private int readFromStart(final ByteBuffer buffer, final ByteBuffer dst) {
+		dst.compact();
+		final int n = Math.min(dst.remaining(), buffer.remaining());
+		dst.put(bytes, buffer.position(), n);
+		buffer.position(buffer.position() + n);
+		dst.flip();
+		return n;
 	}
-
+	
 	//
 	// These following methods are overridden, and defer to the superclass
 	//
@@ -22,13 +22,24 @@ import org.opengis.cite.jetty.util.ssl.SslContextFactory;
  * connector accept both HTTPS *and* HTTP connections; the HttpServletRequest.isSecure() method will now
  * return true or false depending on HTTPS from the client.
  * 
+ * TLS connections continue with the `next` protocol and plain connections with the `plain` protocol,
+ * which are the same unless a separate plain protocol is given.
+ * 
  * Source: https://stackoverflow.com/a/40076056/237958
  *
  */
 public class UnifiedSslConnectionFactory extends AbstractConnectionFactory {
 	
+	/**
+	 * Default maximum number of milliseconds to wait for the first byte of a client connection
+	 */
+	public static final long DEFAULT_DETECTION_TIMEOUT = 15000;
+	
 	private final SslContextFactory _sslContextFactory;
 	private final String _nextProtocol;
+	private final String _plainProtocol;
+	private long _detectionTimeout = DEFAULT_DETECTION_TIMEOUT;
+	private HandshakeMetrics _handshakeMetrics = new HandshakeMetrics();
 	
 	public UnifiedSslConnectionFactory() {
 		this(HttpVersion.HTTP_1_1.asString());
@@ -39,9 +50,24 @@ public class UnifiedSslConnectionFactory extends AbstractConnectionFactory {
 	}
 	
 	public UnifiedSslConnectionFactory(@Name("sslContextFactory") final SslContextFactory factory, @Name("next") final String nextProtocol) {
+		this(factory, nextProtocol, nextProtocol);
+	}
+	
+	/**
+	 * Create a factory with different protocols for TLS and plain connections, for example "alpn" to
+	 * negotiate HTTP/2 or HTTP/1.1 over TLS while plain connections use HTTP/1.1, which switches to
+	 * HTTP/2 (h2c) for clients that send the HTTP/2 connection preface.
+	 * 
+	 * @param factory SslContextFactory for TLS connections, or null for a default one
+	 * @param nextProtocol Protocol of the connection factory for the decrypted TLS connection
+	 * @param plainProtocol Protocol of the connection factory for plain connections
+	 */
+	public UnifiedSslConnectionFactory(@Name("sslContextFactory") final SslContextFactory factory, @Name("next") final String nextProtocol,
+			@Name("plain") final String plainProtocol) {
 		super("SSL");
 		this._sslContextFactory = factory == null ? new SslContextFactory() : factory;
 		this._nextProtocol = nextProtocol;
+		this._plainProtocol = plainProtocol;
 		this.addBean(this._sslContextFactory);
 	}
 	
@@ -49,6 +75,38 @@ public class UnifiedSslConnectionFactory extends AbstractConnectionFactory {
 		return this._sslContextFactory;
 	}
 	
+	/**
+	 * @return Maximum number of milliseconds to wait for the first byte of a client connection
+	 */
+	public long getDetectionTimeout() {
+		return this._detectionTimeout;
+	}
+	
+	/**
+	 * Set the maximum time to wait for the first byte of a client connection, after which the connection
+	 * is closed. Clients that send their first byte within the timeout are detected however slowly
+	 * the rest of their bytes arrive.
+	 * @param detectionTimeout Timeout in milliseconds, or 0 to use the idle timeout of the connector
+	 */
+	public void setDetectionTimeout(long detectionTimeout) {
+		this._detectionTimeout = detectionTimeout;
+	}
+	
+	/**
+	 * @return Counts of the TLS handshakes of the client connections
+	 */
+	public HandshakeMetrics getHandshakeMetrics() {
+		return this._handshakeMetrics;
+	}
+	
+	/**
+	 * Set the metrics to count the TLS handshakes in, for example to share them between connectors.
+	 * @param handshakeMetrics Metrics for the TLS handshakes of new client connections
+	 */
+	public void setHandshakeMetrics(HandshakeMetrics handshakeMetrics) {
+		this._handshakeMetrics = handshakeMetrics;
+	}
+	
 	@Override
 	protected void doStart() throws Exception {
 		super.doStart();
@@ -60,43 +118,65 @@ public class UnifiedSslConnectionFactory extends AbstractConnectionFactory {
 		}
 	}
 
+	/**
+	 * Create the connection for a new client connection, which detects the protocol once the client has
+	 * sent its first byte. See {@link ProtocolDetectionConnection}.
+	 */
 	@Override
 	public Connection newConnection(final Connector connector, final EndPoint realEndPoint) {
 		final UnifiedEndPoint aheadEndPoint = new UnifiedEndPoint(realEndPoint, 1);
-		final byte[] bytes = aheadEndPoint.getBytes();
-		final boolean isSSL; // TODO: rename
-		
-		if (bytes == null || bytes.length == 0) {
-			isSSL = true;
-		} else {
-			// TLS first byte is 0x16
-			// SSLv2 first byte is >= 0x80
-			// HTTP is many ASCII bytes
-			final byte b = bytes[0];
-			isSSL = b >= 0x7F || (b < 0x20 && b != '\n' && b != '\r' && b != '\t');
+		return new ProtocolDetectionConnection(aheadEndPoint, connector.getExecutor(), this._detectionTimeout,
+				new ProtocolDetectionConnection.Listener() {
+					@Override
+					public Connection onDetected(UnifiedEndPoint endPoint, boolean tls) {
+						return newDetectedConnection(connector, endPoint, tls);
+					}
+				});
+	}
+	
+	/**
+	 * Create the connection for the detected protocol: an SSL connection wrapping the next protocol for
+	 * TLS, or the next protocol directly for plain HTTP.
+	 * 
+	 * A connection that accepts the read-ahead bytes when it is upgraded to reads from the client
+	 * endpoint directly, so the UnifiedEndPoint is not in the path of later reads. Otherwise the
+	 * connection reads the bytes again from the UnifiedEndPoint.
+	 * 
+	 * @param connector Connector that accepted the client connection
+	 * @param aheadEndPoint Endpoint with the read-ahead bytes
+	 * @param tls True if the client started a TLS handshake
+	 * @return Connection to upgrade the endpoint to
+	 */
+	protected Connection newDetectedConnection(final Connector connector, final UnifiedEndPoint aheadEndPoint,
+			final boolean tls) {
+		final Connection connection = this.newProtocolConnection(connector, aheadEndPoint.getWrappedEndPoint(), tls);
+		if (connection instanceof Connection.UpgradeTo) {
+			return connection;
 		}
-		
-		final EndPoint plainEndPoint;
-		final SslConnection sslConnection;
-		
-		if (isSSL) {
-			final SSLEngine engine = this._sslContextFactory.newSSLEngine(aheadEndPoint.getRemoteAddress());
-			engine.setUseClientMode(false);
-			sslConnection = this.newSslConnection(connector, aheadEndPoint, engine);
-			sslConnection.setRenegotiationAllowed(this._sslContextFactory.isRenegotiationAllowed());
-			this.configure(sslConnection, connector, aheadEndPoint);
-			plainEndPoint = sslConnection.getDecryptedEndPoint();
-		} else {
-			sslConnection = null;
-			plainEndPoint = aheadEndPoint;
+		return this.newProtocolConnection(connector, aheadEndPoint, tls);
+	}
+	
+	private Connection newProtocolConnection(final Connector connector, final EndPoint endPoint,
+			final boolean tls) {
+		if (!tls) {
+			// The endpoint is given the connection when it is upgraded
+			return connector.getConnectionFactory(_plainProtocol).newConnection(connector, endPoint);
 		}
 		
 		final ConnectionFactory next = connector.getConnectionFactory(_nextProtocol);
-		final Connection connection = next.newConnection(connector, plainEndPoint);
 		
+		final SSLEngine engine = this._sslContextFactory.newSSLEngine(endPoint.getRemoteAddress());
+		engine.setUseClientMode(false);
+		final SslConnection sslConnection = this.newSslConnection(connector, endPoint, engine);
+		sslConnection.setRenegotiationAllowed(this._sslContextFactory.isRenegotiationAllowed());
+		this.configure(sslConnection, connector, endPoint);
+		sslConnection.addHandshakeListener(this._handshakeMetrics.newListener(endPoint.getCreatedTimeStamp()));
+		
+		final EndPoint plainEndPoint = sslConnection.getDecryptedEndPoint();
+		final Connection connection = next.newConnection(connector, plainEndPoint);
 		plainEndPoint.setConnection(connection);
 		
-		return sslConnection == null ? connection : sslConnection;
+		return sslConnection;
 	}
 	
 	protected SslConnection newSslConnection(final Connector connector, final EndPoint endPoint, final SSLEngine engine) {
@@ -105,11 +185,12 @@ public class UnifiedSslConnectionFactory extends AbstractConnectionFactory {
 	
 	@Override
 	public String toString() {
-		return String.format("%s@%x{%s->%s}", new Object[] { 
+		return String.format("%s@%x{%s->%s|%s}", new Object[] { 
 				this.getClass().getSimpleName(),
 				Integer.valueOf(this.hashCode()),
 				this.getProtocol(),
-				this._nextProtocol
+				this._nextProtocol,
+				this._plainProtocol
 		});
 	}
 
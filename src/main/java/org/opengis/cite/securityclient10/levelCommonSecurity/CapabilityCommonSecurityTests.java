@@ -4,9 +4,6 @@ import org.opengis.cite.securityclient10.CommonFixture;
 import org.testng.Assert;
 import org.testng.SkipException;
 import org.testng.annotations.Test;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Includes various tests of Common Security capability. See 
@@ -20,19 +17,8 @@ public class CapabilityCommonSecurityTests extends CommonFixture {
     @Test(description = "Connection(s) made using HTTPS.\n"
     		+ "Requirements Class: urn:ogc:def:security:1.0:rc:https")
     public void isHTTPS() {
-    	Assert.assertNotNull(this.testRequestSet, "No secure client requests were collected by the test suite.");
-        
-    	NodeList requests = this.testRequestSet.getElementsByTagName("Request");
-        Assert.assertNotNull(requests, "No secure client requests were collected by the test suite.");
-        
-        for (int i = 0; i < requests.getLength(); i++) {
-        	Node request = requests.item(i);
-        	
-        	if (request.getNodeType() == Node.ELEMENT_NODE) {
-        		Element requestElement = (Element) request;
-        		Assert.assertEquals(requestElement.getAttribute("https"), "true", "A request was sent without HTTPS.");
-        	}
-        }
+    	Assert.assertNotNull(this.testRequests, "No secure client requests were collected by the test suite.");
+        Assert.assertTrue(this.testRequests.isAllHttps(), "A request was sent without HTTPS.");
     }
     
     /**
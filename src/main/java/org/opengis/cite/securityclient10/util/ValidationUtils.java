@@ -6,7 +6,11 @@ import java.net.URI;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import javax.xml.XMLConstants;
@@ -18,20 +22,44 @@ import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 
 import org.apache.xerces.util.XMLCatalogResolver;
 import org.opengis.cite.securityclient10.Namespaces;
 import org.opengis.cite.validation.SchematronValidator;
 import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.SAXException;
 
 /**
  * A utility class that provides convenience methods to support schema
  * validation.
+ * 
+ * <p>
+ * Compiled XML Schemas and Schematron validators are cached for the life of
+ * the JVM, so repeated test runs only compile each schema once, on first use. A
+ * {@link Schema} is thread-safe and is shared; a {@link SchematronValidator}
+ * is not, so idle validators are kept in a small pool for each schema and
+ * phase.
+ * </p>
  */
 public class ValidationUtils {
 
     static final String ROOT_PKG = "/org/opengis/cite/securityclient10/";
     private static final XMLCatalogResolver SCH_RESOLVER = initCatalogResolver();
+    private static final XMLCatalogResolver XSD_RESOLVER = (XMLCatalogResolver) createSchemaResolver(
+            URI.create(Namespaces.XSD));
+
+    /**
+     * Maximum number of idle Schematron validators kept for each schema and
+     * phase.
+     */
+    private static final int MAX_POOLED_VALIDATORS = 4;
+
+    private static final ConcurrentMap<String, Schema> SCHEMAS =
+            new ConcurrentHashMap<String, Schema>();
+    private static final ConcurrentMap<String, Queue<SchematronValidator>> SCHEMATRON_VALIDATORS =
+            new ConcurrentHashMap<String, Queue<SchematronValidator>>();
 
     private static XMLCatalogResolver initCatalogResolver() {
         return (XMLCatalogResolver) createSchemaResolver(Namespaces.SCH);
@@ -49,7 +77,7 @@ public class ValidationUtils {
      */
     public static LSResourceResolver createSchemaResolver(URI schemaLanguage) {
         String catalogFileName;
-        if (schemaLanguage.equals(Namespaces.XSD)) {
+        if (schemaLanguage.toString().equals(Namespaces.XSD)) {
             catalogFileName = "schema-catalog.xml";
         } else {
             catalogFileName = "schematron-catalog.xml";
@@ -61,12 +89,48 @@ public class ValidationUtils {
         return resolver;
     }
 
+    /**
+     * Returns a compiled XML Schema. An attempt is made to resolve the schema
+     * reference and any schemas it imports using the schema catalog; if this
+     * fails the reference is used as given. The schema is compiled once and
+     * cached.
+     * 
+     * @param schemaRef
+     *            A reference to an XML Schema; this is expected to be an
+     *            absolute URI value, possibly matching the system identifier
+     *            for some entry in the schema catalog.
+     * @return A thread-safe Schema; create a new Validator from it for each
+     *         validation.
+     * @throws SAXException
+     *             If the schema cannot be read or compiled.
+     */
+    public static Schema getSchema(String schemaRef) throws SAXException {
+        Schema schema = SCHEMAS.get(schemaRef);
+        if (null != schema) {
+            return schema;
+        }
+        String location = resolveSystem(XSD_RESOLVER, schemaRef);
+        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        factory.setResourceResolver(XSD_RESOLVER);
+        schema = factory.newSchema(new StreamSource((null != location) ? location : schemaRef));
+        Schema existing = SCHEMAS.putIfAbsent(schemaRef, schema);
+        return (null != existing) ? existing : schema;
+    }
+
     /**
      * Constructs a SchematronValidator that will check an XML resource against
      * the rules defined in a Schematron schema. An attempt is made to resolve
      * the schema reference using an entity catalog; if this fails the reference
      * is used as given.
      * 
+     * <p>
+     * An idle validator for the same schema and phase is reused if one is
+     * available, which avoids compiling the schema again. A validator is not
+     * thread-safe; pass it to
+     * {@link #releaseSchematronValidator(String, String, SchematronValidator)}
+     * once it is no longer used so it can be reused.
+     * </p>
+     * 
      * @param schemaRef
      *            A reference to a Schematron schema; this is expected to be a
      *            relative or absolute URI value, possibly matching the system
@@ -79,18 +143,19 @@ public class ValidationUtils {
      */
     public static SchematronValidator buildSchematronValidator(
             String schemaRef, String phase) {
-        Source source = null;
-        try {
-            String catalogRef = SCH_RESOLVER
-                    .resolveSystem(schemaRef.toString());
-            if (null != catalogRef) {
-                source = new StreamSource(URI.create(catalogRef).toString());
-            } else {
-                source = new StreamSource(schemaRef);
+        Queue<SchematronValidator> pool = SCHEMATRON_VALIDATORS.get(validatorKey(schemaRef, phase));
+        if (null != pool) {
+            SchematronValidator pooled = pool.poll();
+            if (null != pooled) {
+                return pooled;
             }
-        } catch (IOException x) {
-            TestSuiteLogger.log(Level.WARNING,
-                    "Error reading Schematron schema catalog.", x);
+        }
+        Source source;
+        String catalogRef = resolveSystem(SCH_RESOLVER, schemaRef);
+        if (null != catalogRef) {
+            source = new StreamSource(URI.create(catalogRef).toString());
+        } else {
+            source = new StreamSource(schemaRef);
         }
         SchematronValidator validator = null;
         try {
@@ -102,6 +167,58 @@ public class ValidationUtils {
         return validator;
     }
 
+    /**
+     * Returns a Schematron validator to the pool once it is no longer used, so
+     * that a later call to {@link #buildSchematronValidator(String, String)}
+     * with the same schema reference and phase can reuse it.
+     * 
+     * @param schemaRef
+     *            The schema reference the validator was built with.
+     * @param phase
+     *            The phase the validator was built with.
+     * @param validator
+     *            The validator; it must not be used after it is released. It
+     *            may be {@code null}.
+     */
+    public static void releaseSchematronValidator(String schemaRef, String phase,
+            SchematronValidator validator) {
+        if (null == validator) {
+            return;
+        }
+        String key = validatorKey(schemaRef, phase);
+        Queue<SchematronValidator> pool = SCHEMATRON_VALIDATORS.get(key);
+        if (null == pool) {
+            Queue<SchematronValidator> newPool = new ConcurrentLinkedQueue<SchematronValidator>();
+            pool = SCHEMATRON_VALIDATORS.putIfAbsent(key, newPool);
+            if (null == pool) {
+                pool = newPool;
+            }
+        }
+        // The pool size is checked without locking, so it may briefly exceed the limit
+        if (pool.size() < MAX_POOLED_VALIDATORS) {
+            pool.offer(validator);
+        }
+    }
+
+    private static String validatorKey(String schemaRef, String phase) {
+        return schemaRef + '#' + ((null != phase) ? phase : "");
+    }
+
+    /**
+     * Resolves a system identifier using a catalog resolver. The resolver
+     * parses its catalogs lazily, so lookups are serialized.
+     */
+    private static String resolveSystem(XMLCatalogResolver resolver, String systemId) {
+        synchronized (resolver) {
+            try {
+                return resolver.resolveSystem(systemId);
+            } catch (IOException x) {
+                TestSuiteLogger.log(Level.WARNING, "Error reading schema catalog " + systemId, x);
+                return null;
+            }
+        }
+    }
+
     /**
      * Extracts a set of XML Schema references from a source XML document. The
      * document element is expected to include the standard xsi:schemaLocation
@@ -26,18 +26,14 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import net.sf.saxon.s9api.DOMDestination;
 import net.sf.saxon.s9api.DocumentBuilder;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.SaxonApiException;
-import net.sf.saxon.s9api.XPathCompiler;
 import net.sf.saxon.s9api.XPathSelector;
-import net.sf.saxon.s9api.XQueryCompiler;
 import net.sf.saxon.s9api.XQueryEvaluator;
 import net.sf.saxon.s9api.XQueryExecutable;
 import net.sf.saxon.s9api.XdmNode;
@@ -60,13 +56,6 @@ public class XMLUtils {
 
     private static final Logger LOGR = Logger.getLogger(XMLUtils.class.getPackage().getName());
     private static final XMLInputFactory STAX_FACTORY = initXMLInputFactory();
-    private static final XPathFactory XPATH_FACTORY = initXPathFactory();
-
-    private static XPathFactory initXPathFactory() {
-        XPathFactory factory = XPathFactory.newInstance();
-        return factory;
-    }
-
     private static XMLInputFactory initXMLInputFactory() {
         XMLInputFactory factory = XMLInputFactory.newInstance();
         factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
@@ -218,14 +207,9 @@ public class XMLUtils {
      */
     public static Object evaluateXPath(Node context, String expr, Map<String, String> namespaceBindings,
             QName returnType) throws XPathExpressionException {
-        NamespaceBindings bindings = NamespaceBindings.withStandardBindings();
-        bindings.addAllBindings(namespaceBindings);
-        XPathFactory factory = XPATH_FACTORY;
         // WARNING: If context node is Saxon NodeOverNodeInfo, the factory must
         // use the same Configuration object to avoid IllegalArgumentException
-        XPath xpath = factory.newXPath();
-        xpath.setNamespaceContext(bindings);
-        Object result = xpath.evaluate(expr, context, returnType);
+        Object result = XPathCache.evaluate(context, expr, namespaceBindings, returnType);
         return result;
     }
 
@@ -249,15 +233,8 @@ public class XMLUtils {
      */
     public static XdmValue evaluateXPath2(Source xmlSource, String expr, Map<String, String> nsBindings)
             throws SaxonApiException {
-        Processor proc = new Processor(false);
-        XPathCompiler compiler = proc.newXPathCompiler();
-        if (null != nsBindings) {
-            for (String nsURI : nsBindings.keySet()) {
-                compiler.declareNamespace(nsBindings.get(nsURI), nsURI);
-            }
-        }
-        XPathSelector xpath = compiler.compile(expr).load();
-        DocumentBuilder builder = proc.newDocumentBuilder();
+        XPathSelector xpath = XPathCache.getXPath2Executable(expr, nsBindings).load();
+        DocumentBuilder builder = XPathCache.getProcessor().newDocumentBuilder();
         XdmNode node = null;
         if (DOMSource.class.isInstance(xmlSource)) {
             DOMSource domSource = (DOMSource) xmlSource;
@@ -287,14 +264,7 @@ public class XMLUtils {
      */
     public static XdmValue evaluateXQuery(Source source, String query, Map<String, String> nsBindings)
             throws SaxonApiException {
-        Processor proc = new Processor(false);
-        XQueryCompiler xqCompiler = proc.newXQueryCompiler();
-        if (null != nsBindings) {
-            for (String nsURI : nsBindings.keySet()) {
-                xqCompiler.declareNamespace(nsBindings.get(nsURI), nsURI);
-            }
-        }
-        XQueryExecutable xqExec = xqCompiler.compile(query);
+        XQueryExecutable xqExec = XPathCache.getXQueryExecutable(query, nsBindings);
         XQueryEvaluator xqEval = xqExec.load();
         xqEval.setSource(source);
         return xqEval.evaluate();
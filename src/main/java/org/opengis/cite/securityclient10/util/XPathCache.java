@@ -0,0 +1,296 @@
+package org.opengis.cite.securityclient10.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
+import net.sf.saxon.s9api.XQueryCompiler;
+import net.sf.saxon.s9api.XQueryExecutable;
+
+import org.w3c.dom.Node;
+
+/**
+ * A bounded, thread-safe cache of compiled XPath and XQuery expressions, keyed
+ * by expression and namespace bindings. The least recently used expression is
+ * evicted once the cache is full.
+ *
+ * <p>
+ * JAXP {@link XPathExpression} objects are not thread-safe, so they are only
+ * evaluated through {@link #evaluate(Node, String, Map, QName)}, which
+ * evaluates one expression object on one thread at a time. Saxon executables
+ * are immutable and are returned to the caller; they are compiled with the
+ * shared {@link #getProcessor() processor}, which must also be used to build
+ * the documents they are evaluated against.
+ * </p>
+ */
+public final class XPathCache {
+
+    /**
+     * Maximum number of compiled expressions kept in the cache.
+     */
+    public static final int CAPACITY = 256;
+
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+    private static final Processor PROCESSOR = new Processor(false);
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    private static final Map<Key, Object> CACHE = new LinkedHashMap<Key, Object>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+            if (size() > CAPACITY) {
+                EVICTIONS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private XPathCache() {
+    }
+
+    /**
+     * Evaluates an XPath expression with the JAXP XPath API, compiling it only
+     * if it is not in the cache.
+     *
+     * @param context
+     *            The context node.
+     * @param expr
+     *            An XPath expression.
+     * @param namespaceBindings
+     *            A collection of namespace bindings for the XPath expression,
+     *            where each entry maps a namespace URI (key) to a prefix
+     *            (value). Standard bindings do not need to be declared (see
+     *            {@link NamespaceBindings#withStandardBindings()}. It may be
+     *            {@code null}.
+     * @param returnType
+     *            The desired return type (as declared in
+     *            {@link javax.xml.xpath.XPathConstants}).
+     * @return The result converted to the desired returnType.
+     * @throws XPathExpressionException
+     *             If the expression cannot be compiled or evaluated.
+     */
+    public static Object evaluate(Node context, String expr, Map<String, String> namespaceBindings,
+            QName returnType) throws XPathExpressionException {
+        Key key = new Key(Key.XPATH, expr, namespaceBindings);
+        XPathExpression expression = (XPathExpression) get(key);
+        if (null == expression) {
+            NamespaceBindings bindings = NamespaceBindings.withStandardBindings();
+            bindings.addAllBindings(namespaceBindings);
+            XPath xpath;
+            synchronized (XPATH_FACTORY) {
+                xpath = XPATH_FACTORY.newXPath();
+            }
+            xpath.setNamespaceContext(bindings);
+            expression = (XPathExpression) put(key, xpath.compile(expr));
+        }
+        synchronized (expression) {
+            return expression.evaluate(context, returnType);
+        }
+    }
+
+    /**
+     * Returns a compiled XPath 2.0 expression, compiling it with the shared
+     * Saxon processor only if it is not in the cache.
+     *
+     * @param expr
+     *            An XPath 2.0 expression.
+     * @param nsBindings
+     *            A collection of namespace bindings, where each entry maps a
+     *            namespace URI (key) to a prefix (value); this may be
+     *            {@code null} if not needed.
+     * @return An immutable XPathExecutable; call {@code load()} to evaluate it.
+     * @throws SaxonApiException
+     *             If the expression cannot be compiled.
+     */
+    public static XPathExecutable getXPath2Executable(String expr, Map<String, String> nsBindings)
+            throws SaxonApiException {
+        Key key = new Key(Key.XPATH2, expr, nsBindings);
+        XPathExecutable executable = (XPathExecutable) get(key);
+        if (null == executable) {
+            XPathCompiler compiler = PROCESSOR.newXPathCompiler();
+            for (Map.Entry<String, String> binding : key.bindings.entrySet()) {
+                compiler.declareNamespace(binding.getValue(), binding.getKey());
+            }
+            executable = (XPathExecutable) put(key, compiler.compile(expr));
+        }
+        return executable;
+    }
+
+    /**
+     * Returns a compiled XQuery expression, compiling it with the shared Saxon
+     * processor only if it is not in the cache.
+     *
+     * @param query
+     *            The query expression.
+     * @param nsBindings
+     *            A collection of namespace bindings, where each entry maps a
+     *            namespace URI (key) to a prefix (value); this may be
+     *            {@code null} if not needed.
+     * @return An immutable XQueryExecutable; call {@code load()} to evaluate
+     *         it.
+     * @throws SaxonApiException
+     *             If the query cannot be compiled.
+     */
+    public static XQueryExecutable getXQueryExecutable(String query, Map<String, String> nsBindings)
+            throws SaxonApiException {
+        Key key = new Key(Key.XQUERY, query, nsBindings);
+        XQueryExecutable executable = (XQueryExecutable) get(key);
+        if (null == executable) {
+            XQueryCompiler compiler = PROCESSOR.newXQueryCompiler();
+            for (Map.Entry<String, String> binding : key.bindings.entrySet()) {
+                compiler.declareNamespace(binding.getValue(), binding.getKey());
+            }
+            executable = (XQueryExecutable) put(key, compiler.compile(query));
+        }
+        return executable;
+    }
+
+    /**
+     * Returns the Saxon processor that cached executables are compiled with.
+     *
+     * @return A shared Processor.
+     */
+    public static Processor getProcessor() {
+        return PROCESSOR;
+    }
+
+    /**
+     * @return The number of lookups that found a compiled expression.
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * @return The number of lookups that had to compile the expression.
+     */
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return The number of compiled expressions evicted to stay within
+     *         {@link #CAPACITY}.
+     */
+    public static long getEvictionCount() {
+        return EVICTIONS.get();
+    }
+
+    /**
+     * @return The number of compiled expressions in the cache.
+     */
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * Removes every compiled expression from the cache and resets the
+     * counters.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+        HITS.set(0);
+        MISSES.set(0);
+        EVICTIONS.set(0);
+    }
+
+    /**
+     * Returns a summary of the cache counters, for logging.
+     *
+     * @return A String such as "XPathCache: size=12, hits=340, misses=12, evictions=0".
+     */
+    public static String statistics() {
+        return String.format("XPathCache: size=%d, hits=%d, misses=%d, evictions=%d", size(), getHitCount(),
+                getMissCount(), getEvictionCount());
+    }
+
+    private static Object get(Key key) {
+        Object compiled;
+        synchronized (CACHE) {
+            compiled = CACHE.get(key);
+        }
+        if (null == compiled) {
+            MISSES.incrementAndGet();
+        } else {
+            HITS.incrementAndGet();
+        }
+        return compiled;
+    }
+
+    /**
+     * Adds a compiled expression, unless another thread added one for the same
+     * key while it was being compiled (compilation is done outside the lock).
+     */
+    private static Object put(Key key, Object compiled) {
+        synchronized (CACHE) {
+            Object existing = CACHE.get(key);
+            if (null != existing) {
+                return existing;
+            }
+            CACHE.put(key, compiled);
+            return compiled;
+        }
+    }
+
+    /**
+     * Cache key: the kind of expression, the expression and a copy of its
+     * namespace bindings.
+     */
+    private static final class Key {
+
+        static final int XPATH = 0;
+        static final int XPATH2 = 1;
+        static final int XQUERY = 2;
+
+        final int kind;
+        final String expr;
+        final Map<String, String> bindings;
+        private final int hash;
+
+        Key(int kind, String expr, Map<String, String> nsBindings) {
+            this.kind = kind;
+            this.expr = expr;
+            this.bindings = (null == nsBindings || nsBindings.isEmpty()) ? Collections.<String, String> emptyMap()
+                    : new HashMap<String, String>(nsBindings);
+            this.hash = 31 * (31 * kind + expr.hashCode()) + this.bindings.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return kind == other.kind && expr.equals(other.expr) && bindings.equals(other.bindings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
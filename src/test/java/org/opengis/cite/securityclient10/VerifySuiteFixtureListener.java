@@ -1,5 +1,6 @@
 package org.opengis.cite.securityclient10;
 
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -7,14 +8,18 @@ import static org.mockito.Mockito.when;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Matchers;
+import org.opengis.cite.securityclient10.httpServer.RequestSet;
 import org.testng.ISuite;
 import org.testng.xml.XmlSuite;
+import org.w3c.dom.Document;
 
 public class VerifySuiteFixtureListener {
 
@@ -61,4 +66,29 @@ public class VerifySuiteFixtureListener {
                 Matchers.isA(String.class));
     }
 
+    @Test
+    public void processRequestsHandoff() throws Exception {
+    	Document requests = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    	RequestSet requestSet = RequestSet.fromDocument(requests);
+    	RequestsHandoff.publish("handoff-test", requests, requestSet);
+    	Map<String, String> params = new HashMap<String, String>();
+    	params.put(TestRunArg.Service_Type.toString(), "wms13");
+    	params.put(TestRunArg.REQUESTS_ID.toString(), "handoff-test");
+    	when(xmlSuite.getParameters()).thenReturn(params);
+    	SuiteFixtureListener iut = new SuiteFixtureListener();
+        iut.onStart(suite);
+        verify(suite).setAttribute(SuiteAttribute.TEST_REQUESTS.getName(), requests);
+        verify(suite).setAttribute(SuiteAttribute.TEST_REQUEST_SET.getName(), requestSet);
+        // The document is only handed off once
+        assertNull(RequestsHandoff.take("handoff-test"));
+    }
+
+    @Test
+    public void removeRequestsNotTaken() throws Exception {
+    	Document requests = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    	RequestsHandoff.publish("handoff-removed", requests, RequestSet.fromDocument(requests));
+    	RequestsHandoff.remove("handoff-removed");
+        assertNull(RequestsHandoff.take("handoff-removed"));
+    }
+
 }
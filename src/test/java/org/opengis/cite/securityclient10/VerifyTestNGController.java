@@ -49,4 +49,10 @@ public class VerifyTestNGController {
         this.testRunProps.loadFromXML(getClass().getResourceAsStream(
                 "/test-run-props.xml"));
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectPathOutsideJournalDirectory() {
+        this.testRunProps.setProperty(TestRunArg.Path.toString(), "../session");
+        TestRunArgValidator.validateProperties(this.testRunProps);
+    }
 }
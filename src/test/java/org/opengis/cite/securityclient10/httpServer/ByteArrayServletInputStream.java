@@ -0,0 +1,42 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import java.io.ByteArrayInputStream;
+
+import org.opengis.cite.servlet.ReadListener;
+import org.opengis.cite.servlet.ServletInputStream;
+
+/**
+ * Request body stream over a byte array, for mocked servlet requests.
+ */
+public class ByteArrayServletInputStream extends ServletInputStream {
+
+    private final ByteArrayInputStream input;
+
+    public ByteArrayServletInputStream(byte[] body) {
+        this.input = new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public int read() {
+        return this.input.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        return this.input.read(b, off, len);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return this.input.available() == 0;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+    }
+}
@@ -0,0 +1,86 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opengis.cite.servlet.http.HttpServletRequest;
+
+/**
+ * Builds mocked servlet requests as the servlet hands them to the request
+ * capture. By default a request is a secure HTTP/1.1 request without a query
+ * string, headers or body.
+ */
+public class MockRequestBuilder {
+
+    private final String path;
+    private final String method;
+    private boolean secure = true;
+    private String protocol = "HTTP/1.1";
+    private String queryString = "";
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private byte[] body = new byte[0];
+
+    public MockRequestBuilder(String path, String method) {
+        this.path = path;
+        this.method = method;
+    }
+
+    public MockRequestBuilder secure(boolean secure) {
+        this.secure = secure;
+        return this;
+    }
+
+    public MockRequestBuilder protocol(String protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    public MockRequestBuilder queryString(String queryString) {
+        this.queryString = queryString;
+        return this;
+    }
+
+    public MockRequestBuilder header(String name, String value) {
+        this.headers.put(name, value);
+        return this;
+    }
+
+    public MockRequestBuilder body(String body) {
+        return body(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public MockRequestBuilder body(byte[] body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * @return A new mocked request, whose body can be read once
+     * @throws IOException Declared by the mocked getInputStream method
+     */
+    public HttpServletRequest build() throws IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getPathInfo()).thenReturn(this.path);
+        when(request.getMethod()).thenReturn(this.method);
+        when(request.isSecure()).thenReturn(this.secure);
+        when(request.getProtocol()).thenReturn(this.protocol);
+        when(request.getQueryString()).thenReturn(this.queryString);
+        when(request.getAuthType()).thenReturn("");
+        when(request.getHeaderNames()).thenReturn(
+                Collections.enumeration(new ArrayList<String>(this.headers.keySet())));
+        for (Map.Entry<String, String> header : this.headers.entrySet()) {
+            when(request.getHeader(header.getKey())).thenReturn(header.getValue());
+        }
+        when(request.getCharacterEncoding()).thenReturn("UTF-8");
+        when(request.getContentLength()).thenReturn(this.body.length);
+        when(request.getInputStream()).thenReturn(new ByteArrayServletInputStream(this.body));
+        return request;
+    }
+}
@@ -0,0 +1,189 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Verifies streaming capture of request bodies.
+ */
+public class VerifyBodyCapture {
+
+    public VerifyBodyCapture() {
+    }
+
+    @Test
+    public void captureSmallBodyInMemory() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.BASE64, 16, 64);
+        byte[] body = { 0, 1, 2, (byte) 0xFF };
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream(body));
+
+        assertTrue(captured.isInMemory());
+        assertArrayEquals(body, captured.getBytes());
+        assertEquals(4, captured.getSize());
+        assertFalse(captured.isTruncated());
+    }
+
+    @Test
+    public void spillLargeBodyToFile() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.TEXT, 16, 1024);
+        byte[] body = new byte[100];
+        Arrays.fill(body, (byte) 'a');
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream(body));
+
+        assertNotNull(captured.getFile());
+        assertFalse(captured.isInMemory());
+        assertEquals(0, captured.getBytes().length);
+        assertArrayEquals(body, Files.readAllBytes(captured.getFile()));
+        Files.delete(captured.getFile());
+    }
+
+    @Test
+    public void keepBodyOfThresholdSizeInMemory() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.TEXT, 16, 1024);
+        byte[] body = new byte[16];
+        Arrays.fill(body, (byte) 'a');
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream(body));
+
+        assertNull(captured.getFile());
+        assertTrue(captured.isInMemory());
+        assertArrayEquals(body, captured.getBytes());
+        assertEquals(16, captured.getSize());
+    }
+
+    @Test
+    public void spillBodyOneByteOverThreshold() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.TEXT, 16, 1024);
+        byte[] body = new byte[17];
+        Arrays.fill(body, (byte) 'b');
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream(body));
+
+        assertNotNull(captured.getFile());
+        assertEquals(17, captured.getSize());
+        assertArrayEquals(body, Files.readAllBytes(captured.getFile()));
+        Files.delete(captured.getFile());
+    }
+
+    @Test
+    public void deleteSpillFileOfFailedCapture() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.TEXT, 16, 1024);
+        // Fills the buffer twice, so the body is spilled, then fails like a dropped connection
+        InputStream input = new InputStream() {
+            private int remaining = 40;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Connection reset");
+                }
+                remaining--;
+                return 'a';
+            }
+        };
+        Set<String> before = spillFiles();
+
+        try {
+            capture.capture(input);
+            fail("Expected the read error");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(before, spillFiles());
+    }
+
+    @Test
+    public void deleteSpillFilesOfReleasedRequests() throws Exception {
+        RequestRepresenter requests = new RequestRepresenter(new BodyCapture(BodyCapture.Storage.TEXT, 4, 1024));
+        requests.serializeRequest(new MockRequestBuilder("/nonce", "POST").body("<Execute/>").build());
+        Path file = requests.getRequestSet().getRequests().get(0).getCapturedBody().getFile();
+        assertTrue(Files.exists(file));
+
+        requests.deleteBodyFiles();
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void handOffSpilledBodyAfterRelease() throws Exception {
+        RequestRepresenter requests = new RequestRepresenter(BodyCapture.DEFAULT);
+        // A WPS Execute body one byte larger than the default memory threshold
+        byte[] body = new byte[BodyCapture.DEFAULT_MEMORY_THRESHOLD + 1];
+        Arrays.fill(body, (byte) 'x');
+        byte[] start = "<Execute>".getBytes("UTF-8");
+        System.arraycopy(start, 0, body, 0, start.length);
+        byte[] end = "</Execute>".getBytes("UTF-8");
+        System.arraycopy(end, 0, body, body.length - end.length, end.length);
+
+        requests.serializeRequest(new MockRequestBuilder("/nonce", "POST").body(body).build());
+        assertNotNull(requests.getRequestSet().getRequests().get(0).getCapturedBody().getFile());
+
+        // Copies for the test suite, taken before the session is released
+        RequestSet requestSet = requests.loadRequestSet();
+        Document document = requests.loadDocument();
+        requests.deleteBodyFiles();
+
+        CapturedRequest loaded = requestSet.getRequests().get(0);
+        assertTrue(loaded.getCapturedBody().isInMemory());
+        assertArrayEquals(body, loaded.getBodyBytes());
+        CapturedRequest parsed = RequestSet.fromDocument(document).getRequests().get(0);
+        assertNull(parsed.getCapturedBody().getFile());
+        assertArrayEquals(body, parsed.getBodyBytes());
+        assertEquals(body.length, parsed.getCapturedBody().getSize());
+    }
+
+    @Test
+    public void truncateBodyAtMaximumSize() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.TEXT, 64, 10);
+        byte[] body = new byte[20];
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream(body));
+
+        assertEquals(10, captured.getSize());
+        assertEquals(10, captured.getBytes().length);
+        assertTrue(captured.isTruncated());
+    }
+
+    @Test
+    public void digestOnly() throws Exception {
+        BodyCapture capture = new BodyCapture(BodyCapture.Storage.DIGEST, 4, 1024);
+
+        CapturedBody captured = capture.capture(new ByteArrayInputStream("abc".getBytes("UTF-8")));
+
+        assertNull(captured.getFile());
+        assertEquals(0, captured.getBytes().length);
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", captured.getDigest());
+    }
+
+    private static Set<String> spillFiles() {
+        Set<String> names = new HashSet<String>();
+        String[] files = new File(System.getProperty("java.io.tmpdir")).list();
+        for (String name : files) {
+            if (name.startsWith("ets-security-client10-body-")) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+}
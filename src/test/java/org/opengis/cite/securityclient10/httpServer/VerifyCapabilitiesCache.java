@@ -0,0 +1,67 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Verifies the behavior of the CapabilitiesCache class.
+ */
+public class VerifyCapabilitiesCache {
+
+    private static final String BASE_HREF = "https://localhost:10080/session";
+
+    public VerifyCapabilitiesCache() {
+    }
+
+    @Test
+    public void getCachedDocument() {
+        CapabilitiesCache cache = new CapabilitiesCache(4);
+        ServerOptions options = new ServerOptions("wms13");
+        byte[] document = "<WMS_Capabilities/>".getBytes();
+        cache.put(options, BASE_HREF, false, document);
+        assertSame(document, cache.get(options, BASE_HREF, false));
+    }
+
+    @Test
+    public void keyIncludesEveryInput() {
+        CapabilitiesCache cache = new CapabilitiesCache(4);
+        ServerOptions options = new ServerOptions("wms13");
+        cache.put(options, BASE_HREF, false, new byte[0]);
+
+        assertNull("Complete capabilities must not share a partial document.",
+                cache.get(options, BASE_HREF, true));
+        assertNull("Another base URL must not share a document.",
+                cache.get(options, BASE_HREF + "/full", false));
+        assertNull("Another service type must not share a document.",
+                cache.get(new ServerOptions("wms111"), BASE_HREF, false));
+
+        options.setCors(true);
+        assertNull("Changed server options must not share a document.",
+                cache.get(options, BASE_HREF, false));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        CapabilitiesCache cache = new CapabilitiesCache(2);
+        ServerOptions options = new ServerOptions("wps20");
+        cache.put(options, BASE_HREF + "1", false, new byte[0]);
+        cache.put(options, BASE_HREF + "2", false, new byte[0]);
+        // Touch the first document so the second becomes the eldest
+        assertNotNull(cache.get(options, BASE_HREF + "1", false));
+        cache.put(options, BASE_HREF + "3", false, new byte[0]);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(options, BASE_HREF + "1", false));
+        assertNull(cache.get(options, BASE_HREF + "2", false));
+        assertNotNull(cache.get(options, BASE_HREF + "3", false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonPositiveSize() {
+        new CapabilitiesCache(0);
+    }
+}
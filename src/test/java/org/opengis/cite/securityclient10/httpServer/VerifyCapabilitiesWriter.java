@@ -0,0 +1,64 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Verifies the output of the CapabilitiesWriter class.
+ */
+public class VerifyCapabilitiesWriter {
+
+    private static final String OWS = "http://www.opengis.net/ows/1.1";
+    private static final String XLINK = "http://www.w3.org/1999/xlink";
+
+    public VerifyCapabilitiesWriter() {
+    }
+
+    @Test
+    public void writeIndentedDocument() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CapabilitiesWriter writer = new CapabilitiesWriter(output);
+        writer.startDocument();
+        writer.startElement("ows", "Operation", OWS);
+        writer.namespace("ows", OWS);
+        writer.namespace("xlink", XLINK);
+        writer.attribute("name", "GetCapabilities");
+        writer.startElement("ows", "DCP", OWS);
+        writer.emptyElement("ows", "Get", OWS);
+        writer.attribute("xlink", "href", XLINK, "https://localhost/a?b=1&c=2");
+        writer.endElement();
+        writer.textElement("ows", "Value", OWS, "GET");
+        writer.endDocument();
+
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ows:Operation xmlns:ows=\"" + OWS + "\" xmlns:xlink=\"" + XLINK + "\" name=\"GetCapabilities\">\n"
+                + "   <ows:DCP>\n"
+                + "      <ows:Get xlink:href=\"https://localhost/a?b=1&amp;c=2\"/>\n"
+                + "   </ows:DCP>\n"
+                + "   <ows:Value>GET</ows:Value>\n"
+                + "</ows:Operation>\n";
+        assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writeDoctype() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CapabilitiesWriter writer = new CapabilitiesWriter(output);
+        writer.startDocument("WMT_MS_Capabilities", "http://example.org/capabilities.dtd");
+        writer.startElement("WMT_MS_Capabilities");
+        writer.attribute("version", "1.1.1");
+        writer.textElement("Name", "WMS");
+        writer.endDocument();
+
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE WMT_MS_Capabilities SYSTEM \"http://example.org/capabilities.dtd\">\n"
+                + "<WMT_MS_Capabilities version=\"1.1.1\">\n"
+                + "   <Name>WMS</Name>\n"
+                + "</WMT_MS_Capabilities>\n";
+        assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,140 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.cite.servlet.ServletOutputStream;
+import org.opengis.cite.servlet.WriteListener;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+
+/**
+ * Verifies that a single emulated server instance can handle concurrent requests for its test session.
+ */
+public class VerifyEmulatedServer {
+
+    private static final int REQUEST_COUNT = 1000;
+    private static final int THREAD_COUNT = 16;
+
+    private static ExecutorService executor;
+
+    public VerifyEmulatedServer() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void handleConcurrentRequests() throws Exception {
+        final EmulatedServer server = new ServerWms13(new ServerOptions("wms13"));
+
+        List<Callable<Void>> requests = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            final String path = "/session" + i;
+            final boolean capabilities = (i % 2 == 0);
+            requests.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    StringWriter writer = new StringWriter();
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    HttpServletRequest request = mockRequest(path, capabilities ? "GetCapabilities" : "GetMap");
+                    HttpServletResponse response = mockResponse(writer, output);
+
+                    server.handleRequest(request, response);
+
+                    if (capabilities) {
+                        // Every session has its own base URL, so each capabilities document is built
+                        // rather than taken from the cache
+                        String body = new String(output.toByteArray(), StandardCharsets.UTF_8);
+                        assertTrue("Missing capabilities for " + path, body.contains("<WMS_Capabilities"));
+                        assertTrue("Wrong base URL for " + path,
+                                body.contains("xlink:href=\"https://localhost:10080" + path + "\""));
+                    } else {
+                        String body = writer.toString();
+                        assertTrue("Missing exception for " + path, body.contains("ServiceExceptionReport"));
+                        assertTrue(body.contains("Operation not supported by test server"));
+                    }
+                    return null;
+                }
+            });
+        }
+        Collections.shuffle(requests);
+
+        List<Future<Void>> futures = executor.invokeAll(requests);
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    @Test
+    public void handlerOptionsCreateOneServerPerSession() throws Exception {
+        HandlerOptions options = new HandlerOptions(new ServerOptions("wps20"));
+        assertTrue(options.getEmulatedServer() instanceof ServerWps20);
+        assertEquals(options.getEmulatedServer(), options.getEmulatedServer());
+    }
+
+    private static HttpServletRequest mockRequest(String path, String requestValue) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("service", "WMS");
+        parameters.put("request", requestValue);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameterNames()).thenReturn(Collections.enumeration(parameters.keySet()));
+        when(request.getParameter("service")).thenReturn("WMS");
+        when(request.getParameter("request")).thenReturn(requestValue);
+        when(request.getPathInfo()).thenReturn(path);
+        when(request.getRequestURI()).thenReturn(path);
+        when(request.getScheme()).thenReturn("https");
+        when(request.getServerName()).thenReturn("localhost");
+        when(request.getServerPort()).thenReturn(10080);
+        return request;
+    }
+
+    private static HttpServletResponse mockResponse(StringWriter writer, final ByteArrayOutputStream output)
+            throws Exception {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(writer, true));
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                output.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        return response;
+    }
+}
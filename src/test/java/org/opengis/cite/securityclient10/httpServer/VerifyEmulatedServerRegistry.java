@@ -0,0 +1,43 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Verifies the emulated server factories are discovered by the EmulatedServerRegistry class.
+ */
+public class VerifyEmulatedServerRegistry {
+
+    public VerifyEmulatedServerRegistry() {
+    }
+
+    @Test
+    public void loadServiceTypes() {
+        assertEquals(new HashSet<String>(Arrays.asList("wms111", "wms13", "wps20")),
+                EmulatedServerRegistry.getServiceTypes());
+    }
+
+    @Test
+    public void createServerForServiceType() {
+        assertTrue(EmulatedServerRegistry.createServer(new ServerOptions("wms111")) instanceof ServerWms111);
+        assertTrue(EmulatedServerRegistry.createServer(new ServerOptions("wms13")) instanceof ServerWms13);
+        assertTrue(EmulatedServerRegistry.createServer(new ServerOptions("wps20")) instanceof ServerWps20);
+    }
+
+    @Test
+    public void unknownServiceTypeHasNoFactory() {
+        assertNull(EmulatedServerRegistry.getFactory("wfs20"));
+        assertNull(EmulatedServerRegistry.getFactory(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createServerForUnknownServiceType() {
+        EmulatedServerRegistry.createServer(new ServerOptions("wfs20"));
+    }
+}
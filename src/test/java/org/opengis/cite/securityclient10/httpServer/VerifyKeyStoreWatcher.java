@@ -0,0 +1,130 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.cite.jetty.util.ssl.SslContextFactory;
+
+/**
+ * Verifies that the KeyStoreWatcher class reloads the SSL context of a server when its KeyStore changes.
+ */
+public class VerifyKeyStoreWatcher {
+
+    private static final String PASSWORD = "ets-security-client";
+
+    private File keystore;
+
+    private SslContextFactory sslContextFactory;
+
+    public VerifyKeyStoreWatcher() {
+    }
+
+    @Before
+    public void copyKeystore() throws Exception {
+        keystore = File.createTempFile("security", ".jks");
+        copySampleKeystore();
+        sslContextFactory = mock(SslContextFactory.class);
+        when(sslContextFactory.getSslContext()).thenReturn(SslContextCache.getSslContext(keystore, PASSWORD));
+    }
+
+    @After
+    public void deleteKeystore() {
+        keystore.delete();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reloadChangedKeystore() throws Exception {
+        KeyStoreWatcher watcher = new KeyStoreWatcher(keystore.getPath(), PASSWORD, sslContextFactory);
+        // Rewriting the same KeyStore is not a change
+        copySampleKeystore();
+        assertFalse(watcher.reload());
+        verify(sslContextFactory, never()).reload(any(Consumer.class));
+
+        VerifySslContextCache.writeRotatedKeystore(keystore, PASSWORD);
+        assertTrue(watcher.reload());
+        assertFalse(watcher.reload());
+        verify(sslContextFactory).reload(any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void reloadKeystoreOfSameSizeAndTime() throws Exception {
+        VerifySslContextCache.writeRotatedKeystore(keystore, PASSWORD);
+        when(sslContextFactory.getSslContext()).thenReturn(SslContextCache.getSslContext(keystore, PASSWORD));
+        long length = keystore.length();
+        long lastModified = keystore.lastModified();
+        KeyStoreWatcher watcher = new KeyStoreWatcher(keystore.getPath(), PASSWORD, sslContextFactory);
+
+        // A rotation that the file size and modification time do not show
+        VerifySslContextCache.writeRotatedKeystore(keystore, PASSWORD);
+        keystore.setLastModified(lastModified);
+        assertEquals(length, keystore.length());
+
+        assertTrue(watcher.reload());
+        verify(sslContextFactory).reload(any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void keepKeyOfUnreadableKeystore() throws Exception {
+        KeyStoreWatcher watcher = new KeyStoreWatcher(keystore.getPath(), PASSWORD, sslContextFactory);
+        Files.write(keystore.toPath(), "not a keystore".getBytes(StandardCharsets.US_ASCII));
+
+        assertFalse(watcher.reload());
+        verify(sslContextFactory, never()).reload(any(Consumer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void watchReplacedKeystore() throws Exception {
+        final CountDownLatch reloaded = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                reloaded.countDown();
+                return null;
+            }
+        }).when(sslContextFactory).reload(any(Consumer.class));
+
+        KeyStoreWatcher watcher = new KeyStoreWatcher(keystore.getPath(), PASSWORD, sslContextFactory);
+        watcher.start();
+        try {
+            // Replace the KeyStore by moving a new file over it
+            File rotated = File.createTempFile("rotated", ".jks", keystore.getParentFile());
+            VerifySslContextCache.writeRotatedKeystore(rotated, PASSWORD);
+            Files.move(rotated.toPath(), keystore.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            assertTrue(reloaded.await(30, TimeUnit.SECONDS));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private void copySampleKeystore() throws Exception {
+        try (InputStream input = getClass().getResourceAsStream("/security.jks")) {
+            Files.copy(input, keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
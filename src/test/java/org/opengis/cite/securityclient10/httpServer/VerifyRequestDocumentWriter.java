@@ -0,0 +1,96 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Verifies streaming output of requests documents.
+ */
+public class VerifyRequestDocumentWriter {
+
+    public VerifyRequestDocumentWriter() {
+    }
+
+    @Test
+    public void appendRequestsAsTheyArrive() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RequestDocumentWriter writer = new RequestDocumentWriter(output);
+        writer.append(representer.serializeRequest(new MockRequestBuilder("/nonce", "GET").build()));
+        writer.append(representer.serializeRequest(new MockRequestBuilder("/nonce", "POST")
+                .body("<Execute/>").build()));
+        writer.close();
+
+        RequestSet requestSet = RequestSet.fromDocument(parse(new ByteArrayInputStream(output.toByteArray())));
+        assertEquals(2, requestSet.size());
+        assertEquals("GET", requestSet.getRequests().get(0).getMethod());
+        assertEquals("<Execute/>", requestSet.getRequests("POST").get(0).getBody());
+    }
+
+    @Test
+    public void saveGzipDocument() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce", "POST").body("<Execute/>").build());
+        Path path = Files.createTempFile("requests-", ".xml.gz");
+
+        try {
+            representer.saveToPath(path);
+
+            Document document;
+            try (InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+                document = parse(input);
+            }
+            RequestSet requestSet = RequestSet.fromDocument(document);
+            assertEquals(1, requestSet.size());
+            assertEquals("<Execute/>", requestSet.getRequests().get(0).getBody());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void writeSessionRequestsAsTheyArrive() throws Exception {
+        ServerOptions serverOptions = new ServerOptions("wms13");
+        // Spill every body larger than 4 bytes to a file
+        serverOptions.setBodyCapture(new BodyCapture(BodyCapture.Storage.TEXT, 4, 1024));
+        HandlerOptions options = new HandlerOptions(serverOptions);
+        Path path = Files.createTempFile("requests-", ".xml");
+
+        try {
+            options.openRequestsFile(path);
+            options.saveRequest(new MockRequestBuilder("/nonce", "GET").build());
+            // The request is on disk before the session ends
+            assertTrue(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).contains("<Request "));
+
+            options.saveRequest(new MockRequestBuilder("/nonce", "POST").body("<Execute/>").build());
+            options.closeRequestsFile();
+            options.deleteBodyFiles();
+
+            RequestSet requestSet;
+            try (InputStream input = Files.newInputStream(path)) {
+                requestSet = RequestSet.fromDocument(parse(input));
+            }
+            assertEquals(2, requestSet.size());
+            assertEquals("<Execute/>", requestSet.getRequests("POST").get(0).getBody());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Document parse(InputStream input) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(input);
+    }
+}
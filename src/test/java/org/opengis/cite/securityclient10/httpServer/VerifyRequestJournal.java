@@ -0,0 +1,145 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that captured requests can be recovered from a request journal.
+ */
+public class VerifyRequestJournal {
+
+    private Path path;
+
+    public VerifyRequestJournal() {
+    }
+
+    @Before
+    public void createJournalPath() throws Exception {
+        this.path = Files.createTempFile("requests-", ".journal");
+    }
+
+    @After
+    public void deleteJournalPath() throws Exception {
+        Files.deleteIfExists(this.path);
+    }
+
+    @Test
+    public void rebuildDocumentFromJournal() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        try (RequestJournal journal = RequestJournal.open(this.path)) {
+            journal.append(representer.serializeRequest(new MockRequestBuilder("/nonce", "GET").build()));
+            journal.append(representer.serializeRequest(new MockRequestBuilder("/nonce/saml2", "POST")
+                    .body("SAMLResponse=x").build()));
+        }
+
+        RequestSet requestSet = RequestSet.fromDocument(RequestJournal.readDocument(this.path));
+        assertEquals(2, requestSet.size());
+        assertEquals("SAMLResponse=x", requestSet.getRequestsByPathSuffix("/saml2").get(0).getBody());
+    }
+
+    @Test
+    public void restoreRequestsWhenReopened() throws Exception {
+        ServerOptions options = new ServerOptions("wms13");
+        options.setAuthentication("saml2");
+        options.setIdpUrl("https://idp.example.com/sso");
+
+        HandlerOptions first = new HandlerOptions(options);
+        first.openJournal(this.path);
+        first.saveRequest(new MockRequestBuilder("/nonce", "GET").build());
+
+        // A new handler for the same session, as after the test suite was restarted
+        HandlerOptions second = new HandlerOptions(options);
+        second.openJournal(this.path);
+        assertEquals(1, second.getRequestCount());
+        assertEquals("GET", second.getRequests().getRequestSet().getRequests().get(0).getMethod());
+
+        second.saveRequest(new MockRequestBuilder("/nonce/saml2", "POST").body("SAMLResponse=x").build());
+        second.deleteJournal();
+        assertEquals(false, Files.exists(this.path));
+    }
+
+    @Test
+    public void keepRequestsOfRegisteredSession() throws Exception {
+        ServerOptions options = new ServerOptions("wms13");
+        HandlerOptions registered = new HandlerOptions(options);
+        registered.openJournal(this.path);
+        registered.saveRequest(new MockRequestBuilder("/nonce", "GET").build());
+
+        // A second session for the same path, released after its registration failed
+        HandlerOptions duplicate = new HandlerOptions(options);
+        duplicate.openJournal(this.path);
+        registered.saveRequest(new MockRequestBuilder("/nonce/saml2", "POST").body("SAMLResponse=x").build());
+        duplicate.closeJournal();
+
+        registered.closeJournal();
+        assertEquals(2, RequestSet.fromDocument(RequestJournal.readDocument(this.path)).size());
+    }
+
+    @Test
+    public void ignoreIncompleteRecord() throws Exception {
+        try (RequestJournal journal = RequestJournal.open(this.path)) {
+            journal.append(new RequestRepresenter().serializeRequest(
+                    new MockRequestBuilder("/nonce", "GET").build()));
+        }
+        // Simulate a record whose body was being written when the JVM stopped
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(12);
+            record.putInt(100).putInt(0).put("<Re".getBytes(StandardCharsets.UTF_8)).put((byte) 0);
+            record.flip();
+            channel.write(record, channel.size());
+        }
+
+        try (RequestJournal journal = RequestJournal.open(this.path)) {
+            assertEquals(1, journal.getRecoveredRequests().size());
+        }
+    }
+
+    @Test
+    public void keepFileThatIsNotJournal() throws Exception {
+        byte[] content = "<HttpRequestSet/>".getBytes(StandardCharsets.UTF_8);
+        Files.write(this.path, content);
+        try {
+            RequestJournal.open(this.path).close();
+            fail("Opened a file that is not a journal");
+        } catch (IOException e) {
+            assertArrayEquals(content, Files.readAllBytes(this.path));
+        }
+    }
+
+    @Test
+    public void deleteStaleJournals() throws Exception {
+        Path directory = Files.createTempDirectory("journals");
+        Path stale = Files.createFile(directory.resolve("requests-stale.journal"));
+        Path recent = Files.createFile(directory.resolve("requests-recent.journal"));
+        Path other = Files.createFile(directory.resolve("other.journal"));
+        FileTime twoDaysAgo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+        Files.setLastModifiedTime(stale, twoDaysAgo);
+        Files.setLastModifiedTime(other, twoDaysAgo);
+
+        try {
+            assertEquals(1, RequestJournal.deleteStale(directory, "requests-*.journal", 24, TimeUnit.HOURS));
+            assertEquals(false, Files.exists(stale));
+            assertEquals(true, Files.exists(recent));
+            assertEquals(true, Files.exists(other));
+        } finally {
+            Files.deleteIfExists(recent);
+            Files.deleteIfExists(other);
+            Files.delete(directory);
+        }
+    }
+}
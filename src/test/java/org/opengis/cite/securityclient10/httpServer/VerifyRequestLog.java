@@ -0,0 +1,100 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.cite.securityclient10.util.TestSuiteLogger;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+
+/**
+ * Verifies that requests recorded in the access log are written through the test suite logger.
+ */
+public class VerifyRequestLog {
+
+    private static final Logger LOGR = Logger.getLogger(TestSuiteLogger.class.getPackage().getName());
+
+    private final BlockingQueue<LogRecord> records = new LinkedBlockingQueue<LogRecord>();
+    private Handler handler;
+    private Level originalLevel;
+
+    public VerifyRequestLog() {
+    }
+
+    @Before
+    public void addHandler() {
+        this.handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        this.handler.setLevel(Level.ALL);
+        this.originalLevel = LOGR.getLevel();
+        LOGR.addHandler(this.handler);
+    }
+
+    @After
+    public void removeHandler() {
+        LOGR.removeHandler(this.handler);
+        LOGR.setLevel(this.originalLevel);
+    }
+
+    @Test
+    public void recordAccessLine() throws Exception {
+        LOGR.setLevel(RequestLog.ACCESS_LEVEL);
+        RequestLog.record(mockRequest(), "wms13");
+
+        LogRecord record = this.records.poll(5, TimeUnit.SECONDS);
+        assertEquals(RequestLog.ACCESS_LEVEL, record.getLevel());
+        assertTrue(record.getMessage().contains("service=wms13"));
+        assertTrue(record.getMessage().contains("path=/nonce/full"));
+        assertTrue(record.getMessage().contains("query=service=WMS&request=GetCapabilities"));
+        assertTrue(record.getMessage().contains("https=true"));
+    }
+
+    @Test
+    public void recordHeadersAtHeaderLevel() throws Exception {
+        LOGR.setLevel(RequestLog.HEADER_LEVEL);
+        RequestLog.record(mockRequest(), "wms13");
+
+        LogRecord accessRecord = this.records.poll(5, TimeUnit.SECONDS);
+        LogRecord headerRecord = this.records.poll(5, TimeUnit.SECONDS);
+        assertEquals(RequestLog.ACCESS_LEVEL, accessRecord.getLevel());
+        assertEquals(RequestLog.HEADER_LEVEL, headerRecord.getLevel());
+        assertTrue(headerRecord.getMessage().contains("Host: localhost:10080"));
+    }
+
+    private static HttpServletRequest mockRequest() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getPathInfo()).thenReturn("/nonce/full");
+        when(request.getMethod()).thenReturn("GET");
+        when(request.isSecure()).thenReturn(true);
+        when(request.getQueryString()).thenReturn("service=WMS&request=GetCapabilities");
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(Arrays.asList("Host")));
+        when(request.getHeader("Host")).thenReturn("localhost:10080");
+        return request;
+    }
+}
@@ -0,0 +1,111 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Verifies the typed, indexed views of the requests captured by RequestRepresenter.
+ */
+public class VerifyRequestSet {
+
+    public VerifyRequestSet() {
+    }
+
+    @Test
+    public void readRequestsFromDocument() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce/full", "GET")
+                .queryString("service=WMS&request=GetCapabilities").header("Host", "localhost:10080").build());
+        representer.serializeRequest(new MockRequestBuilder("/nonce/saml2", "POST")
+                .secure(false).body("<Execute/>").build());
+
+        RequestSet requests = RequestSet.fromDocument(representer.getDocument());
+
+        assertEquals(2, requests.size());
+        assertFalse(requests.isAllHttps());
+        assertEquals(1, requests.getRequests("GET").size());
+        assertEquals(0, requests.getRequests("PUT").size());
+
+        CapturedRequest get = requests.getRequests("GET").get(0);
+        assertTrue(get.isHttps());
+        assertEquals("service=WMS&request=GetCapabilities", get.getQueryString());
+        assertEquals("localhost:10080", get.getHeader("host"));
+
+        CapturedRequest post = requests.getRequests().get(1);
+        assertEquals("POST", post.getMethod());
+        assertEquals("<Execute/>", post.getBody());
+    }
+
+    @Test
+    public void indexCapturedRequests() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce", "GET")
+                .queryString("SERVICE=WMS&REQUEST=GetCapabilities").build());
+        representer.serializeRequest(new MockRequestBuilder("/nonce/full", "GET")
+                .queryString("service=WMS&request=GetMap&layers=a%2Cb").build());
+        representer.serializeRequest(new MockRequestBuilder("/nonce/saml2", "POST")
+                .body("SAMLResponse=x").build());
+
+        RequestSet requests = representer.getRequestSet();
+
+        assertTrue(requests.isAllHttps());
+        assertEquals(2, requests.getRequests("GET").size());
+        assertEquals(1, requests.getRequestsByPathSuffix("").size());
+        assertEquals(1, requests.getRequestsByPathSuffix("/saml2").size());
+
+        CapturedRequest full = requests.getRequestsByPathSuffix("/full").get(0);
+        assertEquals("GetMap", full.getQueryParameter("REQUEST"));
+        assertEquals("a,b", full.getQueryParameter("layers"));
+
+        CapturedRequest saml2 = requests.getRequestsByPathSuffix("/saml2").get(0);
+        assertEquals("SAMLResponse=x", new String(saml2.getBodyBytes(), "UTF-8"));
+        assertEquals(14, saml2.getContentLength());
+    }
+
+    @Test
+    public void readPathFromDocument() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce/full", "GET").build());
+
+        RequestSet requests = RequestSet.fromDocument(representer.getDocument());
+        assertEquals("/nonce/full", requests.getRequests().get(0).getPath());
+        assertEquals(1, requests.getRequestsByPathSuffix("/full").size());
+    }
+
+    @Test
+    public void readProtocolFromDocument() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce/full", "GET").protocol("HTTP/2.0").build());
+
+        RequestSet requests = RequestSet.fromDocument(representer.getDocument());
+        assertEquals("HTTP/2.0", requests.getRequests().get(0).getProtocol());
+        assertEquals("HTTP/2.0", representer.getRequestSet().getRequests().get(0).getProtocol());
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLateRequests() throws Exception {
+        HandlerOptions options = new HandlerOptions(new ServerOptions("wms13"));
+        options.saveRequest(new MockRequestBuilder("/nonce/full", "GET")
+                .queryString("service=WMS&request=GetCapabilities").build());
+
+        RequestsSnapshot snapshot = options.snapshotRequests();
+        options.saveRequest(new MockRequestBuilder("/nonce/full", "GET")
+                .queryString("service=WMS&request=GetMap").build());
+
+        assertEquals(1, snapshot.getRequestSet().size());
+        assertEquals(1, snapshot.getDocument().getElementsByTagName("Request").getLength());
+        assertEquals(1, RequestSet.fromDocument(snapshot.getDocument()).size());
+        assertEquals(2, options.getRequests().getRequestSet().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void requestsAreReadOnly() throws Exception {
+        RequestRepresenter representer = new RequestRepresenter();
+        representer.serializeRequest(new MockRequestBuilder("/nonce", "GET").build());
+
+        RequestSet.fromDocument(representer.getDocument()).getRequests().clear();
+    }
+}
@@ -0,0 +1,188 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.net.BindException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Verifies the lifecycle of the servers of the ServerManager class.
+ */
+public class VerifyServerManager {
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final int[] PORTS = new int[] { 10080 };
+
+    public VerifyServerManager() {
+    }
+
+    /**
+     * Manager that creates mock servers and counts them, instead of starting Jetty.
+     */
+    private static class MockServerManager extends ServerManager {
+        final AtomicInteger started = new AtomicInteger();
+        volatile boolean failStart;
+
+        MockServerManager(long idleTimeout, TimeUnit unit) {
+            super(idleTimeout, unit);
+        }
+
+        @Override
+        protected TestServer startServer(String host, int[] ports, String jks_path, String jks_password)
+                throws Exception {
+            if (failStart) {
+                throw new BindException("Address already in use");
+            }
+            started.incrementAndGet();
+            return mock(TestServer.class);
+        }
+    }
+
+    @Test
+    public void acquireSharesOneServer() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        TestServer first = manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        TestServer second = manager.acquire(HOST, PORTS, "keystore.jks", "password");
+
+        assertSame(first, second);
+        assertEquals(1, manager.started.get());
+        assertEquals(2, manager.getSessionCount(HOST, PORTS));
+    }
+
+    @Test
+    public void concurrentAcquireStartsOneServer() throws Exception {
+        final MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<TestServer>> servers = new ArrayList<Future<TestServer>>();
+        for (int i = 0; i < 8; i++) {
+            servers.add(executor.submit(new Callable<TestServer>() {
+                @Override
+                public TestServer call() throws Exception {
+                    start.await();
+                    return manager.acquire(HOST, PORTS, "keystore.jks", "password");
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<TestServer> server : servers) {
+            assertSame(servers.get(0).get(), server.get());
+        }
+        executor.shutdown();
+
+        assertEquals(1, manager.started.get());
+        assertEquals(8, manager.getSessionCount(HOST, PORTS));
+    }
+
+    @Test
+    public void separateServerForEachPortPool() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        manager.acquire(HOST, new int[] { 10081, 10082 }, "keystore.jks", "password");
+
+        assertEquals(2, manager.started.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectOverlappingPortPool() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        manager.acquire(HOST, new int[] { 10080, 10081 }, "keystore.jks", "password");
+    }
+
+    @Test
+    public void reuseOverlappingPortsOfStoppedServer() throws Exception {
+        MockServerManager manager = new MockServerManager(0, TimeUnit.SECONDS);
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        manager.release(HOST, PORTS);
+        manager.acquire(HOST, new int[] { 10080, 10081 }, "keystore.jks", "password");
+
+        assertEquals(2, manager.started.get());
+    }
+
+    @Test
+    public void rejectDifferentKeystore() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        try {
+            manager.acquire(HOST, PORTS, "other.jks", "password");
+            fail("Expected the keystore to be rejected");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            manager.acquire(HOST, PORTS, "keystore.jks", "other");
+            fail("Expected the keystore password to be rejected");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        assertEquals(1, manager.getSessionCount(HOST, PORTS));
+    }
+
+    @Test
+    public void releaseLastSessionStopsServer() throws Exception {
+        MockServerManager manager = new MockServerManager(0, TimeUnit.SECONDS);
+        TestServer server = manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+
+        manager.release(HOST, PORTS);
+        assertTrue(manager.isRunning(HOST, PORTS));
+        manager.release(HOST, PORTS);
+
+        assertFalse(manager.isRunning(HOST, PORTS));
+        verify(server).shutdown();
+    }
+
+    @Test
+    public void acquireDuringIdleTimeoutKeepsServer() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        TestServer server = manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        manager.release(HOST, PORTS);
+        TestServer reacquired = manager.acquire(HOST, PORTS, "keystore.jks", "password");
+
+        assertSame(server, reacquired);
+        assertEquals(1, manager.started.get());
+        verify(server, never()).shutdown();
+    }
+
+    @Test
+    public void failedStartIsNotCounted() throws Exception {
+        MockServerManager manager = new MockServerManager(1, TimeUnit.MINUTES);
+        manager.failStart = true;
+        try {
+            manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        } catch (BindException e) {
+            // Expected
+        }
+        manager.failStart = false;
+
+        assertEquals(0, manager.getSessionCount(HOST, PORTS));
+        assertFalse(manager.isRunning(HOST, PORTS));
+        manager.acquire(HOST, PORTS, "keystore.jks", "password");
+        assertEquals(1, manager.started.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseWithoutAcquire() {
+        new MockServerManager(1, TimeUnit.MINUTES).release(HOST, PORTS);
+    }
+}
@@ -0,0 +1,59 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+import org.opengis.cite.servlet.http.HttpServletResponse;
+
+/**
+ * Verifies the synthetic requests of the ServerWarmup class.
+ */
+public class VerifyServerWarmup {
+
+    public VerifyServerWarmup() {
+    }
+
+    @Test
+    public void warmUpEveryServiceType() {
+        assertEquals(EmulatedServerRegistry.getServiceTypes().size(), ServerWarmup.warmUpEmulatedServers());
+    }
+
+    @Test
+    public void serviceNameWithoutVersion() {
+        assertEquals("WMS", ServerWarmup.serviceName("wms13"));
+        assertEquals("WMS", ServerWarmup.serviceName("wms111"));
+        assertEquals("WPS", ServerWarmup.serviceName("wps20"));
+    }
+
+    @Test
+    public void syntheticRequestHasQueryParameters() {
+        HttpServletRequest request = ServerWarmup.syntheticRequest("GET", "/warmup/full",
+                "service=WMS&request=GetCapabilities");
+        assertEquals("/warmup/full", request.getPathInfo());
+        assertEquals("WMS", request.getParameter("service"));
+        assertEquals(2, Collections.list(request.getParameterNames()).size());
+        assertTrue(request.isSecure());
+    }
+
+    @Test
+    public void syntheticFullRequestRedirectsToIdp() throws Exception {
+        ServerOptions options = new ServerOptions("wms13");
+        options.setAuthentication("saml2");
+        options.setIdpUrl("https://localhost/idp/saml2");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        new ServerWms13(options).handleRequest(ServerWarmup.syntheticRequest("GET", "/warmup/full",
+                "service=WMS&request=GetCapabilities"), response);
+
+        verify(response).setStatus(HttpServletResponse.SC_FOUND);
+        verify(response).setHeader(eq("Location"), anyString());
+    }
+}
@@ -0,0 +1,175 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.cite.servlet.http.HttpServletRequest;
+
+/**
+ * Verifies the behavior of the SessionRegistry class when many test sessions are registered, receive
+ * requests and are removed from concurrent threads.
+ */
+public class VerifySessionRegistry {
+
+    private static final int SESSION_COUNT = 2000;
+    private static final int THREAD_COUNT = 16;
+
+    private static ExecutorService executor;
+    private static HttpServletRequest request;
+
+    public VerifySessionRegistry() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.isSecure()).thenReturn(true);
+        when(request.getQueryString()).thenReturn("service=WMS&request=GetCapabilities");
+        when(request.getCharacterEncoding()).thenReturn("UTF-8");
+        when(request.getContentLength()).thenReturn(0);
+        when(request.getHeaderNames()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return Collections.emptyEnumeration();
+            }
+        });
+        try {
+            when(request.getInputStream()).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) {
+                    return new ByteArrayServletInputStream(new byte[0]);
+                }
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registerDuplicatePath() throws Exception {
+        SessionRegistry registry = new SessionRegistry();
+        registry.register("duplicate", new HandlerOptions(new ServerOptions("wms13")));
+        registry.register("duplicate", new HandlerOptions(new ServerOptions("wms13")));
+    }
+
+    @Test
+    public void assignLeastLoadedPort() throws Exception {
+        SessionRegistry registry = new SessionRegistry();
+        int[] ports = new int[] { 10080, 10081, 10082 };
+        for (int i = 0; i < 6; i++) {
+            HandlerOptions options = new HandlerOptions(new ServerOptions("wms13"));
+            options.setPort(registry.assignPort(ports));
+            registry.register("session" + i, options);
+        }
+        assertEquals(10080, registry.get("session3").getPort());
+        assertEquals(10082, registry.get("session5").getPort());
+
+        // A removed session frees its port for the next session
+        registry.remove("session4");
+        assertEquals(10081, registry.assignPort(ports));
+    }
+
+    @Test
+    public void removeUnknownPath() {
+        SessionRegistry registry = new SessionRegistry();
+        assertNull(registry.remove("unknown"));
+    }
+
+    @Test
+    public void registerAndCompleteSessionsInParallel() throws Exception {
+        final SessionRegistry registry = new SessionRegistry();
+        final ServerOptions serverOptions = new ServerOptions("wms13");
+        serverOptions.setAuthentication("saml2");
+        serverOptions.setIdpUrl("https://idp.example.org/sso");
+        final int expectedCount = serverOptions.getExpectedRequestCount();
+
+        List<Callable<Void>> registrations = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            final String path = "session" + i;
+            registrations.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    registry.register(path, new HandlerOptions(serverOptions));
+                    return null;
+                }
+            });
+        }
+        awaitAll(executor.invokeAll(registrations));
+        assertEquals("Unexpected number of registered sessions.", SESSION_COUNT, registry.size());
+
+        // Interleave the requests for every session across the worker threads, completing each
+        // session the same way the servlet does.
+        List<Callable<Void>> requests = new ArrayList<Callable<Void>>();
+        for (int r = 0; r < expectedCount; r++) {
+            for (int i = 0; i < SESSION_COUNT; i++) {
+                final String path = "session" + i;
+                requests.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        HandlerOptions options = registry.get(path);
+                        if (options.saveRequest(request) == expectedCount) {
+                            options.setReceived(true);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        Collections.shuffle(requests);
+        awaitAll(executor.invokeAll(requests));
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            HandlerOptions options = registry.get("session" + i);
+            assertTrue("Session was not completed: session" + i, options.getRequestsReceived().isDone());
+            assertEquals(expectedCount, options.getRequestCount());
+            assertEquals(expectedCount, options.getRequests().getDocument()
+                    .getElementsByTagName("Request").getLength());
+        }
+
+        List<Callable<Void>> removals = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            final String path = "session" + i;
+            removals.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    registry.remove(path);
+                    return null;
+                }
+            });
+        }
+        awaitAll(executor.invokeAll(removals));
+        assertEquals("Sessions were not all removed.", 0, registry.size());
+    }
+
+    /**
+     * Wait for every task to finish, rethrowing the first failure.
+     */
+    private static void awaitAll(List<Future<Void>> futures) throws Exception {
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies the caching of SSL contexts by the SslContextCache class, with the sample KeyStore.
+ */
+public class VerifySslContextCache {
+
+    private static final String PASSWORD = "ets-security-client";
+
+    private File keystore;
+
+    public VerifySslContextCache() {
+    }
+
+    @Before
+    public void copyKeystore() throws Exception {
+        keystore = File.createTempFile("security", ".jks");
+        try (InputStream input = getClass().getResourceAsStream("/security.jks")) {
+            Files.copy(input, keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @After
+    public void deleteKeystore() {
+        keystore.delete();
+    }
+
+    @Test
+    public void reuseContextForSameKeystore() throws Exception {
+        SSLContext first = SslContextCache.getSslContext(keystore, PASSWORD);
+        SSLContext second = SslContextCache.getSslContext(keystore, PASSWORD);
+
+        assertSame(first, second);
+        assertEquals(SslContextCache.SESSION_CACHE_SIZE, first.getServerSessionContext().getSessionCacheSize());
+    }
+
+    @Test
+    public void reloadRotatedKeystore() throws Exception {
+        writeRotatedKeystore(keystore, PASSWORD);
+        SSLContext first = SslContextCache.getSslContext(keystore, PASSWORD);
+        long length = keystore.length();
+        long lastModified = keystore.lastModified();
+
+        // Same size, and written within the granularity of the modification time
+        writeRotatedKeystore(keystore, PASSWORD);
+        keystore.setLastModified(lastModified);
+        assertEquals(length, keystore.length());
+        SSLContext reloaded = SslContextCache.reloadSslContext(keystore, PASSWORD);
+
+        assertNotSame(first, reloaded);
+        assertSame(reloaded, SslContextCache.getSslContext(keystore, PASSWORD));
+    }
+
+    @Test
+    public void keepContextForUnchangedContent() throws Exception {
+        SSLContext first = SslContextCache.getSslContext(keystore, PASSWORD);
+        byte[] content = Files.readAllBytes(keystore.toPath());
+        Files.write(keystore.toPath(), content);
+
+        assertSame(first, SslContextCache.reloadSslContext(keystore, PASSWORD));
+        assertSame(first, SslContextCache.getSslContext(keystore, PASSWORD));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingKeystore() throws Exception {
+        SslContextCache.getSslContext(new File(keystore.getPath() + ".missing"), PASSWORD);
+    }
+
+    @Test
+    public void countResumedHandshakes() {
+        HandshakeMetrics metrics = new HandshakeMetrics();
+        metrics.recordHandshake(1000, 1000);
+        metrics.recordHandshake(1000, 2000);
+        metrics.recordHandshake(3000, 2000);
+
+        assertEquals(2, metrics.getFullHandshakes());
+        assertEquals(1, metrics.getResumedHandshakes());
+    }
+
+    /**
+     * Write the key of the sample KeyStore to `keystore` as a new PKCS #12 KeyStore. Every call writes
+     * different bytes, as the salts are random, but always the same number of bytes.
+     */
+    static void writeRotatedKeystore(File keystore, String password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream input = VerifySslContextCache.class.getResourceAsStream("/security.jks")) {
+            keyStore.load(input, password.toCharArray());
+        }
+        try (OutputStream output = new FileOutputStream(keystore)) {
+            keyStore.store(output, password.toCharArray());
+        }
+    }
+}
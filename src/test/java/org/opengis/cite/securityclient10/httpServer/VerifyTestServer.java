@@ -0,0 +1,251 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Test;
+
+/**
+ * Verifies the port pools of the TestServer class, and that its servlet receives HTTP/2 requests over
+ * h2c and over TLS with ALPN.
+ */
+public class VerifyTestServer {
+
+    private static final String PASSWORD = "ets-security-client";
+
+    public VerifyTestServer() {
+    }
+
+    @Test
+    public void parseSinglePort() {
+        assertArrayEquals(new int[] { 10080 }, TestServer.parsePorts("10080"));
+    }
+
+    @Test
+    public void parsePortRangesAndLists() {
+        assertArrayEquals(new int[] { 10080, 10081, 10082 }, TestServer.parsePorts("10080-10082"));
+        assertArrayEquals(new int[] { 10080, 10090, 10091 }, TestServer.parsePorts("10080, 10090-10091"));
+        assertArrayEquals(new int[] { 10080, 10081 }, TestServer.parsePorts("10080-10081,10080"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseReversedRange() {
+        TestServer.parsePorts("10082-10080");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalidPort() {
+        TestServer.parsePorts("70000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseTooManyPorts() {
+        TestServer.parsePorts("10000-10999");
+    }
+
+    @Test
+    public void captureHttp2PriorKnowledgeRequest() throws Exception {
+        File keystore = copySampleKeystore();
+        int port = findFreePort();
+
+        TestServer server = new TestServer("127.0.0.1", port, keystore.getPath(), PASSWORD);
+        try {
+            server.registerHandler("h2c-test", new ServerOptions("wms13"));
+            // Plain HTTP client that starts with the HTTP/2 connection preface, without an upgrade
+            try (Socket socket = new Socket("127.0.0.1", port)) {
+                sendHttp2Request(socket, "http", "/h2c-test");
+            }
+
+            RequestSet requests = server.getRequests("h2c-test").getRequestSet();
+            assertEquals(1, requests.getRequests().size());
+            assertEquals("HTTP/2.0", requests.getRequests().get(0).getProtocol());
+            assertFalse(requests.getRequests().get(0).isHttps());
+        } finally {
+            server.unregisterHandler("h2c-test");
+            server.shutdown();
+            keystore.delete();
+        }
+    }
+
+    @Test
+    public void captureHttp2AlpnRequest() throws Exception {
+        File keystore = copySampleKeystore();
+        int port = findFreePort();
+
+        TestServer server = new TestServer("127.0.0.1", port, keystore.getPath(), PASSWORD);
+        try {
+            server.registerHandler("h2-test", new ServerOptions("wms13"));
+            SSLContext clientContext = SSLContext.getInstance("TLS");
+            clientContext.init(null, new TrustManager[] { new TrustAllManager() }, null);
+            try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("127.0.0.1", port)) {
+                SSLParameters parameters = socket.getSSLParameters();
+                parameters.setApplicationProtocols(new String[] { "h2" });
+                socket.setSSLParameters(parameters);
+                socket.startHandshake();
+                assertEquals("h2", socket.getApplicationProtocol());
+
+                sendHttp2Request(socket, "https", "/h2-test");
+            }
+
+            RequestSet requests = server.getRequests("h2-test").getRequestSet();
+            assertEquals(1, requests.getRequests().size());
+            assertEquals("HTTP/2.0", requests.getRequests().get(0).getProtocol());
+            assertTrue(requests.getRequests().get(0).isHttps());
+            // The handshake listeners are applied to the SSL connection of the detected protocol
+            assertEquals(1, server.getHandshakeMetrics().getFullHandshakes());
+        } finally {
+            server.unregisterHandler("h2-test");
+            server.shutdown();
+            keystore.delete();
+        }
+    }
+
+    @Test
+    public void routeOnlySessionsOfTheServer() throws Exception {
+        File keystore = copySampleKeystore();
+        int port = findFreePort();
+        int otherPort = findFreePort();
+
+        TestServer server = new TestServer("127.0.0.1", port, keystore.getPath(), PASSWORD);
+        TestServer otherServer = new TestServer("127.0.0.1", otherPort, keystore.getPath(), PASSWORD);
+        try {
+            server.registerHandler("routed-test", new ServerOptions("wms13"));
+            try (Socket socket = new Socket("127.0.0.1", otherPort)) {
+                socket.setSoTimeout(30000);
+                socket.getOutputStream().write(("GET /routed-test?service=WMS&request=GetCapabilities HTTP/1.1\r\n"
+                        + "Host: 127.0.0.1:" + otherPort + "\r\nConnection: close\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                        StandardCharsets.US_ASCII));
+                assertTrue(reader.readLine().startsWith("HTTP/1.1 404"));
+            }
+
+            assertEquals(0, server.getRequests("routed-test").getRequestSet().getRequests().size());
+            assertNull(otherServer.getRequests("routed-test"));
+        } finally {
+            server.unregisterHandler("routed-test");
+            otherServer.shutdown();
+            server.shutdown();
+            keystore.delete();
+        }
+    }
+
+    private File copySampleKeystore() throws Exception {
+        File keystore = File.createTempFile("security", ".jks");
+        try (InputStream input = getClass().getResourceAsStream("/security.jks")) {
+            Files.copy(input, keystore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return keystore;
+    }
+
+    private static int findFreePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Send a GetCapabilities request on stream 1 of a new HTTP/2 connection, and wait for the headers of
+     * the response. The servlet saves the request before it responds.
+     */
+    private static void sendHttp2Request(Socket socket, String scheme, String path) throws Exception {
+        socket.setSoTimeout(30000);
+        OutputStream output = socket.getOutputStream();
+        output.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        writeFrame(output, 0x4, 0x0, 0, new byte[0]);
+
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        writeHeader(headers, ":method", "GET");
+        writeHeader(headers, ":scheme", scheme);
+        writeHeader(headers, ":path", path + "?service=WMS&request=GetCapabilities");
+        writeHeader(headers, ":authority", "127.0.0.1:" + socket.getPort());
+        // HEADERS frame with END_STREAM and END_HEADERS
+        writeFrame(output, 0x1, 0x5, 1, headers.toByteArray());
+        output.flush();
+
+        readResponseHeaders(new DataInputStream(socket.getInputStream()));
+    }
+
+    private static void writeFrame(OutputStream output, int type, int flags, int streamId, byte[] payload)
+            throws Exception {
+        output.write(new byte[] { (byte) (payload.length >>> 16), (byte) (payload.length >>> 8),
+                (byte) payload.length, (byte) type, (byte) flags, (byte) (streamId >>> 24),
+                (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId });
+        output.write(payload);
+    }
+
+    /**
+     * Write an HPACK literal header field without indexing and without Huffman coding. The name and
+     * value must be shorter than 127 bytes.
+     */
+    private static void writeHeader(ByteArrayOutputStream block, String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        block.write(0x00);
+        block.write(nameBytes.length);
+        block.write(nameBytes, 0, nameBytes.length);
+        block.write(valueBytes.length);
+        block.write(valueBytes, 0, valueBytes.length);
+    }
+
+    /**
+     * Read frames until the HEADERS frame of the response to stream 1.
+     */
+    private static void readResponseHeaders(DataInputStream input) throws Exception {
+        byte[] header = new byte[9];
+        while (true) {
+            input.readFully(header);
+            int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8) | (header[2] & 0xff);
+            int type = header[3];
+            int streamId = ((header[5] & 0x7f) << 24) | ((header[6] & 0xff) << 16) | ((header[7] & 0xff) << 8)
+                    | (header[8] & 0xff);
+            input.readFully(new byte[length]);
+            // RST_STREAM and GOAWAY end the exchange without a response
+            assertTrue("Stream was reset or connection closed", type != 0x3 && type != 0x7);
+            if (type == 0x1 && streamId == 1) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Trust manager for the self-signed certificate of the sample KeyStore.
+     */
+    private static class TrustAllManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.opengis.cite.securityclient10.httpServer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.cite.jetty.io.EndPoint;
+
+/**
+ * Verifies the non-blocking read-ahead of the UnifiedEndPoint class, with a client that sends its
+ * bytes one at a time.
+ */
+public class VerifyUnifiedEndPoint {
+
+    public VerifyUnifiedEndPoint() {
+    }
+
+    /**
+     * Client connection that has sent the first `available` bytes of `data`. Fills buffers the way
+     * Jetty endpoints do, appending to a buffer in flush mode.
+     */
+    private static class DripClient implements Answer<Integer> {
+        final byte[] data;
+        int available;
+        int read;
+        boolean closed;
+
+        DripClient(String data) {
+            this.data = data.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public Integer answer(InvocationOnMock invocation) {
+            ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+            int n = Math.min(available - read, buffer.capacity() - buffer.limit());
+            if (n == 0) {
+                return (closed && read == available) ? -1 : 0;
+            }
+            int position = buffer.position();
+            buffer.position(buffer.limit());
+            buffer.limit(buffer.capacity());
+            buffer.put(data, read, n);
+            buffer.limit(buffer.position());
+            buffer.position(position);
+            read += n;
+            return n;
+        }
+    }
+
+    private static UnifiedEndPoint endPoint(DripClient client, int readAheadLength) throws Exception {
+        EndPoint channel = mock(EndPoint.class);
+        when(channel.fill(any(ByteBuffer.class))).thenAnswer(client);
+        return new UnifiedEndPoint(channel, readAheadLength);
+    }
+
+    @Test
+    public void readAheadDoesNotWaitForSlowClient() throws Exception {
+        DripClient client = new DripClient("GET / HTTP/1.1\r\n");
+        UnifiedEndPoint endPoint = endPoint(client, 3);
+
+        assertEquals(0, endPoint.readAhead());
+        assertFalse(endPoint.isReadAheadComplete());
+
+        client.available = 1;
+        assertEquals(1, endPoint.readAhead());
+        assertEquals(0, endPoint.readAhead());
+        assertFalse(endPoint.isReadAheadComplete());
+
+        client.available = 3;
+        assertEquals(2, endPoint.readAhead());
+        assertTrue(endPoint.isReadAheadComplete());
+        assertArrayEquals("GET".getBytes(StandardCharsets.US_ASCII), endPoint.getBytes());
+    }
+
+    @Test
+    public void fillReplaysReadAheadBytes() throws Exception {
+        DripClient client = new DripClient("GET / HTTP/1.1\r\n");
+        UnifiedEndPoint endPoint = endPoint(client, 1);
+        client.available = 1;
+        endPoint.readAhead();
+
+        client.available = client.data.length;
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+        int n = endPoint.fill(buffer);
+
+        assertEquals(client.data.length, n);
+        assertEquals("GET / HTTP/1.1\r\n", StandardCharsets.US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void fillAfterDrainReadsClient() throws Exception {
+        DripClient client = new DripClient("GET / HTTP/1.1\r\n");
+        UnifiedEndPoint endPoint = endPoint(client, 3);
+        client.available = 3;
+        endPoint.readAhead();
+        client.closed = true;
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+        assertEquals(3, endPoint.fill(buffer));
+        assertEquals(-1, endPoint.fill(buffer));
+        assertEquals("GET", StandardCharsets.US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void takenBytesAreNotFilledAgain() throws Exception {
+        DripClient client = new DripClient("GET / HTTP/1.1\r\n");
+        UnifiedEndPoint endPoint = endPoint(client, 3);
+        client.available = 3;
+        endPoint.readAhead();
+
+        ByteBuffer taken = endPoint.takeBytes();
+        assertEquals("GET", StandardCharsets.US_ASCII.decode(taken).toString());
+
+        client.available = client.data.length;
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+        assertEquals(client.data.length - 3, endPoint.fill(buffer));
+        assertEquals(" / HTTP/1.1\r\n", StandardCharsets.US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void clientClosesBeforeSending() throws Exception {
+        DripClient client = new DripClient("");
+        client.closed = true;
+        UnifiedEndPoint endPoint = endPoint(client, 1);
+
+        assertEquals(-1, endPoint.readAhead());
+        assertTrue(endPoint.isReadAheadComplete());
+        assertEquals(0, endPoint.getBytes().length);
+    }
+
+    @Test
+    public void detectTlsHandshake() {
+        assertTrue(ProtocolDetectionConnection.isTls(new byte[] { 0x16, 0x03, 0x01 }));
+        assertTrue(ProtocolDetectionConnection.isTls(new byte[] { (byte) 0x80 }));
+        assertFalse(ProtocolDetectionConnection.isTls("GET".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(ProtocolDetectionConnection.isTls("POST".getBytes(StandardCharsets.US_ASCII)));
+    }
+}
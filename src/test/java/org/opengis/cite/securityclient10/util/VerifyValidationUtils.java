@@ -9,9 +9,11 @@ import java.util.Set;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 
 import org.junit.Test;
 import org.opengis.cite.validation.SchematronValidator;
+import org.xml.sax.SAXException;
 
 /**
  * Verifies the behavior of the ValidationUtils class.
@@ -30,6 +32,24 @@ public class VerifyValidationUtils {
         assertNotNull(result);
     }
 
+    @Test
+    public void reuseReleasedSchematronValidator() {
+        String schemaRef = "http://schemas.opengis.net/gml/3.2.1/SchematronConstraints.xml";
+        SchematronValidator validator = ValidationUtils.buildSchematronValidator(
+                schemaRef, "");
+        ValidationUtils.releaseSchematronValidator(schemaRef, "", validator);
+        assertSame(validator,
+                ValidationUtils.buildSchematronValidator(schemaRef, ""));
+    }
+
+    @Test
+    public void getCachedSchemaFromCatalog() throws SAXException {
+        String schemaRef = "http://schemas.opengis.net/gml/3.2.1/gml.xsd";
+        Schema schema = ValidationUtils.getSchema(schemaRef);
+        assertNotNull(schema);
+        assertSame(schema, ValidationUtils.getSchema(schemaRef));
+    }
+
     @Test
     public void extractRelativeSchemaReference() throws FileNotFoundException,
             XMLStreamException {
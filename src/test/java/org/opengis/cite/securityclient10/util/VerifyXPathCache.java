@@ -0,0 +1,76 @@
+package org.opengis.cite.securityclient10.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathExecutable;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Verifies the behavior of the XPathCache class.
+ */
+public class VerifyXPathCache {
+
+    private static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+    private static DocumentBuilder docBuilder;
+
+    public VerifyXPathCache() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        docBuilder = dbf.newDocumentBuilder();
+    }
+
+    @Before
+    public void clearCache() {
+        XPathCache.clear();
+    }
+
+    @Test
+    public void reuseCompiledExpression() throws XPathExpressionException, SAXException, IOException {
+        Document doc = docBuilder.parse(this.getClass().getResourceAsStream("/atom-feed.xml"));
+        Map<String, String> nsBindings = new HashMap<String, String>();
+        nsBindings.put(ATOM_NS, "tns");
+        for (int i = 0; i < 3; i++) {
+            Object result = XPathCache.evaluate(doc, "count(//tns:entry)", nsBindings, XPathConstants.NUMBER);
+            Assert.assertEquals(1.0, (Double) result, 0.0);
+        }
+        Assert.assertEquals("Unexpected miss count.", 1, XPathCache.getMissCount());
+        Assert.assertEquals("Unexpected hit count.", 2, XPathCache.getHitCount());
+    }
+
+    @Test
+    public void keyByNamespaceBindings() throws XPathExpressionException, SAXException, IOException {
+        Document doc = docBuilder.parse(this.getClass().getResourceAsStream("/atom-feed.xml"));
+        Map<String, String> atomBindings = new HashMap<String, String>();
+        atomBindings.put(ATOM_NS, "tns");
+        Map<String, String> otherBindings = new HashMap<String, String>();
+        otherBindings.put("http://example.org/ns1", "tns");
+        Object atomResult = XPathCache.evaluate(doc, "count(//tns:entry)", atomBindings, XPathConstants.NUMBER);
+        Object otherResult = XPathCache.evaluate(doc, "count(//tns:entry)", otherBindings, XPathConstants.NUMBER);
+        Assert.assertEquals(1.0, (Double) atomResult, 0.0);
+        Assert.assertEquals(0.0, (Double) otherResult, 0.0);
+        Assert.assertEquals("Unexpected cache size.", 2, XPathCache.size());
+    }
+
+    @Test
+    public void reuseXPath2Executable() throws SaxonApiException {
+        XPathExecutable first = XPathCache.getXPath2Executable("//*:entry", null);
+        XPathExecutable second = XPathCache.getXPath2Executable("//*:entry", new HashMap<String, String>());
+        Assert.assertSame(first, second);
+    }
+}